@@ -0,0 +1,134 @@
+package pawns_chess.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * The engine which chooses the machine's move with the selective alpha-beta
+ * {@link Search}. The level gives the node limit and how often near-best
+ * moves are played. Results are shared with other games through the
+ * {@link ResultCache} and the {@link TranspositionTable}.
+ *
+ * <p>
+ * The moves of a seeded game depend only on the seed and the human moves:
+ * its searches use neither the cache nor the shared table, which hold what
+ * other games searched before, but an empty table of their own.
+ */
+final class AlphaBetaEngine implements Engine {
+
+    static final AlphaBetaEngine INSTANCE = new AlphaBetaEngine();
+
+    /**
+     * not used
+     */
+    private AlphaBetaEngine() {
+    }
+
+    @Override
+    public String getName() {
+        return Engines.ALPHA_BETA;
+    }
+
+    @Override
+    public List<Move> choose(Game game, int level, SplittableRandom random) {
+        if (game.isSeeded()) {
+            // a cached result is what some earlier search found, which need
+            // not be what the search of this game would find
+            return chooseReproducibly(game, level, random);
+        }
+        Evaluator evaluator = game.getEvaluator();
+        ResultCache cache = ResultCache.shared();
+        // a game state and its mirror image share a result, whose moves are
+        // those of the game state with the smaller hash
+        boolean mirrored = game.isMirrored();
+        ResultCache.Result cached = cache == null ? null : cache.get(game
+                .getCanonicalHash(), level, evaluator);
+        if (cached != null) {
+            // choose as the search would have chosen: the candidates are in
+            // the same order for a game state and its mirror image
+            double[] scores = cached.getScores();
+            int[] line = cached.getCandidates()[Search.choose(random, scores,
+                    scores.length, Game.selectionTemperature(level))];
+            List<Move> pv = new ArrayList<Move>(line.length);
+            for (int m : line) {
+                pv.add(Move.decode(mirrored ? Move.flipColumns(m) : m));
+            }
+            return pv;
+        }
+        Search search = search(level, random);
+        search.search(game.clone(), Search.MAX_DEPTH);
+        if (cache != null) {
+            int[][] candidates = search.getCandidates();
+            if (mirrored) {
+                candidates = flipColumns(candidates);
+            }
+            cache.put(game.getCanonicalHash(), level, evaluator,
+                    new ResultCache.Result(candidates, search
+                            .getCandidateScores()));
+        }
+        return search.getPrincipalVariation();
+    }
+
+    /**
+     * Chooses the move of the machine from the game state, the level, the
+     * evaluator and the random source only. The search uses a new table and
+     * not the result cache, so the choice does not depend on other searches
+     * of the process.
+     *
+     * @param game
+     *            the game state, it is the machine's turn. It is not changed.
+     * @param level
+     *            the level of the game, 1 to {@link Board#MAX_LEVEL}
+     * @param random
+     *            the random source of the game
+     * @return the principal variation: the move to play followed by the
+     *         expected answers
+     */
+    static List<Move> chooseReproducibly(Game game, int level,
+            SplittableRandom random) {
+        Search search = search(level, random);
+        // the selection may use the node limit once more
+        search.setTable(TranspositionTable.forNodes(2 * Game.nodeLimit(
+                level)));
+        search.search(game.clone(), Search.MAX_DEPTH);
+        return search.getPrincipalVariation();
+    }
+
+    /**
+     * Creates the search of a machine move
+     *
+     * @param level
+     *            the level of the game
+     * @param random
+     *            the random source of the game
+     * @return the selective search with the node limit of the level
+     */
+    private static Search search(int level, SplittableRandom random) {
+        Search search = new Search();
+        search.setSelection(random, Game.selectionMargin(level),
+                Game.selectionTemperature(level));
+        search.setNodeLimit(Game.nodeLimit(level));
+        search.setPruning(true);
+        return search;
+    }
+
+    /**
+     * Mirrors the principal variations of candidates at the middle column
+     *
+     * @param candidates
+     *            the encoded principal variations
+     * @return new arrays of the mirrored moves
+     */
+    private static int[][] flipColumns(int[][] candidates) {
+        int[][] res = new int[candidates.length][];
+        for (int i = 0; i < candidates.length; i++) {
+            res[i] = new int[candidates[i].length];
+            for (int j = 0; j < res[i].length; j++) {
+                res[i][j] = Move.flipColumns(candidates[i][j]);
+            }
+        }
+        return res;
+    }
+
+}
@@ -0,0 +1,139 @@
+package pawns_chess.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The class Analysis holds the best moves of a game state as ranked by one
+ * search, see {@link Board#analyze(int)}. Analyses are immutable.
+ */
+public final class Analysis {
+
+    /**
+     * A ranked move: its score and the line of play expected after it
+     */
+    public static final class Line {
+        private final double score;
+        private final List<Move> variation;
+
+        /**
+         * Creates a line
+         *
+         * @param score
+         *            the score of the line for the player to move
+         * @param variation
+         *            the move followed by the expected answers, not empty
+         */
+        Line(double score, List<Move> variation) {
+            this.score = score;
+            this.variation = Collections.unmodifiableList(
+                    new ArrayList<Move>(variation));
+        }
+
+        /**
+         * Gets the move of the line
+         *
+         * @return the first move of the principal variation
+         */
+        public Move getMove() {
+            return variation.get(0);
+        }
+
+        /**
+         * Gets the score of the line for the player to move: the higher the
+         * better for this player
+         *
+         * @return the score
+         */
+        public double getScore() {
+            return score;
+        }
+
+        /**
+         * Gets the principal variation of the line
+         *
+         * @return the move followed by the expected answers of both players
+         */
+        public List<Move> getPrincipalVariation() {
+            return variation;
+        }
+
+        /**
+         * The line as printed by the ANALYZE command: the score and the
+         * moves, separated by commas
+         */
+        @Override
+        public String toString() {
+            StringBuilder s = new StringBuilder().append(score).append(' ');
+            String separator = "";
+            for (Move m : variation) {
+                s.append(separator).append(m);
+                separator = ", ";
+            }
+            return s.toString();
+        }
+    }
+
+    private final Player player;
+    private final int depth;
+    private final long nodes;
+    private final List<Line> lines;
+
+    /**
+     * Creates an analysis
+     *
+     * @param player
+     *            the player to move
+     * @param depth
+     *            the depth of the search
+     * @param nodes
+     *            the game states the search visited
+     * @param lines
+     *            the lines, the best first
+     */
+    Analysis(Player player, int depth, long nodes, List<Line> lines) {
+        this.player = player;
+        this.depth = depth;
+        this.nodes = nodes;
+        this.lines = Collections.unmodifiableList(new ArrayList<Line>(lines));
+    }
+
+    /**
+     * Gets the player whose moves are ranked
+     *
+     * @return the player to move, {@link Player#NONE} if the game is over
+     */
+    public Player getPlayer() {
+        return player;
+    }
+
+    /**
+     * Gets the depth of the search which ranked the moves
+     *
+     * @return the depth of the last complete iteration, 0 if no move was
+     *         searched
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Gets the number of game states the search visited
+     *
+     * @return the nodes of all iterations
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Gets the ranked lines
+     *
+     * @return the lines, the best first, empty if the player cannot move
+     */
+    public List<Line> getLines() {
+        return lines;
+    }
+
+}
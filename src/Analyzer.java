@@ -0,0 +1,467 @@
+package pawns_chess.model;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The class Analyzer evaluates many positions offline: it reads positions
+ * from a file, searches the best move of the side to move with a pool of
+ * worker threads and writes one line per position in input order:
+ * {@code index <TAB> best move <TAB> score <TAB> principal variation}. The
+ * score is seen from the side to move. At most a few positions per worker are
+ * in flight, so arbitrarily large inputs are analyzed in bounded memory.
+ *
+ * <p>
+ * Text input consists of records of a header line {@code > W} or {@code > B}
+ * naming the color to move, followed by the SIZE rows of the board as printed
+ * by the PRINT command. The pawns of the last row move up. They are white
+ * unless the header names their color as second letter: PRINT shows the
+ * human's pawns at the bottom, so a board printed while the human plays black
+ * needs a header such as {@code > W B}. Other lines between records are
+ * ignored. Binary input
+ * consists of records of 17 bytes: the white pawns and the black pawns as
+ * little endian bit masks (bit (row - 1) * SIZE + (col - 1)) and one byte, 0
+ * if white is to move and 1 if black is to move. White moves up from row 1.
+ * Binary files are memory mapped. A time limit overrides the depth.
+ *
+ * <p>
+ * Usage: {@code analyze <file> [depth=n] [time=ms] [threads=n] [eval=name]
+ * [format=text|binary] [out=file]}
+ */
+public final class Analyzer {
+
+    /**
+     * Size of a binary record in bytes
+     */
+    static final int RECORD = 17;
+
+    /**
+     * Positions in flight per worker thread
+     */
+    private static final int IN_FLIGHT = 8;
+
+    /**
+     * Size of the mapped windows of binary files: a multiple of RECORD
+     */
+    private static final long WINDOW = RECORD * (1L << 22);
+
+    private final int depth;
+    private final long time;
+    private final int threads;
+    private final Evaluator evaluator;
+
+    /**
+     * The search of each worker thread
+     */
+    private final ThreadLocal<Search> searches = new ThreadLocal<Search>();
+
+    /**
+     * A position of the input
+     */
+    static final class Position {
+        final long white;
+        final long black;
+        final boolean whiteToMove;
+        final boolean whiteUp;
+
+        /**
+         * Creates a position in which white moves up from row 1
+         *
+         * @param white
+         *            mask of the white pawns
+         * @param black
+         *            mask of the black pawns
+         * @param whiteToMove
+         *            true if white is to move
+         */
+        Position(long white, long black, boolean whiteToMove) {
+            this(white, black, whiteToMove, true);
+        }
+
+        /**
+         * Creates a position
+         *
+         * @param white
+         *            mask of the white pawns
+         * @param black
+         *            mask of the black pawns
+         * @param whiteToMove
+         *            true if white is to move
+         * @param whiteUp
+         *            true if white moves up from row 1, false if black does
+         */
+        Position(long white, long black, boolean whiteToMove,
+                boolean whiteUp) {
+            this.white = white;
+            this.black = black;
+            this.whiteToMove = whiteToMove;
+            this.whiteUp = whiteUp;
+        }
+    }
+
+    /**
+     * Reads the positions of the input one after another
+     */
+    interface Source {
+
+        /**
+         * Reads the next position
+         *
+         * @return the position or null at the end of the input
+         * @throws IOException
+         *             if the input cannot be read
+         */
+        Position next() throws IOException;
+    }
+
+    /**
+     * Creates an analyzer
+     *
+     * @param depth
+     *            the search depth
+     * @param time
+     *            the time limit per position in milliseconds, 0 for none
+     * @param threads
+     *            the number of worker threads
+     * @param evaluator
+     *            the evaluator of the searches
+     */
+    public Analyzer(int depth, long time, int threads, Evaluator evaluator) {
+        this.depth = depth;
+        this.time = time;
+        this.threads = threads;
+        this.evaluator = evaluator;
+    }
+
+    /**
+     * Runs the analyze mode
+     *
+     * @param args
+     *            the input file followed by the options
+     * @throws IOException
+     *             if the input cannot be read or the output not be written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: analyze <file> [depth=n] [time=ms]"
+                    + " [threads=n] [eval=name] [format=text|binary]"
+                    + " [out=file]");
+            return;
+        }
+        String file = args[0];
+        int depth = 4;
+        long time = 0;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Evaluator evaluator = Evaluators.CLASSIC;
+        boolean binary = file.endsWith(".bin");
+        String out = null;
+        for (int i = 1; i < args.length; i++) {
+            String[] option = args[i].split("=", 2);
+            String value = option.length == 2 ? option[1] : "";
+            switch (option[0].toLowerCase()) {
+            case "depth":
+                depth = Integer.parseInt(value);
+                break;
+            case "time":
+                time = Long.parseLong(value);
+                break;
+            case "threads":
+                threads = Integer.parseInt(value);
+                break;
+            case "eval":
+                evaluator = Evaluators.forName(value);
+                if (evaluator == null) {
+                    throw new IllegalArgumentException("Unknown evaluator "
+                            + value);
+                }
+                break;
+            case "format":
+                binary = value.equalsIgnoreCase("binary");
+                break;
+            case "out":
+                out = value;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (time > 0) {
+            // with a time limit the depth does not stop the search
+            depth = Search.MAX_DEPTH;
+        }
+        Writer writer = out == null ? new OutputStreamWriter(System.out,
+                StandardCharsets.UTF_8) : Files.newBufferedWriter(Paths
+                .get(out), StandardCharsets.UTF_8);
+        Analyzer analyzer = new Analyzer(depth, time, threads, evaluator);
+        try (BufferedWriter w = new BufferedWriter(writer)) {
+            if (binary) {
+                analyzer.analyzeBinary(file, w);
+            } else {
+                try (BufferedReader r = new BufferedReader(
+                        new InputStreamReader(new FileInputStream(file),
+                                StandardCharsets.UTF_8))) {
+                    analyzer.analyze(textSource(r), w);
+                }
+            }
+        }
+    }
+
+    /**
+     * Analyzes a binary file
+     *
+     * @param file
+     *            the file name
+     * @param out
+     *            receives the results
+     * @throws IOException
+     *             if the input cannot be read or the output not be written
+     */
+    void analyzeBinary(String file, Writer out) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(file),
+                StandardOpenOption.READ)) {
+            analyze(binarySource(channel), out);
+        }
+    }
+
+    /**
+     * Analyzes all positions of a source and writes the results in input
+     * order
+     *
+     * @param source
+     *            the positions
+     * @param out
+     *            receives the results
+     * @throws IOException
+     *             if the input cannot be read or the output not be written
+     */
+    private void analyze(Source source, Writer out) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        Deque<Future<String>> inFlight = new ArrayDeque<Future<String>>();
+        try {
+            long index = 0;
+            for (Position p = source.next(); p != null; p = source.next()) {
+                if (inFlight.size() >= threads * IN_FLIGHT) {
+                    out.write(await(inFlight.poll()));
+                }
+                final long i = index++;
+                final Position position = p;
+                inFlight.add(pool.submit(new Callable<String>() {
+                    @Override
+                    public String call() {
+                        return analyze(i, position);
+                    }
+                }));
+            }
+            while (!inFlight.isEmpty()) {
+                out.write(await(inFlight.poll()));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Waits for the result of a position
+     *
+     * @param result
+     *            the pending result
+     * @return the result line
+     * @throws IOException
+     *             if the analysis was interrupted
+     */
+    private static String await(Future<String> result) throws IOException {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Analysis interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Analysis failed", e.getCause());
+        }
+    }
+
+    /**
+     * Searches the best move of a position. The engine searches for the
+     * machine, which moves downwards, so positions in which the side to move
+     * moves up are mirrored at the middle row.
+     *
+     * @param index
+     *            index of the position in the input
+     * @param p
+     *            the position
+     * @return the result line
+     */
+    String analyze(long index, Position p) {
+        Search search = searches.get();
+        if (search == null) {
+            search = new Search();
+            search.setTimeLimit(time);
+            searches.set(search);
+        }
+        StringBuilder line = new StringBuilder().append(index).append('\t');
+        long up = p.whiteUp ? p.white : p.black;
+        long down = p.whiteUp ? p.black : p.white;
+        boolean flip = p.whiteToMove == p.whiteUp;
+        // the human has the pawns which move up, white opens the game
+        Player first = p.whiteUp != flip ? Player.HUMAN : Player.MACHINE;
+        Game game;
+        try {
+            game = flip ? Game.of(Bits.flipRows(down), Bits.flipRows(up),
+                    first, Player.MACHINE) : Game.of(up, down, first,
+                    Player.MACHINE);
+        } catch (IllegalArgumentException e) {
+            // a broken record must not stop the whole batch
+            return line.append("-\t-\t").append(e.getMessage()).append('\n')
+                    .toString();
+        }
+        game.setEvaluator(evaluator);
+        if (game.gameOver() || game.next() != Player.MACHINE) {
+            return line.append("-\t-\t\n").toString();
+        }
+        EngineMetrics.get().gameOpened();
+        try {
+            search.search(game, depth);
+        } finally {
+            EngineMetrics.get().gameClosed();
+        }
+        line.append(format(search.getPrincipalVariation().get(0), flip));
+        line.append('\t').append(search.getScore()).append('\t');
+        String separator = "";
+        for (Move m : search.getPrincipalVariation()) {
+            line.append(separator).append(format(m, flip));
+            separator = ", ";
+        }
+        return line.append('\n').toString();
+    }
+
+    /**
+     * Formats a move in the orientation of the input
+     *
+     * @param m
+     *            the move
+     * @param flip
+     *            true if the position was mirrored
+     * @return the move as in the MOVE command
+     */
+    private static String format(Move m, boolean flip) {
+        if (!flip) {
+            return m.toString();
+        }
+        return new Move(m.getColumnFrom(), Board.SIZE + 1 - m.getRowFrom(),
+                m.getColumnTo(), Board.SIZE + 1 - m.getRowTo()).toString();
+    }
+
+    /**
+     * Creates a source of text records
+     *
+     * @param in
+     *            the text input
+     * @return the source
+     */
+    static Source textSource(final BufferedReader in) {
+        return new Source() {
+            private long lineNumber;
+
+            @Override
+            public Position next() throws IOException {
+                String header;
+                do {
+                    header = in.readLine();
+                    lineNumber++;
+                    if (header == null) {
+                        return null;
+                    }
+                } while (!header.startsWith(">"));
+                String[] colors = header.substring(1).trim().toUpperCase()
+                        .split("\\s+");
+                String color = colors[0];
+                String bottom = colors.length > 1 ? colors[1] : "W";
+                if (colors.length > 2 || !color.matches("[WB]")
+                        || !bottom.matches("[WB]")) {
+                    throw new IOException("Line " + lineNumber
+                            + ": expected '> W' or '> B', optionally followed"
+                            + " by the color of the last row");
+                }
+                long white = 0;
+                long black = 0;
+                for (int y = Board.SIZE; y >= 1; y--) {
+                    String row = in.readLine();
+                    lineNumber++;
+                    if (row == null) {
+                        throw new IOException("Line " + lineNumber
+                                + ": incomplete board");
+                    }
+                    for (int x = 1; x <= Board.SIZE; x++) {
+                        int c = 2 * (x - 1);
+                        char symbol = c < row.length() ? row.charAt(c) : ' ';
+                        if (symbol == 'W') {
+                            white |= 1L << Bits.square(x, y);
+                        } else if (symbol == 'B') {
+                            black |= 1L << Bits.square(x, y);
+                        } else if (symbol != ' ') {
+                            throw new IOException("Line " + lineNumber
+                                    + ": invalid slot '" + symbol + "'");
+                        }
+                    }
+                }
+                return new Position(white, black, color.equals("W"), bottom
+                        .equals("W"));
+            }
+        };
+    }
+
+    /**
+     * Creates a source of binary records, mapping the file window by window
+     *
+     * @param channel
+     *            the file
+     * @return the source
+     * @throws IOException
+     *             if the file size cannot be read
+     */
+    static Source binarySource(final FileChannel channel)
+        throws IOException {
+        final long size = channel.size() - channel.size() % RECORD;
+        return new Source() {
+            private long offset;
+            private MappedByteBuffer window;
+
+            @Override
+            public Position next() throws IOException {
+                if (window == null || !window.hasRemaining()) {
+                    if (offset >= size) {
+                        return null;
+                    }
+                    long length = Math.min(WINDOW, size - offset);
+                    window = channel.map(FileChannel.MapMode.READ_ONLY,
+                            offset, length);
+                    window.order(ByteOrder.LITTLE_ENDIAN);
+                    offset += length;
+                }
+                long white = window.getLong();
+                long black = window.getLong();
+                return new Position(white, black, window.get() == 0);
+            }
+        };
+    }
+
+}
@@ -0,0 +1,76 @@
+package pawns_chess.model;
+
+/**
+ * A BatchEvaluator scores many game states at once with the formula of the
+ * {@link Evaluators#CLASSIC classic evaluator}, given as pawn masks. The
+ * scores are exactly the scores of the classic evaluator.
+ *
+ * <p>
+ * There are two implementations: a scalar one and, if the JDK runs with
+ * {@code --add-modules jdk.incubator.vector} and the sources in
+ * {@code src/vector} are compiled, one that scores several game states per
+ * instruction with the Vector API.
+ */
+interface BatchEvaluator {
+
+    /**
+     * Scores game states. All arrays hold at least n elements.
+     *
+     * @param human
+     *            masks of the human pawns
+     * @param machine
+     *            masks of the machine pawns
+     * @param winner
+     *            the winners of the game states
+     * @param depth
+     *            depths of the game states in the gametree, at least 1
+     * @param n
+     *            number of game states
+     * @param scores
+     *            receives the scores
+     */
+    void evaluate(long[] human, long[] machine, Player[] winner, int[] depth,
+            int n, double[] scores);
+
+    /**
+     * Gets the name of the implementation
+     *
+     * @return "scalar" or "vector"
+     */
+    String getName();
+
+    /**
+     * Gets the scalar implementation
+     *
+     * @return the batch evaluator
+     */
+    static BatchEvaluator scalar() {
+        return ScalarBatchEvaluator.INSTANCE;
+    }
+
+    /**
+     * Gets the Vector API implementation
+     *
+     * @return the batch evaluator or null if the Vector API is not available
+     */
+    static BatchEvaluator vector() {
+        try {
+            return (BatchEvaluator) Class.forName(
+                    "pawns_chess.model.VectorBatchEvaluator")
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Gets the fastest implementation available
+     *
+     * @return the batch evaluator
+     */
+    static BatchEvaluator best() {
+        BatchEvaluator vector = vector();
+        return vector != null ? vector : scalar();
+    }
+
+}
@@ -0,0 +1,996 @@
+package pawns_chess.model;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.Stream;
+
+/**
+ * The class Benchmark measures the machine player on a fixed suite of
+ * positions. It is not part of the game; run it with
+ * {@code java pawns_chess.model.Benchmark [maxDepth]}.
+ */
+public final class Benchmark {
+
+    /**
+     * The position suite. 'W' are the human pawns, 'B' the machine pawns and
+     * it is the machine's turn.
+     */
+    static final String[] SUITE = {
+        "B B B B B B B B\n\n\n\n\n\n\nW W W W W W W W",
+        "B B   B B   B B\n    B     B\n\n\n\n          W\nW\n"
+            + "  W W W W   W W",
+        "B B B     B\n        B\n      B     B B\n\n    W\n\n"
+            + "W             W\n  W   W W W W",
+        "B B   B       B\n    B       B\n        B B\n\nW\n          W W\n"
+            + "        W     W\n  W W W",
+        "    B B B\nB           B\n              B\n  B     W\n"
+            + "            B\n    W\nW         W\n  W   W       W",
+        "          B\n      B\n  W B   B   B\nB             B\n"
+            + "              W\n      W   W W\n    W\n  W     W",
+    };
+
+    /**
+     * Pawn races, it is the machine's turn
+     */
+    static final String[] RACES = {
+        "\n              B\n\n\n\n\nW\n",
+        "\n            B B\n\n\n\n  W\nW W\n",
+        "\n        B   B B\n      B\n\n      W\n\nW W W\n",
+        "\n  B         B B\n\n\n\n\nW         W W\n",
+        "\nB B         B B\n\n\n\n\n      W   W W\n",
+    };
+
+    /**
+     * not used
+     */
+    private Benchmark() {
+    }
+
+    /**
+     * Runs the benchmark
+     *
+     * @param argv
+     *            optional maximal search depth, default 5, or "first-move"
+     *            for a process of {@link #startup(int)}
+     * @throws IOException
+     *             if the session log cannot be written
+     */
+    public static void main(String[] argv) throws IOException {
+        if (argv.length > 0 && argv[0].equals("first-move")) {
+            firstMove();
+            return;
+        }
+        int maxDepth = argv.length > 0 ? Integer.parseInt(argv[0]) : 5;
+        nodesPerDepth(maxDepth);
+        races(Math.max(maxDepth, 8));
+        footprint();
+        moveRequests(20000);
+        trees(5);
+        evaluations();
+        batches();
+        levels();
+        hashing(maxDepth + 2);
+        mirrors(maxDepth + 2);
+        pruning(maxDepth + 3);
+        lines(maxDepth + 2, 3);
+        selfPlay(200, 10);
+        engines(60, 20);
+        collections(256);
+        sessions(100000);
+        database(100000);
+        startup(5);
+    }
+
+    /**
+     * Creates a game of the suite
+     *
+     * @param i
+     *            index of the position
+     * @return the position with the machine to move
+     */
+    static Game position(int i) {
+        return Game.fromString(SUITE[i], Player.HUMAN, Player.MACHINE);
+    }
+
+    /**
+     * Compares the nodes of each iteration of the principal variation search
+     * with aspiration windows and the plain alpha-beta search.
+     *
+     * @param maxDepth
+     *            the deepest iteration
+     */
+    private static void nodesPerDepth(int maxDepth) {
+        System.out.println("Nodes per depth: alpha-beta / pvs+aspiration");
+        long[] totalAb = new long[maxDepth + 1];
+        long[] totalPvs = new long[maxDepth + 1];
+        for (int i = 0; i < SUITE.length; i++) {
+            Search ab = new Search(false, false);
+            Search pvs = new Search();
+            ab.setHashing(false);
+            pvs.setHashing(false);
+            ab.search(position(i), maxDepth);
+            pvs.search(position(i), maxDepth);
+            System.out.print("position " + i + ":");
+            for (int d = 1; d <= maxDepth; d++) {
+                totalAb[d] += ab.getNodes(d);
+                totalPvs[d] += pvs.getNodes(d);
+                System.out.print(" " + ab.getNodes(d) + "/" + pvs.getNodes(d));
+            }
+            System.out.println("  pv: " + pvs.getPrincipalVariation());
+        }
+        for (int d = 1; d <= maxDepth; d++) {
+            System.out.printf("depth %d: %d / %d (%.1f%%)%n", d, totalAb[d],
+                    totalPvs[d], 100.0 * totalPvs[d] / totalAb[d]);
+        }
+    }
+
+    /**
+     * Compares the nodes and time of the search with and without the race
+     * resolution on pawn races
+     *
+     * @param depth
+     *            the search depth
+     */
+    private static void races(int depth) {
+        System.out.println("Races at depth " + depth
+                + ": nodes (ms) without / with race resolution");
+        for (int i = 0; i < RACES.length; i++) {
+            Game race = Game.fromString(RACES[i], Player.HUMAN,
+                    Player.MACHINE);
+            Search full = new Search();
+            full.setRaceResolution(false);
+            long start = System.nanoTime();
+            full.search(race.clone(), depth);
+            long timeFull = System.nanoTime() - start;
+            Search resolved = new Search();
+            start = System.nanoTime();
+            Move m = resolved.search(race.clone(), depth);
+            long timeResolved = System.nanoTime() - start;
+            System.out.printf("race %d: %d (%d) / %d (%d)  %s%n", i,
+                    full.getNodes(), timeFull / 1000000, resolved.getNodes(),
+                    timeResolved / 1000000, m);
+        }
+    }
+
+    /**
+     * Measures the cost of each level: the average and the largest number of
+     * nodes and the average time and depth of a machine move on the suite
+     * positions
+     */
+    private static void levels() {
+        System.out.println("Level: node limit, nodes avg/max, ms avg, depth"
+                + " min-max");
+        TranspositionTable table = new TranspositionTable(16, true);
+        for (int level = 1; level <= Board.MAX_LEVEL; level++) {
+            table.clear();
+            long limit = Game.nodeLimit(level);
+            long nodes = 0;
+            long maxNodes = 0;
+            long time = 0;
+            int depth = Search.MAX_DEPTH;
+            int maxDepth = 0;
+            for (int i = 0; i < SUITE.length; i++) {
+                Search search = new Search();
+                search.setTable(table);
+                search.setNodeLimit(limit);
+                long start = System.nanoTime();
+                search.search(position(i), Search.MAX_DEPTH);
+                time += System.nanoTime() - start;
+                nodes += search.getNodes();
+                maxNodes = Math.max(maxNodes, search.getNodes());
+                depth = Math.min(depth, search.getDepth());
+                maxDepth = Math.max(maxDepth, search.getDepth());
+            }
+            System.out.printf("level %2d: %,9d %,9d/%,9d %8.2f %3d-%d%n",
+                    level, limit, nodes / SUITE.length, maxNodes, time / 1e6
+                            / SUITE.length, depth, maxDepth);
+        }
+    }
+
+    /**
+     * Compares the nodes and time of the search of the suite positions
+     * without and with a transposition table
+     *
+     * @param depth
+     *            the search depth
+     */
+    private static void hashing(int depth) {
+        System.out.println("Hash table at depth " + depth
+                + ": nodes (ms) without / with, hit ratio");
+        TranspositionTable table = new TranspositionTable(64, true);
+        for (int i = 0; i < SUITE.length; i++) {
+            Search plain = new Search();
+            plain.setHashing(false);
+            long start = System.nanoTime();
+            plain.search(position(i), depth);
+            long timePlain = System.nanoTime() - start;
+            table.clear();
+            Search hashed = new Search();
+            hashed.setTable(table);
+            start = System.nanoTime();
+            hashed.search(position(i), depth);
+            long timeHashed = System.nanoTime() - start;
+            System.out.printf("position %d: %d (%d) / %d (%d) %.2f%n", i,
+                    plain.getNodes(), timePlain / 1000000, hashed.getNodes(),
+                    timeHashed / 1000000, hashed.getHashHitRatio());
+        }
+    }
+
+    /**
+     * Compares the exact and the selective search of the suite positions:
+     * the nodes and the effective branching factor, the depth-th root of the
+     * nodes of the last iteration
+     *
+     * @param depth
+     *            the search depth
+     */
+    private static void pruning(int depth) {
+        System.out.println("Pruning at depth " + depth
+                + ": nodes (branching factor) exact / selective");
+        double[] logSum = new double[2];
+        int counted = 0;
+        for (int i = 0; i < SUITE.length; i++) {
+            Search[] searches = new Search[2];
+            for (int j = 0; j < 2; j++) {
+                searches[j] = new Search();
+                searches[j].setHashing(false);
+                searches[j].setPruning(j == 1);
+                searches[j].search(position(i), depth);
+            }
+            double[] factor = new double[2];
+            for (int j = 0; j < 2; j++) {
+                int d = searches[j].getDepth();
+                factor[j] = d < 2 ? 0 : Math.pow(searches[j].getNodes(d),
+                        1.0 / d);
+            }
+            if (factor[0] > 0 && factor[1] > 0) {
+                logSum[0] += Math.log(factor[0]);
+                logSum[1] += Math.log(factor[1]);
+                counted++;
+            }
+            System.out.printf("position %d: %d (%.2f) / %d (%.2f)%n", i,
+                    searches[0].getNodes(), factor[0],
+                    searches[1].getNodes(), factor[1]);
+        }
+        if (counted > 0) {
+            System.out.printf("branching factor: %.2f / %.2f%n",
+                    Math.exp(logSum[0] / counted), Math.exp(logSum[1]
+                            / counted));
+        }
+    }
+
+    /**
+     * Plays the selective search against the exact search at the same time
+     * per move. Each search plays the machine; for the human side the board
+     * is mirrored. The games start with random moves and the engines switch
+     * sides every game.
+     *
+     * @param games
+     *            number of games
+     * @param millis
+     *            time per move in milliseconds
+     */
+    private static void selfPlay(int games, long millis) {
+        TranspositionTable[] tables = {new TranspositionTable(16, true),
+                new TranspositionTable(16, true)};
+        SplittableRandom random = new SplittableRandom(1);
+        int[] moves = new int[Game.MAX_MOVES];
+        int wins = 0;
+        int losses = 0;
+        long[] depths = new long[2];
+        long[] searches = new long[2];
+        for (int g = 0; g < games; g++) {
+            Game game = new Game(Player.HUMAN);
+            for (int i = 0; i < 4; i++) {
+                game.makeMove(moves[random.nextInt(game.legalMoves(moves))]);
+            }
+            Player selective = g % 2 == 0 ? Player.MACHINE : Player.HUMAN;
+            while (!game.gameOver()) {
+                boolean machine = game.next() == Player.MACHINE;
+                int side = game.next() == selective ? 1 : 0;
+                Search search = new Search();
+                search.setPruning(side == 1);
+                search.setTable(tables[side]);
+                search.setTimeLimit(millis);
+                int m = search.search(machine ? game.clone() : mirror(game),
+                        Search.MAX_DEPTH).encode();
+                depths[side] += search.getDepth();
+                searches[side]++;
+                game.makeMove(machine ? m : Move.encode(mirror(Move.from(m)),
+                        mirror(Move.to(m))));
+            }
+            if (game.getWinner() == selective) {
+                wins++;
+            } else if (game.getWinner() != Player.NONE) {
+                losses++;
+            }
+        }
+        System.out.printf("Self play at %d ms per move: selective %d wins,"
+                + " %d losses, %d draws, depth avg %.1f / exact %.1f%n",
+                millis, wins, losses, games - wins - losses, (double) depths[1]
+                        / searches[1], (double) depths[0] / searches[0]);
+    }
+
+    /**
+     * Measures the playouts per second of the Monte Carlo tree search and
+     * plays it against the alpha-beta search at the same time per move, like
+     * {@link #selfPlay(int, long)}
+     *
+     * @param games
+     *            number of games
+     * @param millis
+     *            time per move in milliseconds
+     */
+    private static void engines(int games, long millis) {
+        MctsEngine engine = new MctsEngine();
+        engine.setTimeLimit(1000);
+        engine.choose(position(0), Game.DEFAULT_LEVEL, new SplittableRandom(1));
+        System.out.printf("MCTS: %,d playouts/s, threads: %d%n", engine
+                .getPlayouts(), Runtime.getRuntime().availableProcessors());
+
+        TranspositionTable table = new TranspositionTable(16, true);
+        SplittableRandom random = new SplittableRandom(1);
+        int[] moves = new int[Game.MAX_MOVES];
+        int wins = 0;
+        int losses = 0;
+        for (int g = 0; g < games; g++) {
+            Game game = new Game(Player.HUMAN);
+            for (int i = 0; i < 4; i++) {
+                game.makeMove(moves[random.nextInt(game.legalMoves(moves))]);
+            }
+            Player mcts = g % 2 == 0 ? Player.MACHINE : Player.HUMAN;
+            MctsEngine player = new MctsEngine();
+            player.setTimeLimit(millis);
+            while (!game.gameOver()) {
+                boolean machine = game.next() == Player.MACHINE;
+                Game view = machine ? game.clone() : mirror(game);
+                int m;
+                if (game.next() == mcts) {
+                    m = player.choose(view, Game.DEFAULT_LEVEL, random).get(0)
+                            .encode();
+                } else {
+                    Search search = new Search();
+                    search.setPruning(true);
+                    search.setTable(table);
+                    search.setTimeLimit(millis);
+                    m = search.search(view, Search.MAX_DEPTH).encode();
+                }
+                game.makeMove(machine ? m : Move.encode(mirror(Move.from(m)),
+                        mirror(Move.to(m))));
+            }
+            if (game.getWinner() == mcts) {
+                wins++;
+            } else if (game.getWinner() != Player.NONE) {
+                losses++;
+            }
+        }
+        System.out.printf("MCTS against alpha-beta at %d ms per move: %d wins,"
+                + " %d losses, %d draws%n", millis, wins, losses, games - wins
+                - losses);
+    }
+
+    /**
+     * Checks that the machine plays the mirrored move in the suite positions
+     * mirrored at the middle column and measures what the mirror-canonical
+     * keys save: a search of the mirror image after a search of the position
+     * finds its results in the transposition table.
+     *
+     * @param depth
+     *            the depth of the searches
+     */
+    private static void mirrors(int depth) {
+        System.out.println("Mirror images: nodes of the position / of its"
+                + " mirror image searched after it");
+        TranspositionTable table = new TranspositionTable(64, true);
+        long first = 0;
+        long second = 0;
+        int same = 0;
+        for (int i = 0; i < SUITE.length; i++) {
+            Game game = position(i);
+            Game image = flipColumns(game);
+            table.clear();
+            Search search = new Search();
+            search.setTable(table);
+            search.search(game.clone(), depth);
+            Search mirrored = new Search();
+            mirrored.setTable(table);
+            mirrored.search(image.clone(), depth);
+            first += search.getNodes();
+            second += mirrored.getNodes();
+            // a symmetric position is its own mirror image
+            boolean symmetric = game.getHash() == image.getHash();
+            game.setSeed(i);
+            image.setSeed(i);
+            game.machineMove();
+            image.machineMove();
+            int m = game.getHistory().get(0).encode();
+            if (image.getHistory().get(0).encode() == (symmetric ? m : Move
+                    .flipColumns(m))) {
+                same++;
+            }
+            System.out.println("position " + i + ": " + search.getNodes()
+                    + " / " + mirrored.getNodes() + ", score "
+                    + search.getScore() + " / " + mirrored.getScore());
+        }
+        System.out.printf("total: %d / %d nodes, mirrored machine moves:"
+                + " %d of %d%n", first, second, same, SUITE.length);
+    }
+
+    /**
+     * Mirrors a game state at the middle column
+     *
+     * @param game
+     *            the game state
+     * @return the mirrored game state with the same player to move
+     */
+    private static Game flipColumns(Game game) {
+        return Game.of(Bits.flipColumns(game.bits(Player.HUMAN)), Bits
+                .flipColumns(game.bits(Player.MACHINE)), game
+                .getFirstPlayer(), game.next());
+    }
+
+    /**
+     * Mirrors a game state whose turn it is the human's, so that the
+     * machine moves the human pawns
+     *
+     * @param game
+     *            the game state
+     * @return the mirrored game state with the machine to move
+     */
+    private static Game mirror(Game game) {
+        return Game.of(Bits.flipRows(game.bits(Player.MACHINE)),
+                Bits.flipRows(game.bits(Player.HUMAN)), Player.HUMAN,
+                Player.MACHINE);
+    }
+
+    /**
+     * Mirrors a slot at the middle row
+     *
+     * @param sq
+     *            bit index of the slot
+     * @return bit index of the mirrored slot
+     */
+    private static int mirror(int sq) {
+        return (Board.SIZE - 1 - sq / Board.SIZE) * Board.SIZE + sq
+                % Board.SIZE;
+    }
+
+    /**
+     * Compares the garbage collections while a filled transposition table
+     * is held on the heap and off the heap. The workload keeps a window of
+     * game states alive, so that they reach the old generation, and ends
+     * with full collections.
+     *
+     * @param megabytes
+     *            size of the table
+     */
+    private static void collections(int megabytes) {
+        System.out.println("GC with a " + megabytes
+                + " MB hash table: collections, ms, full gc ms");
+        for (boolean direct : new boolean[] {false, true}) {
+            TranspositionTable table;
+            try {
+                table = new TranspositionTable(megabytes, direct);
+            } catch (OutOfMemoryError e) {
+                System.out.println((direct ? "off heap" : "heap")
+                        + ": not enough memory");
+                continue;
+            }
+            for (int i = 0; i < SUITE.length; i++) {
+                Search search = new Search();
+                search.setTable(table);
+                search.search(position(i), 7);
+            }
+            System.gc();
+            long[] before = collections();
+            Game[] window = new Game[100000];
+            for (int i = 0; i < 4000000; i++) {
+                window[i % window.length] = position(i % SUITE.length);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < 3; i++) {
+                System.gc();
+            }
+            long full = (System.nanoTime() - start) / 3;
+            long[] after = collections();
+            System.out.printf("%-8s: %d %d %.1f%n", direct ? "off heap"
+                    : "heap", after[0] - before[0], after[1] - before[1],
+                    full / 1e6);
+            // keep the table and the window reachable until here
+            table.probe(window[0].getHash());
+        }
+    }
+
+    /**
+     * Sums up the collections of all garbage collectors
+     *
+     * @return the number of collections and their time in milliseconds
+     */
+    private static long[] collections() {
+        long[] sum = new long[2];
+        for (GarbageCollectorMXBean gc : ManagementFactory
+                .getGarbageCollectorMXBeans()) {
+            sum[0] += Math.max(0, gc.getCollectionCount());
+            sum[1] += Math.max(0, gc.getCollectionTime());
+        }
+        return sum;
+    }
+
+    /**
+     * Measures the evaluations per second of each evaluator on the game
+     * states of a search of the suite positions
+     */
+    private static void evaluations() {
+        List<Game> states = new ArrayList<Game>();
+        for (int i = 0; i < SUITE.length; i++) {
+            collect(position(i), 3, states);
+        }
+        Game[] leaves = states.toArray(new Game[states.size()]);
+        for (String name : Evaluators.names()) {
+            Evaluator evaluator = Evaluators.forName(name);
+            double sum = 0;
+            long count = 0;
+            long start = System.nanoTime();
+            long end = start + 1000000000L;
+            long now = start;
+            while (now < end) {
+                for (Game g : leaves) {
+                    sum += evaluator.evaluate(g, 3);
+                }
+                count += leaves.length;
+                now = System.nanoTime();
+            }
+            System.out.printf("%-10s %,12.0f evaluations/s (checksum %.1f)%n",
+                    name, count * 1e9 / (now - start), sum / count);
+        }
+    }
+
+    /**
+     * Compares the throughput of the scalar and the vector batch evaluator on
+     * the game states of a search of the suite positions and checks that
+     * both agree with the classic evaluator
+     */
+    private static void batches() {
+        List<Game> states = new ArrayList<Game>();
+        for (int i = 0; i < SUITE.length; i++) {
+            collect(position(i), 3, states);
+        }
+        int n = states.size();
+        long[] human = new long[n];
+        long[] machine = new long[n];
+        Player[] winner = new Player[n];
+        int[] depth = new int[n];
+        double[] expected = new double[n];
+        for (int i = 0; i < n; i++) {
+            Game g = states.get(i);
+            human[i] = g.bits(Player.HUMAN);
+            machine[i] = g.bits(Player.MACHINE);
+            winner[i] = g.getWinner();
+            depth[i] = 1 + i % 3;
+            expected[i] = Evaluators.CLASSIC.evaluate(g, depth[i]);
+        }
+        BatchEvaluator vector = BatchEvaluator.vector();
+        if (vector == null) {
+            System.out.println("batch vector: not available, run with"
+                    + " --add-modules jdk.incubator.vector");
+        }
+        double[] scores = new double[n];
+        for (BatchEvaluator batch : new BatchEvaluator[] {
+                BatchEvaluator.scalar(), vector }) {
+            if (batch == null) {
+                continue;
+            }
+            batch.evaluate(human, machine, winner, depth, n, scores);
+            int wrong = 0;
+            for (int i = 0; i < n; i++) {
+                if (scores[i] != expected[i]) {
+                    wrong++;
+                }
+            }
+            long count = 0;
+            long start = System.nanoTime();
+            long now = start;
+            while (now - start < 1000000000L) {
+                batch.evaluate(human, machine, winner, depth, n, scores);
+                count += n;
+                now = System.nanoTime();
+            }
+            System.out.printf("batch %-6s %,12.0f evaluations/s, %d of %d"
+                    + " differ from classic%n", batch.getName(), count * 1e9
+                    / (now - start), wrong, n);
+        }
+    }
+
+    /**
+     * Collects all game states of a gametree
+     *
+     * @param game
+     *            the root
+     * @param depth
+     *            depth of the tree
+     * @param states
+     *            receives the game states
+     */
+    private static void collect(Game game, int depth, List<Game> states) {
+        states.add(game);
+        if (depth > 0 && !game.gameOver()) {
+            for (Move m : game.legalMoves()) {
+                collect(game.play(m), depth - 1, states);
+            }
+        }
+    }
+
+    /**
+     * Measures the time to restore many saved games: saves games with 20 moves
+     * of history to a temporary session log and opens it again
+     *
+     * @param n
+     *            number of games
+     * @throws IOException
+     *             if the session log cannot be written
+     */
+    private static void sessions(int n) throws IOException {
+        Path file = Files.createTempFile("sessions", ".log");
+        try {
+            Game game = new Game(Player.HUMAN);
+            int[] moves = new int[Game.MAX_MOVES];
+            for (int i = 0; i < 20 && !game.gameOver(); i++) {
+                game.makeMove(moves[game.legalMoves(moves) / 2]);
+            }
+            try (SessionStore store = new SessionStore(file)) {
+                for (int i = 0; i < n; i++) {
+                    store.save("game" + i, game);
+                }
+            }
+            long start = System.nanoTime();
+            try (SessionStore store = new SessionStore(file)) {
+                long restored = System.nanoTime() - start;
+                for (int i = 0; i < n; i++) {
+                    store.load("game" + i);
+                }
+                long loaded = System.nanoTime() - start;
+                System.out.printf("Sessions: %d restored in %d ms (%d KB),"
+                        + " all loaded after %d ms%n", store.size(),
+                        restored / 1000000, Files.size(file) / 1024,
+                        loaded / 1000000);
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Measures the time to build the position index of a game database: adds
+     * 1, 10 and 100 percent of the random games to empty databases, so the
+     * time per game state should stay the same if building takes linear time
+     *
+     * @param n
+     *            number of games of the largest database
+     * @throws IOException
+     *             if the database cannot be written
+     */
+    private static void database(int n) throws IOException {
+        SplittableRandom random = new SplittableRandom(9);
+        int[] moves = new int[Game.MAX_MOVES];
+        List<Game> games = new ArrayList<Game>(n);
+        for (int i = 0; i < n; i++) {
+            Game game = new Game(Player.HUMAN);
+            while (!game.gameOver()) {
+                game.makeMove(moves[random.nextInt(game.legalMoves(moves))]);
+            }
+            games.add(game);
+        }
+        System.out.println("Game database: games, positions, build time");
+        for (int size = n / 100; size <= n; size *= 10) {
+            Path dir = Files.createTempDirectory("games");
+            try {
+                long start = System.nanoTime();
+                try (GameDatabase db = new GameDatabase(dir)) {
+                    for (int i = 0; i < size; i++) {
+                        db.add(games.get(i));
+                    }
+                    db.flush();
+                    long time = System.nanoTime() - start;
+                    start = System.nanoTime();
+                    long found = 0;
+                    for (int i = 0; i < 1000; i++) {
+                        Game game = games.get(random.nextInt(size));
+                        found += db.find(game.getHash(random.nextInt(game
+                                .getHistorySize() + 1))).length;
+                    }
+                    long lookup = System.nanoTime() - start;
+                    System.out.printf("%d games, %d positions (%d distinct):"
+                            + " %d ms, %.0f ns per position, lookup %.1f us"
+                            + " (%d games per position)%n", size,
+                            db.postings(), db.positions(), time / 1000000,
+                            (double) time / db.postings(), lookup / 1000.0 / 1000,
+                            found / 1000);
+                }
+            } finally {
+                try (Stream<Path> files = Files.list(dir)) {
+                    for (Path file : (Iterable<Path>) files::iterator) {
+                        Files.delete(file);
+                    }
+                }
+                Files.delete(dir);
+            }
+        }
+    }
+
+    /**
+     * Measures the heap used by one game state: the heap growth of keeping
+     * many clones of the suite positions alive
+     */
+    private static void footprint() {
+        final int n = 200000;
+        Game[] positions = new Game[n];
+        long before = usedHeap();
+        for (int i = 0; i < n; i++) {
+            positions[i] = position(i % SUITE.length).clone();
+        }
+        long after = usedHeap();
+        System.out.printf("Heap per position: %d bytes%n", (after - before)
+                / n);
+        // keep the positions reachable until they are measured
+        positions[0].next();
+    }
+
+    /**
+     * Compares the nodes of a search for the best move, a multi-PV search
+     * which ranks the best moves and a search which scores all moves
+     * exactly, the last two in one search each
+     *
+     * @param depth
+     *            the search depth
+     * @param k
+     *            the number of lines ranked
+     */
+    private static void lines(int depth, int k) {
+        int[] counts = {1, k, Board.MAX_MOVES};
+        long[] nodes = new long[counts.length];
+        long time = 0;
+        for (int i = 0; i < SUITE.length; i++) {
+            for (int j = 0; j < counts.length; j++) {
+                Search search = new Search();
+                search.setHashing(false);
+                search.setLines(counts[j]);
+                long start = System.nanoTime();
+                search.search(position(i), depth);
+                if (j == 1) {
+                    time += System.nanoTime() - start;
+                }
+                nodes[j] += search.getNodes();
+            }
+        }
+        System.out.printf("Multi-PV at depth %d: best move %d nodes, %d lines"
+                + " %d nodes (%.1f ms), all moves %d nodes%n", depth,
+                nodes[0], k, nodes[1], time / 1e6, nodes[2]);
+    }
+
+    /**
+     * Measures the human moves per second through the path of a MOVE
+     * command: the command is split and parsed, the move is validated and
+     * executed, and the next player is asked for. Each move follows a
+     * rejected request for a slot the pawn cannot reach. The machine answers
+     * with random legal moves, which are not counted.
+     *
+     * @param games
+     *            number of random games, each played twice
+     */
+    private static void moveRequests(int games) {
+        SplittableRandom random = new SplittableRandom(5);
+        int[] moves = new int[Game.MAX_MOVES];
+        List<int[]> lines = new ArrayList<int[]>(games);
+        for (int i = 0; i < games; i++) {
+            Game game = new Game(Player.HUMAN);
+            int n = 0;
+            int[] line = new int[4 * Game.SIZE * Game.SIZE];
+            while (!game.gameOver()) {
+                line[n] = moves[random.nextInt(game.legalMoves(moves))];
+                game.makeMove(line[n++]);
+            }
+            lines.add(Arrays.copyOf(line, n));
+        }
+        for (int round = 0; round < 2; round++) {
+            long requests = 0;
+            long start = System.nanoTime();
+            for (int[] line : lines) {
+                Game game = new Game(Player.HUMAN);
+                for (int move : line) {
+                    if (game.next() != Player.HUMAN) {
+                        game.makeMove(move);
+                        continue;
+                    }
+                    Move m = Move.decode(move);
+                    String[] words = Shell.WORDS.split("MOVE "
+                            + m.getColumnFrom() + " " + m.getRowFrom() + " "
+                            + m.getColumnTo() + " " + (m.getRowFrom() + 3));
+                    requests += request(game, words) ? 0 : 1;
+                    words[4] = Integer.toString(m.getRowTo());
+                    requests += request(game, words) ? 1 : 0;
+                }
+            }
+            long time = System.nanoTime() - start;
+            System.out.printf("Move requests: %.0f per second (%d ns per"
+                    + " request)%n", requests * 1e9 / time, time / requests);
+        }
+    }
+
+    /**
+     * Runs the path of a MOVE command
+     *
+     * @param game
+     *            the game, the human's turn
+     * @param words
+     *            the command and the coordinates
+     * @return true if the move was legal and the turn has passed
+     */
+    private static boolean request(Game game, String[] words) {
+        int[] coord = new int[4];
+        for (int i = 0; i < 4; i++) {
+            coord[i] = Integer.parseInt(words[i + 1]);
+            if (coord[i] <= 0 || coord[i] > Board.SIZE) {
+                return false;
+            }
+        }
+        return game.move(coord[0], coord[1], coord[2], coord[3])
+                && game.next() != null;
+    }
+
+    /**
+     * Measures the time and the heap of building full game trees of the
+     * start position, the second one in the arena of the first
+     *
+     * @param depth
+     *            depth of the trees
+     */
+    private static void trees(int depth) {
+        TreeArena arena = new TreeArena(1024);
+        for (int i = 0; i < 2; i++) {
+            long before = usedHeap();
+            long start = System.nanoTime();
+            GameTree tree = new GameTree(new Game(Player.HUMAN), depth, arena);
+            long time = System.nanoTime() - start;
+            System.out.printf("Game tree of depth %d: %d nodes in %d ms,"
+                    + " %d bytes per node, score %.1f, arena %s%n", depth,
+                    tree.size(), time / 1000000, (usedHeap() - before)
+                            / tree.size(), tree.getScore(), i == 0 ? "new"
+                            : "reused");
+        }
+    }
+
+    /**
+     * Measures the time to the first machine move of new processes: without
+     * preparation, after the warm-up, with a class data sharing archive and
+     * with both. The archive is trained by the "train" mode of the
+     * {@link Shell} and needs a class path of jar files.
+     *
+     * @param runs
+     *            processes per configuration, the median is printed
+     * @throws IOException
+     *             if a process cannot be started
+     */
+    private static void startup(int runs) throws IOException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java")
+                .toString();
+        String classPath = System.getProperty("java.class.path");
+        Path dir = Files.createTempDirectory("cds");
+        Path archive = dir.resolve("pawnchess.jsa");
+        try {
+            boolean jars = true;
+            for (String entry : classPath.split(File.pathSeparator)) {
+                jars &= entry.endsWith(".jar");
+            }
+            if (jars) {
+                run(java, "-XX:ArchiveClassesAtExit=" + archive, "-cp",
+                        classPath, Shell.class.getName(), "train", "2000");
+            }
+            System.out.println("Time to first move: process start to move"
+                    + " (move alone), median of " + runs + " processes");
+            String warmup = "-Dpawns_chess.warmup=2000";
+            String shared = "-XX:SharedArchiveFile=" + archive;
+            String[][] options = {{}, {warmup }, {shared }, {shared, warmup }, };
+            String[] names = {"cold", "warm-up 2 s", "AppCDS",
+                "AppCDS and warm-up 2 s", };
+            for (int i = 0; i < options.length; i++) {
+                if (!jars && i >= 2) {
+                    System.out.println(names[i]
+                            + ": needs a class path of jar files");
+                    continue;
+                }
+                long[] total = new long[runs];
+                long[] move = new long[runs];
+                for (int r = 0; r < runs; r++) {
+                    List<String> command = new ArrayList<String>();
+                    command.add(java);
+                    command.addAll(Arrays.asList(options[i]));
+                    command.addAll(Arrays.asList("-cp", classPath,
+                            Benchmark.class.getName(), "first-move"));
+                    String[] result = run(command.toArray(new String[0]))
+                            .split(" ");
+                    total[r] = Long.parseLong(result[0]);
+                    move[r] = Long.parseLong(result[1]);
+                }
+                Arrays.sort(total);
+                Arrays.sort(move);
+                System.out.printf("%s: %d ms (%.1f ms)%n", names[i],
+                        total[runs / 2], move[runs / 2] / 1000.0);
+            }
+        } finally {
+            Files.deleteIfExists(archive);
+            Files.delete(dir);
+        }
+    }
+
+    /**
+     * Runs a process and waits for it
+     *
+     * @param command
+     *            the command and its arguments
+     * @return the last line of its output
+     * @throws IOException
+     *             if the process cannot be started or fails
+     */
+    private static String run(String... command) throws IOException {
+        Process process = new ProcessBuilder(command).redirectError(
+                ProcessBuilder.Redirect.INHERIT).start();
+        String last = "";
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                process.getInputStream(), StandardCharsets.UTF_8))) {
+            for (String line = in.readLine(); line != null; line = in
+                    .readLine()) {
+                last = line;
+            }
+        }
+        try {
+            if (process.waitFor() != 0) {
+                throw new IOException("Failed: " + String.join(" ", command));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        }
+        return last;
+    }
+
+    /**
+     * Starts like the shell and plays the first machine move. Prints the
+     * milliseconds since the start of the process and the microseconds of
+     * the move.
+     */
+    private static void firstMove() {
+        EngineMetrics.registerInBackground();
+        Warmup.fromProperty();
+        long start = System.nanoTime();
+        new Game(Player.MACHINE);
+        long move = System.nanoTime() - start;
+        System.out.println(ManagementFactory.getRuntimeMXBean().getUptime()
+                + " " + move / 1000);
+    }
+
+    /**
+     * Gets the used heap after garbage collection
+     *
+     * @return used heap in bytes
+     */
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+}
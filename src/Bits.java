@@ -0,0 +1,174 @@
+package pawns_chess.model;
+
+/**
+ * The class Bits collects the bit mask helpers of the game. Bit
+ * {@code (row - 1) * SIZE + (col - 1)} of a mask stands for the slot at (col,
+ * row).
+ */
+final class Bits {
+
+    /**
+     * The size of the board
+     */
+    static final int SIZE = Board.SIZE;
+
+    /**
+     * All slots of the board
+     */
+    static final long BOARD = SIZE * SIZE == 64 ? -1L
+            : (1L << SIZE * SIZE) - 1;
+
+    /**
+     * The slots of the first and the last column
+     */
+    static final long FIRST_COLUMN;
+    static final long LAST_COLUMN;
+
+    static {
+        long firstColumn = 0;
+        for (int y = 0; y < SIZE; y++) {
+            firstColumn |= 1L << (y * SIZE);
+        }
+        FIRST_COLUMN = firstColumn;
+        LAST_COLUMN = firstColumn << (SIZE - 1);
+    }
+
+    /**
+     * not used
+     */
+    private Bits() {
+    }
+
+    /**
+     * Gets the bit index of a slot
+     *
+     * @param col
+     *            column of the slot
+     * @param row
+     *            row of the slot
+     * @return (row - 1) * SIZE + (col - 1)
+     */
+    static int square(int col, int row) {
+        return (row - 1) * SIZE + col - 1;
+    }
+
+    /**
+     * Gets the mask of all slots of a row
+     *
+     * @param row
+     *            the row
+     * @return the mask
+     */
+    static long rowMask(int row) {
+        return ((1L << SIZE) - 1) << ((row - 1) * SIZE);
+    }
+
+    /**
+     * Gets the slots a player's pawns can strike. These are the slots the
+     * pawns protect as well.
+     *
+     * @param pawns
+     *            mask of the pawns
+     * @param human
+     *            true if the pawns move upwards
+     * @return mask of the slots diagonally in front of the pawns
+     */
+    static long attacks(long pawns, boolean human) {
+        long left = pawns & ~FIRST_COLUMN;
+        long right = pawns & ~LAST_COLUMN;
+        if (human) {
+            return ((left << (SIZE - 1)) | (right << (SIZE + 1))) & BOARD;
+        }
+        return (left >>> (SIZE + 1)) | (right >>> (SIZE - 1));
+    }
+
+    /**
+     * Gets the slots next to the pawns, horizontally, vertically and
+     * diagonally
+     *
+     * @param pawns
+     *            mask of the pawns
+     * @return mask of the adjacent slots
+     */
+    static long neighbors(long pawns) {
+        long row = ((pawns & ~LAST_COLUMN) << 1) | ((pawns & ~FIRST_COLUMN)
+                >>> 1);
+        long wide = pawns | row;
+        return (row | (wide << SIZE) | (wide >>> SIZE)) & BOARD;
+    }
+
+    /**
+     * Sums up the number of rows the pawns have advanced from their ground
+     * line
+     *
+     * @param pawns
+     *            mask of the pawns
+     * @param human
+     *            true if the pawns move upwards
+     * @return sum of the distances to the ground line
+     */
+    static int advancement(long pawns, boolean human) {
+        int sum = 0;
+        for (int y = 1; y <= SIZE; y++) {
+            sum += (human ? y - 1 : SIZE - y) * Long.bitCount(pawns
+                    & rowMask(y));
+        }
+        return sum;
+    }
+
+    /**
+     * Mirrors the slots at the middle row: row 1 becomes row SIZE and vice
+     * versa
+     *
+     * @param mask
+     *            the slots
+     * @return the mirrored slots
+     */
+    static long flipRows(long mask) {
+        long res = 0;
+        for (int y = 1; y <= SIZE; y++) {
+            long row = (mask >>> ((y - 1) * SIZE)) & ((1L << SIZE) - 1);
+            res |= row << ((SIZE - y) * SIZE);
+        }
+        return res;
+    }
+
+    /**
+     * Mirrors a slot at the middle row
+     *
+     * @param sq
+     *            bit index of the slot
+     * @return bit index of the mirrored slot
+     */
+    static int flipRow(int sq) {
+        return (SIZE - 1 - sq / SIZE) * SIZE + sq % SIZE;
+    }
+
+    /**
+     * Mirrors the slots at the middle column: column 1 becomes column SIZE
+     * and vice versa
+     *
+     * @param mask
+     *            the slots
+     * @return the mirrored slots
+     */
+    static long flipColumns(long mask) {
+        long res = 0;
+        for (int x = 0; x < SIZE; x++) {
+            res |= ((mask >>> x) & FIRST_COLUMN) << (SIZE - 1 - x);
+        }
+        return res;
+    }
+
+    /**
+     * Mirrors a slot at the middle column
+     *
+     * @param sq
+     *            bit index of the slot
+     * @return bit index of the mirrored slot
+     */
+    static int flipColumn(int sq) {
+        return sq - sq % SIZE + SIZE - 1 - sq % SIZE;
+    }
+
+}
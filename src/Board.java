@@ -27,6 +27,17 @@ public interface Board extends Cloneable {
      */
     int SIZE = 8;
 
+    /**
+     * The highest skill level of the machine. Each level allows the machine
+     * about 1.75 times the positions of the level below.
+     */
+    int MAX_LEVEL = 20;
+
+    /**
+     * The maximal number of legal moves of one player.
+     */
+    int MAX_MOVES = 4 * SIZE;
+
     /**
      * Gets the player who should or already has opened the game. As an
      * invariant, this player has the white tiles.
@@ -67,6 +78,50 @@ public interface Board extends Cloneable {
      */
     boolean move(int colFrom, int rowFrom, int colTo, int rowTo);
 
+    /**
+     * Lists all legal moves of the human. Each move is encoded in one int,
+     * see {@link Move#decode(int)}, so a client can list the moves after
+     * every turn into the same buffer.
+     * 
+     * @param buffer
+     *            Receives the encoded moves, at least {@link #MAX_MOVES}
+     *            long.
+     * @return The number of legal moves, 0 if the game is over or it is not
+     *         the human's turn.
+     */
+    int humanMoves(int[] buffer);
+
+    /**
+     * Gets all slots a pawn of the human can move to.
+     * 
+     * @param col
+     *            The column of the pawn.
+     * @param row
+     *            The row of the pawn.
+     * @return The slots as a bit mask: bit (row - 1) * {@link #SIZE} + (col -
+     *         1) is set if the pawn can move to (col, row). 0 if there is no
+     *         human pawn at the slot, the game is over or it is not the
+     *         human's turn.
+     * @throws IllegalArgumentException
+     *             If the slot is outside the grid.
+     */
+    long destinations(int col, int row);
+
+    /**
+     * Ranks the best moves of the player to move with one search: each line
+     * holds a move, its score for this player and the expected line of play.
+     * The search visits about the positions of a machine move on the current
+     * level for each line and scores exactly, without selective pruning.
+     * 
+     * @param lines
+     *            The number of moves to rank, at least 1.
+     * @return The analysis, fewer lines if the player has fewer moves and no
+     *         lines if the game is over.
+     * @throws IllegalArgumentException
+     *             If less than one line is requested.
+     */
+    Analysis analyze(int lines);
+
     /**
      * Executes a machine move.
      * 
@@ -75,14 +130,54 @@ public interface Board extends Cloneable {
      */
     void machineMove();
 
+    /**
+     * Takes back the last move of the human and all machine moves after it.
+     * 
+     * @return {@code true} if and only if there was a human move to take back.
+     */
+    boolean undo();
+
+    /**
+     * Executes the human move taken back last and the machine moves after it
+     * again. All moves taken back are discarded by the next move.
+     * 
+     * @return {@code true} if and only if there was a move to redo.
+     */
+    boolean redo();
+
     /**
      * Sets the skill level of the machine.
      * 
      * @param level
-     *            The skill as a number, must be at least 1.
+     *            The skill as a number, 1 to {@link #MAX_LEVEL}.
      */
     void setLevel(int level);
 
+    /**
+     * Sets the evaluator which scores the game states for the machine.
+     * 
+     * @param evaluator
+     *            The evaluator, see {@link Evaluators}.
+     */
+    void setEvaluator(Evaluator evaluator);
+
+    /**
+     * Sets the engine which chooses the moves of the machine.
+     * 
+     * @param engine
+     *            The engine, see {@link Engines}.
+     */
+    void setEngine(Engine engine);
+
+    /**
+     * Seeds the choice of the machine among equally good moves. Games with
+     * the same seed and the same human moves are equal.
+     * 
+     * @param seed
+     *            The seed.
+     */
+    void setSeed(long seed);
+
     /**
      * Checks if the game is over. Either one player has won or there is a draw,
      * i.e., no player can perform any further move.
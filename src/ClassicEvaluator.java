@@ -0,0 +1,111 @@
+package pawns_chess.model;
+
+/**
+ * The original score of the game: the sum of the number score, the distance
+ * score, the score of threatened pawns, the isolation score and the victory
+ * score. Human pawns weigh one and a half times as much as machine pawns.
+ */
+class ClassicEvaluator implements Evaluator {
+
+    @Override
+    public String getName() {
+        return "classic";
+    }
+
+    @Override
+    public double evaluate(Game game, int depth) {
+        long human = game.bits(Player.HUMAN);
+        long machine = game.bits(Player.MACHINE);
+        return scoreN(human, machine) + scoreD(human, machine)
+                + scoreC(human, machine) + scoreI(human, machine)
+                + scoreV(game.getWinner(), depth);
+    }
+
+    /**
+     * Computes the number score: A high number of living machine pawns is good,
+     * whereas a high number of living human pawns is bad.
+     *
+     * @param human
+     *            mask of the human pawns
+     * @param machine
+     *            mask of the machine pawns
+     * @return number score
+     */
+    static double scoreN(long human, long machine) {
+        return Long.bitCount(machine) - (double) Long.bitCount(human) * 1.5;
+    }
+
+    /**
+     * Computes the distance score: A high Distance to the start line is
+     * considered good.
+     *
+     * @param human
+     *            mask of the human pawns
+     * @param machine
+     *            mask of the machine pawns
+     * @return distance score
+     */
+    static double scoreD(long human, long machine) {
+        double scoreDH = Bits.advancement(human, true);
+        double scoreDM = Bits.advancement(machine, false);
+        return scoreDM - scoreDH * 1.5;
+    }
+
+    /**
+     * Computes the scoreC: pawns that are threatened by the opponent and are
+     * not protected are considered bad.
+     *
+     * @param human
+     *            mask of the human pawns
+     * @param machine
+     *            mask of the machine pawns
+     * @return score of threatened pawns
+     */
+    static double scoreC(long human, long machine) {
+        long humanAttacks = Bits.attacks(human, true);
+        long machineAttacks = Bits.attacks(machine, false);
+        double scoreCH = Long.bitCount(human & machineAttacks & ~humanAttacks);
+        double scoreCM = Long.bitCount(machine & humanAttacks
+                & ~machineAttacks);
+        return scoreCH - 3 * scoreCM / 2;
+    }
+
+    /**
+     * Computes the isolation score: isolated pawns are considered bad
+     *
+     * @param human
+     *            mask of the human pawns
+     * @param machine
+     *            mask of the machine pawns
+     * @return isolation score
+     */
+    static double scoreI(long human, long machine) {
+        double scoreIH = Long.bitCount(human & ~Bits.neighbors(human));
+        double scoreIM = Long.bitCount(machine & ~Bits.neighbors(machine));
+        return scoreIH - 3 * scoreIM / 2;
+    }
+
+    /**
+     * Computes the victory score: if a move leads to victoy it is a very good
+     * move
+     *
+     * @param winner
+     *            the winner of the game state
+     * @param i
+     *            depth in the gametree
+     * @return victory score
+     */
+    static double scoreV(Player winner, int i) {
+        double scoreVH = 0;
+        double scoreVM = 0;
+
+        if (winner == Player.HUMAN) {
+            scoreVH = 5000 / i;
+        }
+        if (winner == Player.MACHINE) {
+            scoreVM = 5000 / i;
+        }
+        return scoreVM - 3 * scoreVH / 2;
+    }
+
+}
@@ -0,0 +1,549 @@
+package pawns_chess.model;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The class Coordinator distributes a job over {@link Worker} processes,
+ * which connect over TCP: self-play games between two evaluators or the
+ * search of a set of positions. The tasks of the job (a game or a position
+ * each) are handed out in batches. A worker gets its next batch when it has
+ * sent the results of its current one, so fast workers get more batches and
+ * the throughput grows with the number of workers. Workers may connect at
+ * any time.
+ *
+ * <p>
+ * If a worker disconnects, sends nothing for the timeout or reports a failed
+ * task, the unfinished tasks of its batch are handed out again, to the same
+ * or another worker. A task which fails more than the allowed retries gets
+ * the result {@code index <TAB> - <TAB> failed: reason}. Results which arrive
+ * twice are counted once. The results are written in the order of the tasks
+ * when the job is complete.
+ *
+ * <p>
+ * The protocol consists of lines of UTF-8 text. The worker sends
+ * {@code HELLO threads} and receives {@code JOB kind options}. Then the
+ * coordinator sends {@code BATCH id n} followed by n task lines, and the
+ * worker answers each task with {@code R id result} or
+ * {@code FAIL id index reason}, until the coordinator sends {@code BYE}.
+ *
+ * <p>
+ * Usage: {@code coordinate games=n [level=n] [a=eval] [b=eval] [openings=n]
+ * [seed=n]} or {@code coordinate positions=file [depth=n] [time=ms]
+ * [eval=name] [format=text|binary]}, each followed by {@code [port=n]
+ * [batch=n] [retries=n] [timeout=ms] [out=file]}
+ */
+public final class Coordinator {
+
+    private static final int DEFAULT_PORT = 7070;
+
+    private final ServerSocket server;
+    private final String job;
+    private final String[] tasks;
+    private final String[] results;
+    private final int[] attempts;
+    private final int batchSize;
+    private final int retries;
+    private final int timeout;
+
+    /**
+     * Tasks waiting for a worker, those to retry first
+     */
+    private final Deque<Integer> pending = new ArrayDeque<Integer>();
+
+    /**
+     * Number of tasks with a result and with a final failure
+     */
+    private int done;
+    private int failed;
+    private int batches;
+    private int workers;
+
+    /**
+     * Creates a coordinator listening on a port
+     *
+     * @param port
+     *            the port, 0 for any free port
+     * @param job
+     *            the kind and the options of the job sent to the workers
+     * @param tasks
+     *            the task lines
+     * @param batchSize
+     *            the number of tasks of a batch
+     * @param retries
+     *            how often a failed task is handed out again
+     * @param timeout
+     *            how long a worker may send nothing in milliseconds
+     * @throws IOException
+     *             if the port cannot be opened
+     */
+    public Coordinator(int port, String job, String[] tasks, int batchSize,
+            int retries, int timeout) throws IOException {
+        this.job = job;
+        this.tasks = tasks;
+        this.results = new String[tasks.length];
+        this.attempts = new int[tasks.length];
+        this.batchSize = Math.max(1, batchSize);
+        this.retries = retries;
+        this.timeout = timeout;
+        for (int i = 0; i < tasks.length; i++) {
+            pending.add(i);
+        }
+        server = new ServerSocket(port);
+    }
+
+    /**
+     * Runs the coordinator mode
+     *
+     * @param args
+     *            the options
+     * @throws IOException
+     *             if the positions cannot be read, the port not be opened or
+     *             the results not be written
+     */
+    public static void main(String[] args) throws IOException {
+        String kind = null;
+        StringBuilder options = new StringBuilder();
+        String positions = null;
+        boolean binary = false;
+        int games = 0;
+        int port = DEFAULT_PORT;
+        int batch = 0;
+        int retries = 3;
+        int timeout = 600000;
+        String out = null;
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            String value = option.length == 2 ? option[1] : "";
+            switch (option[0].toLowerCase()) {
+            case "games":
+                kind = "games";
+                games = Integer.parseInt(value);
+                break;
+            case "positions":
+                kind = "positions";
+                positions = value;
+                binary = value.endsWith(".bin");
+                break;
+            case "format":
+                binary = value.equalsIgnoreCase("binary");
+                break;
+            case "port":
+                port = Integer.parseInt(value);
+                break;
+            case "batch":
+                batch = Integer.parseInt(value);
+                break;
+            case "retries":
+                retries = Integer.parseInt(value);
+                break;
+            case "timeout":
+                timeout = Integer.parseInt(value);
+                break;
+            case "out":
+                out = value;
+                break;
+            case "level":
+            case "a":
+            case "b":
+            case "openings":
+            case "seed":
+            case "depth":
+            case "time":
+            case "eval":
+                // checked by the workers
+                options.append(' ').append(option[0].toLowerCase())
+                        .append('=').append(value);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+        if (kind == null) {
+            System.out.println("Usage: coordinate games=n|positions=file"
+                    + " [level=n] [a=eval] [b=eval] [openings=n] [seed=n]"
+                    + " [depth=n] [time=ms] [eval=name] [port=n] [batch=n]"
+                    + " [retries=n] [timeout=ms] [out=file]");
+            return;
+        }
+        String[] tasks = kind.equals("games") ? gameTasks(games)
+                : positionTasks(positions, binary);
+        if (batch == 0) {
+            batch = kind.equals("games") ? 4 : 64;
+        }
+        Coordinator coordinator = new Coordinator(port, kind + options, tasks,
+                batch, retries, timeout);
+        PrintStream log = out == null ? System.err : System.out;
+        log.println("Waiting for workers on port "
+                + coordinator.getPort() + " for " + tasks.length + " tasks");
+        long start = System.nanoTime();
+        String[] results = coordinator.run(log);
+        long millis = (System.nanoTime() - start) / 1000000;
+        Writer writer = out == null ? new OutputStreamWriter(System.out,
+                StandardCharsets.UTF_8) : Files.newBufferedWriter(Paths
+                .get(out), StandardCharsets.UTF_8);
+        int[] outcomes = new int[3];
+        try (BufferedWriter w = new BufferedWriter(writer)) {
+            for (String result : results) {
+                w.write(result);
+                w.write('\n');
+                String[] fields = result.split("\t");
+                if (fields.length > 1) {
+                    outcomes[fields[1].equals("A") ? 0 : fields[1]
+                            .equals("B") ? 1 : 2]++;
+                }
+            }
+        }
+        log.printf("%d tasks in %d ms (%.1f per second), %d batches, %d"
+                + " failed%n", tasks.length, millis, tasks.length * 1000.0
+                / Math.max(1, millis), coordinator.batches, coordinator.failed);
+        if (kind.equals("games")) {
+            log.printf("A %d wins, B %d wins, %d draws%n", outcomes[0],
+                    outcomes[1], outcomes[2] - coordinator.failed);
+        }
+    }
+
+    /**
+     * Creates the tasks of self-play games
+     *
+     * @param games
+     *            number of games
+     * @return the indexes of the games
+     */
+    private static String[] gameTasks(int games) {
+        String[] tasks = new String[games];
+        for (int i = 0; i < games; i++) {
+            tasks[i] = Integer.toString(i);
+        }
+        return tasks;
+    }
+
+    /**
+     * Reads the tasks of a set of positions
+     *
+     * @param file
+     *            the positions in a format of the {@link Analyzer}
+     * @param binary
+     *            true for binary records
+     * @return for each position its index, its white and black pawns as
+     *         hexadecimal masks and the color to move
+     * @throws IOException
+     *             if the positions cannot be read
+     */
+    private static String[] positionTasks(String file, boolean binary)
+        throws IOException {
+        List<String> tasks = new ArrayList<String>();
+        if (binary) {
+            try (FileChannel channel = FileChannel.open(Paths.get(file),
+                    StandardOpenOption.READ)) {
+                addTasks(Analyzer.binarySource(channel), tasks);
+            }
+        } else {
+            try (BufferedReader r = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(file), StandardCharsets.UTF_8))) {
+                addTasks(Analyzer.textSource(r), tasks);
+            }
+        }
+        return tasks.toArray(new String[tasks.size()]);
+    }
+
+    /**
+     * Adds a task for each position of a source
+     *
+     * @param source
+     *            the positions
+     * @param tasks
+     *            receives the tasks
+     * @throws IOException
+     *             if the positions cannot be read
+     */
+    private static void addTasks(Analyzer.Source source, List<String> tasks)
+        throws IOException {
+        for (Analyzer.Position p = source.next(); p != null; p = source
+                .next()) {
+            tasks.add(tasks.size() + " " + Long.toHexString(p.white) + " "
+                    + Long.toHexString(p.black) + " "
+                    + (p.whiteToMove ? "W" : "B") + " "
+                    + (p.whiteUp ? "W" : "B"));
+        }
+    }
+
+    /**
+     * Gets the port the coordinator listens on
+     *
+     * @return the port
+     */
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * Serves workers until all tasks have a result
+     *
+     * @param log
+     *            receives a line when a worker connects or fails
+     * @return the results in the order of the tasks
+     * @throws IOException
+     *             if the port fails
+     */
+    public String[] run(final PrintStream log) throws IOException {
+        try {
+            while (!finished()) {
+                final Socket socket;
+                try {
+                    socket = server.accept();
+                } catch (SocketException e) {
+                    if (finished()) {
+                        break;
+                    }
+                    throw e;
+                }
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(socket, log);
+                    }
+                }, "worker " + socket.getRemoteSocketAddress());
+                thread.setDaemon(true);
+                thread.start();
+            }
+        } finally {
+            server.close();
+        }
+        synchronized (this) {
+            return results.clone();
+        }
+    }
+
+    /**
+     * Hands out batches to a worker and collects its results until there are
+     * no more tasks or the worker fails
+     *
+     * @param socket
+     *            the connection to the worker
+     * @param log
+     *            receives a line when the worker connects or fails
+     */
+    private void serve(Socket socket, PrintStream log) {
+        String name = socket.getRemoteSocketAddress().toString();
+        Set<Integer> inFlight = new HashSet<Integer>();
+        boolean counted = false;
+        try (Socket s = socket) {
+            s.setSoTimeout(timeout);
+            BufferedReader in = new BufferedReader(new InputStreamReader(s
+                    .getInputStream(), StandardCharsets.UTF_8));
+            Writer out = new BufferedWriter(new OutputStreamWriter(s
+                    .getOutputStream(), StandardCharsets.UTF_8));
+            String hello = in.readLine();
+            if (hello == null || !hello.startsWith("HELLO")) {
+                throw new IOException("Not a worker: " + hello);
+            }
+            connected(name, hello, log);
+            counted = true;
+            out.write("JOB " + job + "\n");
+            for (List<Integer> batch = take(); !batch.isEmpty(); batch = take()) {
+                int id = nextBatch();
+                out.write("BATCH " + id + " " + batch.size() + "\n");
+                for (int i : batch) {
+                    out.write(tasks[i] + "\n");
+                }
+                out.flush();
+                inFlight.addAll(batch);
+                while (!inFlight.isEmpty()) {
+                    String line = in.readLine();
+                    if (line == null) {
+                        throw new EOFException("Worker disconnected");
+                    }
+                    receive(line, id, inFlight);
+                }
+            }
+            out.write("BYE\n");
+            out.flush();
+        } catch (IOException | RuntimeException e) {
+            log.println("Worker " + name + " failed: " + e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            disconnected(inFlight, "worker " + name + " failed", counted);
+        }
+    }
+
+    /**
+     * Handles a message of a worker
+     *
+     * @param line
+     *            the message
+     * @param id
+     *            the id of the batch of the worker
+     * @param inFlight
+     *            the tasks of the batch without a result
+     * @throws IOException
+     *             if the message is invalid
+     */
+    private void receive(String line, int id, Set<Integer> inFlight)
+        throws IOException {
+        String[] words = line.split(" ", 3);
+        if (words.length < 3 || !words[1].equals(Integer.toString(id))) {
+            throw new IOException("Unexpected message: " + line);
+        }
+        if (words[0].equals("R")) {
+            int tab = words[2].indexOf('\t');
+            int index = Integer.parseInt(tab < 0 ? words[2] : words[2]
+                    .substring(0, tab));
+            if (inFlight.remove(index)) {
+                complete(index, words[2]);
+            }
+        } else if (words[0].equals("FAIL")) {
+            String[] failure = words[2].split(" ", 2);
+            int index = Integer.parseInt(failure[0]);
+            if (inFlight.remove(index)) {
+                fail(index, failure.length > 1 ? failure[1] : "");
+            }
+        } else {
+            throw new IOException("Unexpected message: " + line);
+        }
+    }
+
+    /**
+     * Tells whether all tasks have a result
+     *
+     * @return true if the job is complete
+     */
+    private synchronized boolean finished() {
+        return done == tasks.length;
+    }
+
+    /**
+     * Counts a connected worker
+     *
+     * @param name
+     *            the address of the worker
+     * @param hello
+     *            its first message
+     * @param log
+     *            receives a line
+     */
+    private synchronized void connected(String name, String hello,
+            PrintStream log) {
+        workers++;
+        log.println("Worker " + name + " connected (" + hello.substring(5)
+                .trim() + " threads), " + workers + " workers");
+    }
+
+    /**
+     * Gets the id of a new batch
+     *
+     * @return the id
+     */
+    private synchronized int nextBatch() {
+        return batches++;
+    }
+
+    /**
+     * Takes the next batch of tasks, waiting while all remaining tasks are in
+     * flight with other workers, which might fail
+     *
+     * @return the tasks, empty if all tasks have a result
+     * @throws InterruptedException
+     *             if the thread is interrupted while waiting
+     */
+    private synchronized List<Integer> take() throws InterruptedException {
+        while (pending.isEmpty() && done < tasks.length) {
+            wait();
+        }
+        List<Integer> batch = new ArrayList<Integer>(batchSize);
+        while (batch.size() < batchSize && !pending.isEmpty()) {
+            batch.add(pending.poll());
+        }
+        return batch;
+    }
+
+    /**
+     * Stores the result of a task
+     *
+     * @param index
+     *            the index of the task
+     * @param result
+     *            the result line
+     */
+    private synchronized void complete(int index, String result) {
+        if (results[index] != null) {
+            return;
+        }
+        results[index] = result;
+        done++;
+        if (done == tasks.length) {
+            notifyAll();
+            try {
+                // ends the accept loop
+                server.close();
+            } catch (IOException e) {
+                // the loop ends anyway with the next worker
+            }
+        }
+    }
+
+    /**
+     * Hands a failed task out again or gives it up after the retries
+     *
+     * @param index
+     *            the index of the task
+     * @param reason
+     *            why it failed
+     */
+    private synchronized void fail(int index, String reason) {
+        if (results[index] != null) {
+            return;
+        }
+        if (++attempts[index] > retries) {
+            failed++;
+            complete(index, index + "\t-\tfailed: " + reason);
+        } else {
+            pending.addFirst(index);
+            notifyAll();
+        }
+    }
+
+    /**
+     * Hands the unfinished tasks of a worker out again
+     *
+     * @param inFlight
+     *            the tasks of the worker without a result
+     * @param reason
+     *            why the worker stopped
+     * @param counted
+     *            true if the worker was counted as connected
+     */
+    private synchronized void disconnected(Collection<Integer> inFlight,
+            String reason, boolean counted) {
+        if (counted) {
+            workers--;
+        }
+        for (int index : inFlight) {
+            fail(index, reason);
+        }
+    }
+
+}
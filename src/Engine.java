@@ -0,0 +1,34 @@
+package pawns_chess.model;
+
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * An Engine chooses the moves of the machine player, see the ENGINE command.
+ * Engines may keep state from move to move, so each game has an engine of
+ * its own.
+ */
+public interface Engine {
+
+    /**
+     * Gets the name of the engine, as used by the ENGINE command.
+     *
+     * @return the name in lower case
+     */
+    String getName();
+
+    /**
+     * Chooses the move of the machine.
+     *
+     * @param game
+     *            the game state, it is the machine's turn. It is not changed.
+     * @param level
+     *            the level of the game, 1 to {@link Board#MAX_LEVEL}
+     * @param random
+     *            the random source of the game
+     * @return the principal variation: the move to play followed by the
+     *         expected answers
+     */
+    List<Move> choose(Game game, int level, SplittableRandom random);
+
+}
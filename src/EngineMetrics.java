@@ -0,0 +1,306 @@
+package pawns_chess.model;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * The class EngineMetrics counts what the engine does: searches, nodes,
+ * search latencies and active games. Recording is switched off by default and
+ * can be switched on at runtime by the STATS command, over JMX or with the
+ * system property {@code pawns_chess.metrics=true}. While switched off a
+ * search costs a single volatile read. The counters are lock free, so
+ * concurrent searches can record at the same time.
+ *
+ * <p>
+ * Latencies are kept in a histogram with four buckets per power of two
+ * microseconds, so percentiles are exact up to 25 percent.
+ */
+public final class EngineMetrics implements EngineMetricsMXBean {
+
+    /**
+     * The JMX name of the metrics
+     */
+    public static final String OBJECT_NAME = "pawns_chess.model:type=EngineMetrics";
+
+    /**
+     * Number of latency buckets: four for each power of two
+     */
+    private static final int BUCKETS = 256;
+
+    private static final EngineMetrics INSTANCE = new EngineMetrics();
+
+    private volatile boolean enabled = Boolean.getBoolean("pawns_chess.metrics");
+
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder nodes = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+    private final AtomicLongArray latency = new AtomicLongArray(BUCKETS);
+    private final AtomicLong maxLatency = new AtomicLong();
+    private final AtomicInteger gamesActive = new AtomicInteger();
+    private final LongAdder hashProbes = new LongAdder();
+    private final LongAdder hashHits = new LongAdder();
+
+    /**
+     * not used
+     */
+    private EngineMetrics() {
+    }
+
+    /**
+     * Gets the metrics of this process
+     *
+     * @return the metrics
+     */
+    public static EngineMetrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server. Registering them
+     * twice does no harm.
+     */
+    public static void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE,
+                    new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // registered before
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register " + OBJECT_NAME,
+                    e);
+        }
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server in a daemon
+     * thread. Starting the MBean server takes about a third of a second,
+     * which would otherwise delay the first move.
+     */
+    public static void registerInBackground() {
+        Thread t = new Thread(EngineMetrics::register, "EngineMetrics");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Records a finished search
+     *
+     * @param searchNodes
+     *            nodes visited by the search
+     * @param searchNanos
+     *            duration of the search in nanoseconds
+     */
+    void searchCompleted(long searchNodes, long searchNanos) {
+        searches.increment();
+        nodes.add(searchNodes);
+        nanos.add(searchNanos);
+        long micros = searchNanos / 1000;
+        latency.incrementAndGet(bucket(micros));
+        maxLatency.accumulateAndGet(micros, Math::max);
+    }
+
+    /**
+     * Records the lookups of a search in the transposition table
+     *
+     * @param probes
+     *            number of lookups
+     * @param hits
+     *            number of lookups which found an entry
+     */
+    void tableProbed(long probes, long hits) {
+        hashProbes.add(probes);
+        hashHits.add(hits);
+    }
+
+    /**
+     * Records the start of a game
+     */
+    void gameOpened() {
+        gamesActive.incrementAndGet();
+    }
+
+    /**
+     * Records the end of a game
+     */
+    void gameClosed() {
+        gamesActive.decrementAndGet();
+    }
+
+    @Override
+    public long getSearches() {
+        return searches.sum();
+    }
+
+    @Override
+    public long getNodes() {
+        return nodes.sum();
+    }
+
+    @Override
+    public long getNodesPerSecond() {
+        long time = nanos.sum();
+        return time == 0 ? 0 : (long) (nodes.sum() * 1e9 / time);
+    }
+
+    @Override
+    public double getLatencyP50() {
+        return percentile(0.5);
+    }
+
+    @Override
+    public double getLatencyP90() {
+        return percentile(0.9);
+    }
+
+    @Override
+    public double getLatencyP99() {
+        return percentile(0.99);
+    }
+
+    @Override
+    public double getLatencyMax() {
+        return maxLatency.get() / 1000.0;
+    }
+
+    @Override
+    public int getGamesActive() {
+        return gamesActive.get();
+    }
+
+    @Override
+    public long getCacheResults() {
+        ResultCache cache = ResultCache.shared();
+        return cache == null ? 0 : cache.size();
+    }
+
+    @Override
+    public long getCacheBytes() {
+        ResultCache cache = ResultCache.shared();
+        return cache == null ? 0 : cache.bytes();
+    }
+
+    @Override
+    public double getCacheHitRatio() {
+        ResultCache cache = ResultCache.shared();
+        return cache == null ? 0 : cache.hitRatio();
+    }
+
+    @Override
+    public int getHashMegabytes() {
+        return TranspositionTable.shared().getMegabytes();
+    }
+
+    @Override
+    public double getHashHitRatio() {
+        long probes = hashProbes.sum();
+        return probes == 0 ? 0 : (double) hashHits.sum() / probes;
+    }
+
+    @Override
+    public void reset() {
+        searches.reset();
+        nodes.reset();
+        nanos.reset();
+        for (int i = 0; i < BUCKETS; i++) {
+            latency.set(i, 0);
+        }
+        maxLatency.set(0);
+        hashProbes.reset();
+        hashHits.reset();
+    }
+
+    /**
+     * Gets a percentile of the search latency
+     *
+     * @param p
+     *            the percentile between 0 and 1
+     * @return the upper bound of the bucket holding the percentile in
+     *         milliseconds
+     */
+    public double percentile(double p) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = latency.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(p * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= Math.max(1, rank)) {
+                return Math.min(upperBound(i), maxLatency.get()) / 1000.0;
+            }
+        }
+        return getLatencyMax();
+    }
+
+    /**
+     * Gets the bucket of a latency
+     *
+     * @param micros
+     *            the latency in microseconds
+     * @return the bucket
+     */
+    private static int bucket(long micros) {
+        if (micros < 4) {
+            return (int) Math.max(0, micros);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) (micros >>> (exponent - 2)) & 3;
+        return 4 * (exponent - 1) + sub;
+    }
+
+    /**
+     * Gets the largest latency of a bucket
+     *
+     * @param bucket
+     *            the bucket
+     * @return the latency in microseconds
+     */
+    private static long upperBound(int bucket) {
+        if (bucket < 4) {
+            return bucket;
+        }
+        int exponent = bucket / 4 + 1;
+        return ((5L + bucket % 4) << (exponent - 2)) - 1;
+    }
+
+    /**
+     * The metrics as printed by the STATS command
+     */
+    @Override
+    public String toString() {
+        return String.format("metrics %s%nsearches %d%nnodes %d%n"
+                + "nodes/s %d%nlatency ms p50 %.1f p90 %.1f p99 %.1f"
+                + " max %.1f%ngames active %d", enabled ? "on" : "off",
+                getSearches(), getNodes(), getNodesPerSecond(),
+                getLatencyP50(), getLatencyP90(), getLatencyP99(),
+                getLatencyMax(), getGamesActive())
+                + String.format("%n%s", ResultCache.shared() == null
+                        ? "cache off" : ResultCache.shared())
+                + String.format("%nhash %d MB hit ratio %.3f",
+                        getHashMegabytes(), getHashHitRatio());
+    }
+
+}
@@ -0,0 +1,121 @@
+package pawns_chess.model;
+
+/**
+ * The management interface of the {@link EngineMetrics}, registered as
+ * {@value EngineMetrics#OBJECT_NAME}. Latencies are given in milliseconds.
+ */
+public interface EngineMetricsMXBean {
+
+    /**
+     * Checks if the metrics are recorded
+     *
+     * @return true if recording
+     */
+    boolean isEnabled();
+
+    /**
+     * Switches recording on or off
+     *
+     * @param enabled
+     *            true to record
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * Gets the number of searches recorded
+     *
+     * @return number of searches
+     */
+    long getSearches();
+
+    /**
+     * Gets the number of nodes of all recorded searches
+     *
+     * @return number of nodes
+     */
+    long getNodes();
+
+    /**
+     * Gets the nodes searched per second over all recorded searches
+     *
+     * @return nodes per second
+     */
+    long getNodesPerSecond();
+
+    /**
+     * Gets the median search latency
+     *
+     * @return latency in milliseconds
+     */
+    double getLatencyP50();
+
+    /**
+     * Gets the 90th percentile of the search latency
+     *
+     * @return latency in milliseconds
+     */
+    double getLatencyP90();
+
+    /**
+     * Gets the 99th percentile of the search latency
+     *
+     * @return latency in milliseconds
+     */
+    double getLatencyP99();
+
+    /**
+     * Gets the longest search latency
+     *
+     * @return latency in milliseconds
+     */
+    double getLatencyMax();
+
+    /**
+     * Gets the number of games being played or analyzed right now
+     *
+     * @return number of games
+     */
+    int getGamesActive();
+
+    /**
+     * Gets the number of machine move results held by the result cache
+     *
+     * @return number of results, 0 if the cache is switched off
+     */
+    long getCacheResults();
+
+    /**
+     * Estimates the heap used by the result cache
+     *
+     * @return size in bytes
+     */
+    long getCacheBytes();
+
+    /**
+     * Gets the fraction of machine moves found in the result cache
+     *
+     * @return the hit ratio between 0 and 1
+     */
+    double getCacheHitRatio();
+
+    /**
+     * Gets the size of the transposition table shared by all searches
+     *
+     * @return size in megabytes
+     */
+    int getHashMegabytes();
+
+    /**
+     * Gets the fraction of lookups in the transposition table which found an
+     * entry, counted while the metrics are switched on
+     *
+     * @return the hit ratio between 0 and 1
+     */
+    double getHashHitRatio();
+
+    /**
+     * Clears all counters but the active games
+     */
+    void reset();
+
+}
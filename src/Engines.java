@@ -0,0 +1,61 @@
+package pawns_chess.model;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * The registry of the available engines, see the ENGINE command.
+ */
+public final class Engines {
+
+    /**
+     * The alpha-beta search, the default
+     */
+    public static final String ALPHA_BETA = "alphabeta";
+
+    /**
+     * The Monte Carlo tree search
+     */
+    public static final String MCTS = "mcts";
+
+    private static final Set<String> NAMES = Collections
+            .unmodifiableSet(new LinkedHashSet<String>(Arrays.asList(
+                    ALPHA_BETA, MCTS)));
+
+    /**
+     * not used
+     */
+    private Engines() {
+    }
+
+    /**
+     * Creates an engine by its name. Engines which keep state between moves
+     * are created anew on each call.
+     *
+     * @param name
+     *            the name, case insensitive
+     * @return the engine or null if there is none with this name
+     */
+    public static Engine forName(String name) {
+        switch (name.toLowerCase()) {
+        case ALPHA_BETA:
+            return AlphaBetaEngine.INSTANCE;
+        case MCTS:
+            return new MctsEngine();
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Gets the names of all engines
+     *
+     * @return the names
+     */
+    public static Set<String> names() {
+        return NAMES;
+    }
+
+}
@@ -0,0 +1,34 @@
+package pawns_chess.model;
+
+/**
+ * An Evaluator scores a game state from the machine's point of view: high
+ * scores are good for the machine, low scores are good for the human. The
+ * search adds up the scores of all game states along a line of play, so the
+ * score of a won game should depend on the depth at which it is won.
+ *
+ * <p>
+ * Evaluators must be stateless and thread safe. Scores should be multiples
+ * of {@link Search#NULL_WINDOW}, otherwise null window searches are less
+ * effective.
+ */
+public interface Evaluator {
+
+    /**
+     * Gets the name of the evaluator, as used by the EVAL command.
+     *
+     * @return the name in lower case
+     */
+    String getName();
+
+    /**
+     * Scores a game state.
+     *
+     * @param game
+     *            the game state
+     * @param depth
+     *            depth of the game state in the gametree, at least 1
+     * @return the score
+     */
+    double evaluate(Game game, int depth);
+
+}
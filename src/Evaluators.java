@@ -0,0 +1,64 @@
+package pawns_chess.model;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The registry of the available evaluators, see the EVAL command.
+ */
+public final class Evaluators {
+
+    /**
+     * The original score of the game, the default
+     */
+    public static final Evaluator CLASSIC = new ClassicEvaluator();
+
+    /**
+     * Material and advancement only, for fast deep searches
+     */
+    public static final Evaluator MATERIAL = new MaterialEvaluator();
+
+    /**
+     * The original score plus passed and blocked pawns
+     */
+    public static final Evaluator STRUCTURE = new StructureEvaluator();
+
+    private static final Map<String, Evaluator> REGISTRY;
+
+    static {
+        Map<String, Evaluator> registry = new LinkedHashMap<String, Evaluator>();
+        for (Evaluator e : new Evaluator[] {CLASSIC, MATERIAL, STRUCTURE }) {
+            registry.put(e.getName(), e);
+        }
+        REGISTRY = Collections.unmodifiableMap(registry);
+    }
+
+    /**
+     * not used
+     */
+    private Evaluators() {
+    }
+
+    /**
+     * Gets an evaluator by its name
+     *
+     * @param name
+     *            the name, case insensitive
+     * @return the evaluator or null if there is none with this name
+     */
+    public static Evaluator forName(String name) {
+        return REGISTRY.get(name.toLowerCase());
+    }
+
+    /**
+     * Gets the names of all evaluators
+     *
+     * @return the names
+     */
+    public static Set<String> names() {
+        return REGISTRY.keySet();
+    }
+
+}
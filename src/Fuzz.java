@@ -0,0 +1,788 @@
+package pawns_chess.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The class Fuzz compares the optimized {@link Game}, {@link GameTree} and
+ * {@link Search} with the {@link ReferenceGame} on random games. It is not
+ * part of the game; run it with
+ * {@code java pawns_chess.model.Fuzz [games=n] [threads=n] [seed=n] [depth=n]}.
+ *
+ * <p>
+ * The games are played by random legal moves of the reference, both players
+ * may start. After each move both implementations must agree on the player
+ * to move, the end of the game, the winner, the pawns, the legal moves, the
+ * scores and the move validation of the human player; the hash must equal the
+ * hash of the same game state created anew and taking the move back must
+ * restore the game state. On the machine's turn the search and the game tree
+ * of each depth up to {@code depth} must find the score of a full minimax
+ * search of the reference, and the move of the search must lead to it.
+ *
+ * <p>
+ * A mismatch is shrunk to a minimal reproducer: moves are removed from the
+ * game as long as it stays legal and fails, then pawns are removed from the
+ * failing game state as long as it fails without its history.
+ */
+public final class Fuzz {
+
+    private static final long START_HUMAN = Bits.rowMask(1);
+    private static final long START_MACHINE = Bits.rowMask(Board.SIZE);
+
+    /**
+     * Largest number of failing games which are shrunk and printed
+     */
+    private static final int MAX_REPORTS = 5;
+
+    /**
+     * Number of lines of the multi-PV searches compared
+     */
+    private static final int LINES = 3;
+
+    /**
+     * A failing game: the first player, the moves up to the failing game
+     * state or, if the last move failed, including it, and what did not
+     * match
+     */
+    private static final class Failure {
+        private final Player first;
+        private final int[] moves;
+        private final String message;
+
+        /**
+         * Creates a failure
+         *
+         * @param first
+         *            the player who starts
+         * @param moves
+         *            the encoded moves up to the failing game state
+         * @param message
+         *            the mismatch
+         */
+        Failure(Player first, int[] moves, String message) {
+            this.first = first;
+            this.moves = moves;
+            this.message = message;
+        }
+    }
+
+    /**
+     * not used
+     */
+    private Fuzz() {
+    }
+
+    /**
+     * Runs the comparison and prints the minimal reproducers of the first
+     * failing games
+     *
+     * @param argv
+     *            the options name=value: games (default 100000), threads
+     *            (default all processors), seed (default 1) and depth of the
+     *            searches (default 2)
+     * @throws InterruptedException
+     *             if interrupted while waiting for the threads
+     */
+    public static void main(String[] argv) throws InterruptedException {
+        long games = 100000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = 1;
+        int depth = 2;
+        for (String arg : argv) {
+            String[] option = arg.split("=", 2);
+            String value = option.length == 2 ? option[1] : "";
+            switch (option[0]) {
+            case "games":
+                games = Long.parseLong(value);
+                break;
+            case "threads":
+                threads = Integer.parseInt(value);
+                break;
+            case "seed":
+                seed = Long.parseLong(value);
+                break;
+            case "depth":
+                depth = Integer.parseInt(value);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+        run(games, threads, seed, depth);
+    }
+
+    /**
+     * Plays random games on several threads until all games are compared or
+     * enough games have failed, then shrinks and prints the failures
+     *
+     * @param games
+     *            number of games
+     * @param threads
+     *            number of threads
+     * @param seed
+     *            seed of the random games: game i depends only on the seed
+     *            and i
+     * @param depth
+     *            deepest search which is compared
+     * @return the number of failing games
+     * @throws InterruptedException
+     *             if interrupted while waiting for the threads
+     */
+    static int run(final long games, int threads, final long seed,
+            final int depth) throws InterruptedException {
+        final AtomicLong next = new AtomicLong();
+        final AtomicLong plies = new AtomicLong();
+        final List<Failure> failures = Collections
+                .synchronizedList(new ArrayList<Failure>());
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            pool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    for (long i = next.getAndIncrement(); i < games
+                            && failures.size() < MAX_REPORTS; i = next
+                            .getAndIncrement()) {
+                        SplittableRandom random = new SplittableRandom(seed
+                                + i * 0x9E3779B97F4A7C15L);
+                        Player first = random.nextBoolean() ? Player.HUMAN
+                                : Player.MACHINE;
+                        int[] moves = randomGame(first, random);
+                        Failure f = check(first, moves, depth);
+                        if (f != null) {
+                            failures.add(f);
+                        }
+                        plies.addAndGet(moves.length);
+                    }
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        long time = System.nanoTime() - start;
+        long played = Math.min(next.get(), games);
+        System.out.printf("%d games, %d plies in %d ms (%.0f games/s),"
+                + " %d failed%n", played, plies.get(), time / 1000000,
+                played * 1e9 / time, failures.size());
+        for (int i = 0; i < Math.min(failures.size(), MAX_REPORTS); i++) {
+            report(shrink(failures.get(i), depth), depth);
+        }
+        return failures.size();
+    }
+
+    /**
+     * Plays a game by random legal moves of the reference
+     *
+     * @param first
+     *            the player who starts
+     * @param random
+     *            chooses the moves
+     * @return the encoded moves
+     */
+    private static int[] randomGame(Player first, SplittableRandom random) {
+        ReferenceGame ref = new ReferenceGame(START_HUMAN, START_MACHINE,
+                first);
+        int[] moves = new int[4 * Board.SIZE * Board.SIZE];
+        int n = 0;
+        for (List<Integer> legal = ref.legalMoves(); !legal.isEmpty();
+                legal = ref.legalMoves()) {
+            moves[n] = legal.get(random.nextInt(legal.size()));
+            ref.play(moves[n++]);
+        }
+        return Arrays.copyOf(moves, n);
+    }
+
+    /**
+     * Replays a game on both implementations and compares them after each
+     * move
+     *
+     * @param first
+     *            the player who starts
+     * @param moves
+     *            the encoded moves, legal in the reference
+     * @param depth
+     *            deepest search which is compared
+     * @return the first mismatch with the moves up to it, null if there is
+     *         none
+     */
+    private static Failure check(Player first, int[] moves, int depth) {
+        Game game = Game.of(START_HUMAN, START_MACHINE, first, first);
+        ReferenceGame ref = new ReferenceGame(START_HUMAN, START_MACHINE,
+                first);
+        for (int ply = 0;; ply++) {
+            String message;
+            try {
+                message = compare(game, ref, depth);
+            } catch (RuntimeException e) {
+                message = e.toString();
+            }
+            if (message != null) {
+                return new Failure(first, Arrays.copyOf(moves, ply), message);
+            }
+            if (ply == moves.length) {
+                return null;
+            }
+            try {
+                message = play(game, ref, moves[ply]);
+            } catch (RuntimeException e) {
+                message = e.toString();
+            }
+            if (message != null) {
+                return new Failure(first, Arrays.copyOf(moves, ply + 1),
+                        message + " (last move)");
+            }
+        }
+    }
+
+    /**
+     * Executes a move on both implementations: a human move through
+     * {@link Game#move(int, int, int, int)}, a machine move through
+     * {@link Game#makeMove(int)}. The optimized game also takes the move back
+     * and executes it again.
+     *
+     * @param game
+     *            the optimized game
+     * @param ref
+     *            the reference
+     * @param move
+     *            the encoded move
+     * @return the mismatch or null
+     */
+    private static String play(Game game, ReferenceGame ref, int move) {
+        Move m = Move.decode(move);
+        long hash = game.getHash();
+        long human = game.bits(Player.HUMAN);
+        long machine = game.bits(Player.MACHINE);
+        Player next = game.next();
+        boolean humanMove = next == Player.HUMAN;
+        for (int i = 0; i < 2; i++) {
+            if (humanMove && !game.move(m.getColumnFrom(), m.getRowFrom(), m
+                    .getColumnTo(), m.getRowTo())) {
+                return "human move " + m + " rejected";
+            } else if (!humanMove) {
+                game.makeMove(move);
+            }
+            if (i == 0) {
+                game.undoMove();
+                if (game.getHash() != hash || game.next() != next
+                        || game.bits(Player.HUMAN) != human
+                        || game.bits(Player.MACHINE) != machine) {
+                    return "undo of " + m + " does not restore the game state";
+                }
+            }
+        }
+        ref.play(move);
+        return null;
+    }
+
+    /**
+     * Compares the game states of both implementations
+     *
+     * @param game
+     *            the optimized game
+     * @param ref
+     *            the reference
+     * @param depth
+     *            deepest search which is compared
+     * @return the mismatch or null
+     */
+    private static String compare(Game game, ReferenceGame ref, int depth) {
+        if (game.bits(Player.HUMAN) != ref.bits(Player.HUMAN)
+                || game.bits(Player.MACHINE) != ref.bits(Player.MACHINE)) {
+            return "pawns differ";
+        }
+        if (game.next() != ref.next()) {
+            return "next " + game.next() + ", expected " + ref.next();
+        }
+        if (game.gameOver() != ref.gameOver()) {
+            return "gameOver " + game.gameOver() + ", expected "
+                    + ref.gameOver();
+        }
+        if (game.getWinner() != ref.getWinner()) {
+            return "winner " + game.getWinner() + ", expected "
+                    + ref.getWinner();
+        }
+        Game fresh = Game.of(game.bits(Player.HUMAN), game
+                .bits(Player.MACHINE), game.getFirstPlayer(), game.next());
+        if (game.getHash() != fresh.getHash()
+                || game.getCanonicalHash() != fresh.getCanonicalHash()) {
+            return "hash differs from the hash of the same game state";
+        }
+        for (int level = 1; level <= 3; level++) {
+            if (game.getScore(level) != ref.getScore(level)) {
+                return "score on level " + level + " " + game.getScore(level)
+                        + ", expected " + ref.getScore(level);
+            }
+        }
+        List<Integer> legal = ref.legalMoves();
+        int[] buffer = new int[Board.MAX_MOVES];
+        if (!sameMoves(legal, buffer, game.gameOver() ? 0 : game
+                .legalMoves(buffer))) {
+            return "legal moves " + moves(buffer, game.legalMoves(buffer))
+                    + ", expected " + moves(legal);
+        }
+        boolean human = ref.next() == Player.HUMAN && !ref.gameOver();
+        if (!sameMoves(human ? legal : Collections.<Integer> emptyList(),
+                buffer, game.humanMoves(buffer))) {
+            return "human moves " + moves(buffer, game.humanMoves(buffer))
+                    + ", expected " + (human ? moves(legal) : "none");
+        }
+        String message = compareHumanMoves(game, ref, human ? legal
+                : Collections.<Integer> emptyList());
+        if (message == null && ref.next() == Player.MACHINE
+                && !ref.gameOver()) {
+            message = compareSearch(game, ref, depth);
+        }
+        return message;
+    }
+
+    /**
+     * Compares the destinations and the validation of the moves of the
+     * human: from the slot of each pawn one and two steps forward and to both
+     * sides. Legal moves are executed on copies, a rejected move must not
+     * change the game.
+     *
+     * @param game
+     *            the optimized game
+     * @param ref
+     *            the reference
+     * @param legal
+     *            the legal moves of the human, none if it is not his turn
+     * @return the mismatch or null
+     */
+    private static String compareHumanMoves(Game game, ReferenceGame ref,
+            List<Integer> legal) {
+        int size = Board.SIZE;
+        long[] expected = new long[size * size];
+        for (int move : legal) {
+            expected[Move.from(move)] |= 1L << Move.to(move);
+        }
+        long hash = game.getHash();
+        long pawns = game.bits(Player.HUMAN) | game.bits(Player.MACHINE);
+        for (int x = 1; x <= size; x++) {
+            for (int y = 1; y <= size; y++) {
+                int from = Bits.square(x, y);
+                if (game.destinations(x, y) != expected[from]) {
+                    return "destinations of (" + x + "," + y + ") differ";
+                }
+                if ((pawns & 1L << from) == 0) {
+                    continue;
+                }
+                int[][] targets = {{x, y + 1 }, {x, y + 2 }, {x - 1, y + 1 },
+                    {x + 1, y + 1 }, };
+                for (int[] t : targets) {
+                    String a;
+                    String b;
+                    boolean inside = t[0] >= 1 && t[0] <= size && t[1] <= size;
+                    if (inside && (expected[from] & 1L << Bits.square(t[0],
+                            t[1])) != 0) {
+                        a = tryMove(game.clone(), x, y, t[0], t[1]);
+                        b = tryMove(ref.clone(), x, y, t[0], t[1]);
+                    } else {
+                        a = tryMove(game, x, y, t[0], t[1]);
+                        b = tryMove(ref, x, y, t[0], t[1]);
+                        if (game.getHash() != hash) {
+                            a += ", changed the game";
+                        }
+                    }
+                    if (!a.equals(b)) {
+                        return "move (" + x + "," + y + ") to (" + t[0] + ","
+                                + t[1] + "): " + a + ", expected " + b;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Tries a move of the human on the optimized game
+     *
+     * @param game
+     *            the game, which is changed
+     * @param x
+     *            column of the pawn
+     * @param y
+     *            row of the pawn
+     * @param tx
+     *            target column
+     * @param ty
+     *            target row
+     * @return the outcome: the exception, false or the game state after the
+     *         move
+     */
+    private static String tryMove(Game game, int x, int y, int tx, int ty) {
+        try {
+            if (!game.move(x, y, tx, ty)) {
+                return "false";
+            }
+            return Long.toHexString(game.bits(Player.HUMAN)) + "/"
+                    + Long.toHexString(game.bits(Player.MACHINE)) + "/"
+                    + game.next();
+        } catch (RuntimeException e) {
+            return e.getClass().getSimpleName();
+        }
+    }
+
+    /**
+     * Tries a move of the human on the reference
+     *
+     * @param ref
+     *            the reference, which is changed
+     * @param x
+     *            column of the pawn
+     * @param y
+     *            row of the pawn
+     * @param tx
+     *            target column
+     * @param ty
+     *            target row
+     * @return the outcome: the exception, false or the game state after the
+     *         move
+     */
+    private static String tryMove(ReferenceGame ref, int x, int y, int tx,
+            int ty) {
+        try {
+            if (!ref.move(x, y, tx, ty)) {
+                return "false";
+            }
+            return Long.toHexString(ref.bits(Player.HUMAN)) + "/"
+                    + Long.toHexString(ref.bits(Player.MACHINE)) + "/"
+                    + ref.next();
+        } catch (RuntimeException e) {
+            return e.getClass().getSimpleName();
+        }
+    }
+
+    /**
+     * Compares the searches of each depth with a full minimax search of the
+     * reference: the score of the search and of the game tree, and the score
+     * of the move of the search
+     *
+     * @param game
+     *            the optimized game, the machine's turn
+     * @param ref
+     *            the reference
+     * @param depth
+     *            deepest search which is compared
+     * @return the mismatch or null
+     */
+    private static String compareSearch(Game game, ReferenceGame ref,
+            int depth) {
+        List<Integer> legal = ref.legalMoves();
+        for (int d = 1; d <= depth; d++) {
+            double best = Double.NEGATIVE_INFINITY;
+            double[] scores = new double[legal.size()];
+            for (int i = 0; i < scores.length; i++) {
+                ReferenceGame child = ref.clone();
+                child.play(legal.get(i));
+                scores[i] = child.treeScore(1, d);
+                best = Math.max(best, scores[i]);
+            }
+            Search search = new Search();
+            search.setRaceResolution(false);
+            search.setPruning(false);
+            search.setNullMove(false);
+            Move chosen = search.search(game.clone(), d);
+            if (search.getScore() != best) {
+                return "search of depth " + d + " scores "
+                        + search.getScore() + ", expected " + best;
+            }
+            ReferenceGame child = ref.clone();
+            child.play(chosen.encode());
+            if (child.treeScore(1, d) != best) {
+                return "search of depth " + d + " chooses " + chosen
+                        + " which scores " + child.treeScore(1, d)
+                        + ", expected " + best;
+            }
+            String lines = compareLines(game, legal, scores, d);
+            if (lines != null) {
+                return lines;
+            }
+            GameTree tree = new GameTree(game.clone(), d);
+            double treeBest = Double.NEGATIVE_INFINITY;
+            for (GameTree c : tree.getChilrden()) {
+                treeBest = Math.max(treeBest, c.getScore());
+            }
+            if (treeBest != best
+                    || tree.getChilrden().size() != legal.size()) {
+                return "game tree of depth " + d + " scores " + treeBest
+                        + " with " + tree.getChilrden().size()
+                        + " moves, expected " + best + " with "
+                        + legal.size();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Compares the lines of a multi-PV search with the scores of all moves
+     * of the reference: the lines must be the best moves, each with its
+     * score, the best first
+     *
+     * @param game
+     *            the game, the machine's turn
+     * @param legal
+     *            the legal moves of the reference
+     * @param scores
+     *            the reference scores of the legal moves
+     * @param depth
+     *            the search depth
+     * @return the difference or null
+     */
+    private static String compareLines(Game game, List<Integer> legal,
+            double[] scores, int depth) {
+        Search search = new Search();
+        search.setRaceResolution(false);
+        search.setPruning(false);
+        search.setNullMove(false);
+        search.setLines(LINES);
+        search.search(game.clone(), depth);
+        int[][] lines = search.getCandidates();
+        double[] lineScores = search.getCandidateScores();
+        double[] sorted = scores.clone();
+        Arrays.sort(sorted);
+        int k = Math.min(LINES, sorted.length);
+        if (lines.length != k) {
+            return "search of depth " + depth + " ranks " + lines.length
+                    + " lines, expected " + k;
+        }
+        Set<Integer> seen = new HashSet<Integer>();
+        for (int i = 0; i < k; i++) {
+            int index = legal.indexOf(lines[i][0]);
+            double expected = sorted[sorted.length - 1 - i];
+            if (lineScores[i] != expected || index < 0
+                    || scores[index] != expected || !seen.add(index)) {
+                return "line " + (i + 1) + " of depth " + depth + " is "
+                        + Move.decode(lines[i][0]) + " with " + lineScores[i]
+                        + ", expected a move with " + expected;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Compares the legal moves of the reference with a move list
+     *
+     * @param expected
+     *            the moves of the reference
+     * @param buffer
+     *            the moves
+     * @param n
+     *            number of moves in the buffer
+     * @return true if both hold the same moves in any order
+     */
+    private static boolean sameMoves(List<Integer> expected, int[] buffer,
+            int n) {
+        if (expected.size() != n) {
+            return false;
+        }
+        int[] a = new int[n];
+        for (int i = 0; i < n; i++) {
+            a[i] = expected.get(i);
+        }
+        int[] b = Arrays.copyOf(buffer, n);
+        Arrays.sort(a);
+        Arrays.sort(b);
+        return Arrays.equals(a, b);
+    }
+
+    /**
+     * Formats encoded moves
+     *
+     * @param buffer
+     *            the moves
+     * @param n
+     *            number of moves
+     * @return the moves as text
+     */
+    private static String moves(int[] buffer, int n) {
+        List<Integer> list = new ArrayList<Integer>(n);
+        for (int i = 0; i < n; i++) {
+            list.add(buffer[i]);
+        }
+        return moves(list);
+    }
+
+    /**
+     * Formats encoded moves
+     *
+     * @param moves
+     *            the moves
+     * @return the moves as text
+     */
+    private static String moves(List<Integer> moves) {
+        StringBuilder res = new StringBuilder("[");
+        for (int move : moves) {
+            res.append(res.length() > 1 ? ", " : "").append(
+                    Move.decode(move));
+        }
+        return res.append(']').toString();
+    }
+
+    /**
+     * Shrinks a failing game: removes runs of moves, from long runs to
+     * single moves, as long as the moves stay legal and the game fails
+     *
+     * @param failure
+     *            the failing game
+     * @param depth
+     *            deepest search which is compared
+     * @return the shortest failing game found
+     */
+    private static Failure shrink(Failure failure, int depth) {
+        Failure best = failure;
+        for (int run = Math.max(1, best.moves.length / 2); run >= 1; run /= 2) {
+            for (int i = 0; i + run <= best.moves.length;) {
+                int[] moves = new int[best.moves.length - run];
+                System.arraycopy(best.moves, 0, moves, 0, i);
+                System.arraycopy(best.moves, i + run, moves, i,
+                        moves.length - i);
+                Failure f = legal(best.first, moves) ? check(best.first,
+                        moves, depth) : null;
+                if (f != null) {
+                    best = f;
+                } else {
+                    i++;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Tests if moves are legal in the reference
+     *
+     * @param first
+     *            the player who starts
+     * @param moves
+     *            the encoded moves
+     * @return true if every move is legal
+     */
+    private static boolean legal(Player first, int[] moves) {
+        ReferenceGame ref = new ReferenceGame(START_HUMAN, START_MACHINE,
+                first);
+        for (int move : moves) {
+            if (!ref.legalMoves().contains(move)) {
+                return false;
+            }
+            ref.play(move);
+        }
+        return true;
+    }
+
+    /**
+     * Prints a shrunk failure: its moves, and the smallest game state which
+     * fails without history if there is one. A game state fails if it or
+     * one of its moves fails.
+     *
+     * @param failure
+     *            the shrunk failure
+     * @param depth
+     *            deepest search which is compared
+     */
+    private static void report(Failure failure, int depth) {
+        System.out.println("Mismatch: " + failure.message);
+        System.out.println("first " + failure.first + ", "
+                + failure.moves.length + " moves: "
+                + moves(toList(failure.moves)));
+        ReferenceGame ref = new ReferenceGame(START_HUMAN, START_MACHINE,
+                failure.first);
+        int n = failure.message.endsWith("(last move)")
+                ? failure.moves.length - 1 : failure.moves.length;
+        for (int i = 0; i < n; i++) {
+            ref.play(failure.moves[i]);
+        }
+        long human = ref.bits(Player.HUMAN);
+        long machine = ref.bits(Player.MACHINE);
+        Player next = ref.next();
+        String message = position(human, machine, next, depth);
+        if (message == null) {
+            System.out.println("The failing game state does not fail without"
+                    + " its history:\n" + ref);
+            return;
+        }
+        // remove pawns as long as the game state fails
+        for (boolean removed = true; removed;) {
+            removed = false;
+            for (long rest = human | machine; rest != 0; rest &= rest - 1) {
+                long bit = rest & -rest;
+                String m = position(human & ~bit, machine & ~bit, next, depth);
+                if (m != null) {
+                    human &= ~bit;
+                    machine &= ~bit;
+                    message = m;
+                    removed = true;
+                }
+            }
+        }
+        System.out.println("Smallest failing game state, " + next
+                + " to move: " + message + "\n"
+                + new ReferenceGame(human, machine, next));
+    }
+
+    /**
+     * Compares a game state without history and the move of the player whose
+     * turn it is
+     *
+     * @param human
+     *            mask of the human pawns
+     * @param machine
+     *            mask of the machine pawns
+     * @param next
+     *            the player whose turn it is, who must be able to move
+     * @param depth
+     *            deepest search which is compared
+     * @return the mismatch or null, also null if next cannot move
+     */
+    private static String position(long human, long machine, Player next,
+            int depth) {
+        ReferenceGame ref = new ReferenceGame(human, machine, next);
+        if (next == Player.NONE || !ref.canMove(next) || ref.gameOver()) {
+            return null;
+        }
+        Game game = Game.of(human, machine, Player.HUMAN, next);
+        try {
+            String message = compare(game, ref, depth);
+            for (int move : ref.legalMoves()) {
+                if (message != null) {
+                    break;
+                }
+                Game g = game.clone();
+                ReferenceGame r = ref.clone();
+                message = play(g, r, move);
+                if (message == null) {
+                    message = compare(g, r, depth);
+                }
+            }
+            return message;
+        } catch (RuntimeException e) {
+            return e.toString();
+        }
+    }
+
+    /**
+     * Converts moves to a list
+     *
+     * @param moves
+     *            the encoded moves
+     * @return the list
+     */
+    private static List<Integer> toList(int[] moves) {
+        List<Integer> list = new ArrayList<Integer>(moves.length);
+        for (int move : moves) {
+            list.add(move);
+        }
+        return list;
+    }
+
+}
@@ -1,73 +1,146 @@
 package pawns_chess.model;
 
-import java.util.LinkedList;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.SplittableRandom;
 
 /**
- * The class Game models the chess field: There are two players, a difficulty 
- * level and the pawns of each players are saved in a list. This class provides
- * all methods of the Board interface and some others e.g. the score methods 
- * to evaluate the game.
+ * The class Game models the chess field: There are two players, a difficulty
+ * level and the pawns of each players are saved as bit masks, bit (row - 1) *
+ * SIZE + (col - 1) is set if the player has a pawn at (col, row). This class
+ * provides all methods of the Board interface and some others e.g. the score
+ * methods to evaluate the game.
  */
 public class Game implements Board {
 
+    /**
+     * The level of a new game, about as strong as a search of depth 3
+     */
+    static final int DEFAULT_LEVEL = 6;
+
     private Player first;
     private Player current;
     private int level;
-    private List<Pawn> human;
-    private List<Pawn> machine;
+    private long humanBits;
+    private long machineBits;
+    private Evaluator evaluator = Evaluators.CLASSIC;
+    private Engine engine = AlphaBetaEngine.INSTANCE;
+
+    /**
+     * Chooses among the best machine moves, created on the first machine
+     * move unless seeded, see {@link #setSeed(long)}. Copies of the game are
+     * not seeded.
+     */
+    private SplittableRandom random;
+    private boolean seeded;
+    private List<Move> principalVariation = Collections.emptyList();
+
+    /**
+     * Cached status, updated with every move: the pawns which can move as bit
+     * masks and the winner.
+     */
+    private long humanMobile;
+    private long machineMobile;
+    private Player winner = Player.NONE;
+
+    /**
+     * Position hash, see {@link Zobrist}
+     */
+    private long hash;
+
+    /**
+     * Position hash of the game state mirrored at the middle column
+     */
+    private long mirrorHash;
+
+    /**
+     * The move history: the encoded moves and the state before each move, so
+     * that a move is taken back in O(1). The entries from historySize to
+     * redoSize have been taken back and can be redone.
+     */
+    private int[] historyMoves;
+    private long[] historyState;
+    private int historySize;
+    private int redoSize;
+
+    /**
+     * Values per move in historyState: the pawns, the movable pawns, the
+     * hash, and the player who moved and the winner
+     */
+    private static final int STATE = 7;
+
+    private static final Player[] PLAYERS = Player.values();
+
+    /**
+     * Version of the snapshot format of {@link #writeTo(ByteBuffer)}
+     */
+    private static final byte SNAPSHOT_VERSION = 1;
 
     /**
      * Initialises the Game
-     * 
+     *
      * @param first
      *            Which player shall start the game?
      */
     public Game(Player first) {
         super();
-        level = 3;
-        human = new LinkedList<Pawn>();
-        machine = new LinkedList<Pawn>();
-        for (int i = 1; i <= SIZE; i++) {
-            human.add(new Pawn(i, 1));
-            machine.add(new Pawn(9 - i, SIZE));
-        }
+        level = DEFAULT_LEVEL;
+        humanBits = Bits.rowMask(1);
+        machineBits = Bits.rowMask(SIZE);
         this.first = first;
         current = first;
+        initStatus();
+        setColors(first);
+        if (first == Player.MACHINE) {
+            machineMove();
+        }
+
+    }
+
+    /**
+     * Sets the colors of the players: the first player is white
+     *
+     * @param first
+     *            the player who starts the game
+     */
+    static void setColors(Player first) {
         if (first == Player.MACHINE) {
             Player.MACHINE.setColor("White");
             Player.HUMAN.setColor("Black");
-            machineMove();
         }
         if (first == Player.HUMAN) {
             Player.MACHINE.setColor("Black");
             Player.HUMAN.setColor("White");
         }
-
     }
 
     /**
      * Clone Constructor
-     * 
+     *
      * @param first
      *            copy of the first player
      * @param current
      *            copy of the current player
      * @param level
-     *            must be 1-4
+     *            must be 1 to MAX_LEVEL
      * @param human
-     *            List of human pawns
+     *            mask of the human pawns
      * @param machine
-     *            List of machine pawns
+     *            mask of the machine pawns
      */
-    private Game(Player first, Player current, int level, List<Pawn> human,
-            List<Pawn> machine) {
+    private Game(Player first, Player current, int level, long human,
+            long machine) {
         super();
         this.first = first;
         this.current = current;
         this.level = level;
-        this.human = human;
-        this.machine = machine;
+        this.humanBits = human;
+        this.machineBits = machine;
     }
 
     @Override
@@ -85,12 +158,23 @@ public class Game implements Board {
      * Sets the next Player.
      */
     public void setNext() {
-        current = checkNext();
+        advance();
+    }
+
+    /**
+     * Passes the turn to the next player who can move and updates the hash
+     */
+    private void advance() {
+        Player next = checkNext();
+        long turn = Zobrist.next(current) ^ Zobrist.next(next);
+        hash ^= turn;
+        mirrorHash ^= turn;
+        current = next;
     }
 
     /**
      * Decides which player's turn it is
-     * 
+     *
      * @return the next player if he can move
      */
     private Player checkNext() {
@@ -113,414 +197,907 @@ public class Game implements Board {
     }
 
     /**
-     * Allows access to the List with the pawns, depending on the player
-     * 
+     * Gets the skill level of the machine
+     *
+     * @return the level, 1 to MAX_LEVEL
+     */
+    int getLevel() {
+        return level;
+    }
+
+    @Override
+    public void setEvaluator(Evaluator evaluator) {
+        this.evaluator = evaluator;
+    }
+
+    @Override
+    public void setEngine(Engine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Gets the engine which chooses the machine's moves
+     *
+     * @return the engine
+     */
+    public Engine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Seeds the choice among the best machine moves. Without a seed the
+     * machine varies its moves from game to game.
+     */
+    @Override
+    public void setSeed(long seed) {
+        random = new SplittableRandom(seed);
+        seeded = true;
+    }
+
+    /**
+     * Tells whether the game is seeded. The machine moves of a seeded game
+     * must not depend on other games.
+     *
+     * @return true if {@link #setSeed(long)} was called
+     */
+    boolean isSeeded() {
+        return seeded;
+    }
+
+    /**
+     * Gets the largest score loss of a machine move on a level: the lower
+     * levels play near-best moves as well
+     *
+     * @param level
+     *            the level
+     * @return the score loss
+     */
+    static double selectionMargin(int level) {
+        return Math.max(0, 3 * (DEFAULT_LEVEL - level));
+    }
+
+    /**
+     * Gets the softmax temperature of the machine move choice on a level
+     *
+     * @param level
+     *            the level
+     * @return the temperature, 0 for a uniform choice among the best moves
+     */
+    static double selectionTemperature(int level) {
+        return selectionMargin(level) / 3;
+    }
+
+    /**
+     * Gets the number of positions the machine may search on a level. It
+     * grows by a factor of 1.75 per level, from 20 on level 1 to about
+     * 830,000 on level 20.
+     *
+     * @param level
+     *            the level
+     * @return the node limit of the search
+     */
+    static long nodeLimit(int level) {
+        return Math.round(20 * Math.pow(1.75, level - 1));
+    }
+
+    /**
+     * Gets the evaluator which scores the game states of this game
+     *
+     * @return the evaluator
+     */
+    public Evaluator getEvaluator() {
+        return evaluator;
+    }
+
+    /**
+     * Gets the pawns of a player. The list is a snapshot, changing it or its
+     * pawns does not change the game.
+     *
      * @param player
      *            Who posses the pawns
      * @return machine pawns if player is the machine, humans pawns if the
      *         player is human
      */
     public List<Pawn> getPawns(Player player) {
-        if (player == Player.HUMAN) {
-            return human;
+        List<Pawn> pawns = new ArrayList<Pawn>();
+        for (long b = bits(player); b != 0; b &= b - 1) {
+            int sq = Long.numberOfTrailingZeros(b);
+            pawns.add(new Pawn(sq % SIZE + 1, sq / SIZE + 1));
         }
-        if (player == Player.MACHINE) {
-            return machine;
-        }
-        return new LinkedList<Pawn>();
+        return Collections.unmodifiableList(pawns);
     }
 
     @Override
     public boolean move(int colFrom, int rowFrom, int colTo, int rowTo) {
-        
+
         if (gameOver() || current != Player.HUMAN) {
             throw new IllegalMoveException();
         }
-        
-        if (colFrom < 1 || colFrom > SIZE || rowFrom < 1 || rowFrom > SIZE 
+
+        if (colFrom < 1 || colFrom > SIZE || rowFrom < 1 || rowFrom > SIZE
             || colTo < 1 || colTo > SIZE || rowTo < 1 || rowTo > SIZE) {
                 throw new IllegalArgumentException();
         }
-        
-        Pawn target = new Pawn(colTo, rowTo);
-        Pawn source = new Pawn(colFrom, rowFrom);
-        boolean legalMove = false;
-
-        // There is no Pawn with the respective coordinates
-        if (!human.contains(source)) {
-            return legalMove;
-        }
-        // One Step forward
-        if (colFrom == colTo && rowFrom + 1 == rowTo && !human.contains(target)
-                && !machine.contains(target)) {
-            legalMove = true;
-        }
-        // Two Steps forward
-        if (colFrom == colTo && rowFrom + 2 == rowTo && rowFrom == 1
-                && !human.contains(target) && !machine.contains(target)) {
-            legalMove = true;
-        }
-        // Strike right | left
-        if ((colFrom + 1 == colTo || colFrom - 1 == colTo)
-                && rowFrom + 1 == rowTo && !human.contains(target)
-                && machine.contains(target)) {
-            machine.remove(target);
-            legalMove = true;
-        }
-        // if the move was okay, alter the coords of the Pawn in the list
-        if (legalMove) {
-            for (Pawn q : human) {
-                if (q.equals(source)) {
-                    q.setColumn(colTo);
-                    q.setRow(rowTo);
-                }
-            }
 
-            current = checkNext();
+        int to = Bits.square(colTo, rowTo);
+        int from = Bits.square(colFrom, rowFrom);
+        // one mask test covers the pawn, the steps and the strikes
+        if ((targets(from) & (1L << to)) == 0) {
+            return false;
         }
-
-        return legalMove;
+        makeMove(Move.encode(from, to));
+        return true;
     }
 
     @Override
-    public void machineMove() {
-        
-        if (gameOver() || current != Player.MACHINE) {
-            throw new IllegalMoveException();
+    public int humanMoves(int[] buffer) {
+        if (gameOver() || current != Player.HUMAN) {
+            return 0;
         }
-        
-        // Initialize the gametree
-        GameTree gt = new GameTree(this.clone(), level);
-        Game draw = gt.selectBestStrategy();
-        machine = draw.machine;
-        human = draw.human;
-        current = checkNext();
+        return legalMoves(buffer);
     }
 
     @Override
-    public Player getSlot(int col, int row) {
-        Pawn p = new Pawn(col, row);
-        if (human.contains(p)) {
-            return Player.HUMAN;
+    public long destinations(int col, int row) {
+        if (col < 1 || col > SIZE || row < 1 || row > SIZE) {
+            throw new IllegalArgumentException();
         }
-        if (machine.contains(p)) {
-            return Player.MACHINE;
+        if (gameOver() || current != Player.HUMAN) {
+            return 0;
         }
-        return Player.NONE;
+        return targets(Bits.square(col, row));
     }
 
-    @Override
-    public Game clone() {
-        List<Pawn> human2 = new LinkedList<Pawn>();
-        List<Pawn> machine2 = new LinkedList<Pawn>();
-        for (Pawn p : human) {
-
-            human2.add(p.clone());
+    /**
+     * Gets the slots a human pawn can move to: the empty slot in front of it,
+     * the empty slot two rows in front from the ground line and the machine
+     * pawns diagonally in front of it
+     *
+     * @param from
+     *            bit index of the slot of the pawn
+     * @return mask of the target slots, empty if no human pawn is on the slot
+     */
+    private long targets(int from) {
+        long bit = 1L << from;
+        if ((humanBits & bit) == 0) {
+            return 0;
         }
-        for (Pawn p : machine) {
-
-            machine2.add(p.clone());
+        long empty = ~(humanBits | machineBits) & Bits.BOARD;
+        long targets = ((bit << SIZE) & empty)
+                | (Bits.attacks(bit, true) & machineBits);
+        if (from < SIZE) {
+            targets |= (bit << 2 * SIZE) & empty;
         }
-        Game copy = new Game(this.first, this.current, this.level, human2,
-                machine2);
-        return copy;
+        return targets;
     }
 
     @Override
-    public String toString() {
-        String res = "";
-        char humanSymbol = Player.HUMAN.getColor().charAt(0);
-        char machineSymbol = Player.MACHINE.getColor().charAt(0);
-        for (int y = SIZE; y >= 1; y--) {
-            for (int x = 1; x <= SIZE; x++) {
-                if (human.contains(new Pawn(x, y))) {
-                    res += humanSymbol;
-                } else {
-                    if (machine.contains(new Pawn(x, y))) {
-                        res += machineSymbol;
-                    } else {
-                        res += " ";
-                    }
-                }
-                if (x < SIZE) {
-                    res += " ";
-                }
-            }
-            if (y > 1) {
-                res += "\n";
+    public Analysis analyze(int lines) {
+        if (lines < 1) {
+            throw new IllegalArgumentException("At least one line expected");
+        }
+        if (gameOver()) {
+            return new Analysis(Player.NONE, 0, 0,
+                    Collections.<Analysis.Line>emptyList());
+        }
+        // the search ranks the moves of the machine, so the moves of the
+        // human are ranked on the game mirrored at the middle row
+        boolean flip = current == Player.HUMAN;
+        Game view = flip ? of(Bits.flipRows(machineBits), Bits
+                .flipRows(humanBits), first == Player.HUMAN ? Player.MACHINE
+                : Player.HUMAN, Player.MACHINE) : clone();
+        view.setEvaluator(evaluator);
+        Search search = new Search();
+        search.setLines(lines);
+        search.setNodeLimit(nodeLimit(level) * lines);
+        search.search(view, Search.MAX_DEPTH);
+        int[][] variations = search.getCandidates();
+        double[] scores = search.getCandidateScores();
+        List<Analysis.Line> ranked = new ArrayList<Analysis.Line>();
+        for (int i = 0; i < variations.length; i++) {
+            List<Move> variation = new ArrayList<Move>();
+            for (int m : variations[i]) {
+                variation.add(Move.decode(flip ? Move.flipRows(m) : m));
             }
+            ranked.add(new Analysis.Line(scores[i], variation));
         }
-        return res;
+        return new Analysis(current, search.getDepth(), search.getNodes(),
+                ranked);
     }
 
     @Override
-    public boolean gameOver() {
-        Player next = current.equals(Player.HUMAN) ? Player.MACHINE
-                : Player.HUMAN;
-        if (!canMove(current) && !canMove(next)) {
-            return true;
+    public void machineMove() {
+
+        if (gameOver() || current != Player.MACHINE) {
+            throw new IllegalMoveException();
         }
-        if (human.isEmpty() || machine.isEmpty()) {
-            return true;
+
+        if (random == null) {
+            random = new SplittableRandom();
         }
-        for (Pawn p : human) {
-            if (p.getRow() == SIZE) {
-                return true;
-            }
+        List<Move> line = engine.choose(this, level, random);
+        principalVariation = Collections.unmodifiableList(line);
+        makeMove(line.get(0).encode());
+    }
+
+    @Override
+    public boolean undo() {
+        int i = historySize - 1;
+        while (i >= 0 && mover(i) != Player.HUMAN) {
+            i--;
         }
-        for (Pawn p : machine) {
-            if (p.getRow() == 1) {
-                return true;
-            }
+        if (i < 0) {
+            return false;
         }
-        return false;
+        while (historySize > i) {
+            undoMove();
+        }
+        return true;
     }
 
     @Override
-    public Player getWinner() {
-        if (human.isEmpty()) {
-            return Player.MACHINE;
+    public boolean redo() {
+        if (!redoMove()) {
+            return false;
         }
-        if (machine.isEmpty()) {
-            return Player.HUMAN;
+        while (historySize < redoSize && mover(historySize) == Player.MACHINE) {
+            redoMove();
         }
-        for (Pawn h : human) {
-            if (h.getRow() == SIZE) {
-                return Player.HUMAN;
-            }
+        return true;
+    }
+
+    /**
+     * Executes a legal move of the current player and passes the turn. The
+     * move is recorded in the history and all moves which could have been
+     * redone are discarded.
+     *
+     * @param move
+     *            an encoded move returned by {@link #legalMoves(int[])}
+     */
+    void makeMove(int move) {
+        record(move);
+        apply(move);
+        advance();
+    }
+
+    /**
+     * Passes the turn to the other player without moving, for the null move
+     * pruning of the search. The other player must be able to move. The pass
+     * is recorded in the history as move 0 and is taken back by
+     * {@link #undoMove()}.
+     */
+    void makeNullMove() {
+        record(0);
+        Player other = current == Player.HUMAN ? Player.MACHINE
+                : Player.HUMAN;
+        long turn = Zobrist.next(current) ^ Zobrist.next(other);
+        hash ^= turn;
+        mirrorHash ^= turn;
+        current = other;
+    }
+
+    /**
+     * Records the state before a move in the history and discards the moves
+     * which could have been redone
+     *
+     * @param move
+     *            the encoded move
+     */
+    private void record(int move) {
+        if (historyMoves == null) {
+            historyMoves = new int[16];
+            historyState = new long[16 * STATE];
+        } else if (historySize == historyMoves.length) {
+            historyMoves = Arrays.copyOf(historyMoves, 2 * historySize);
+            historyState = Arrays.copyOf(historyState, 2 * historySize * STATE);
         }
-        for (Pawn m : machine) {
-            if (m.getRow() == 1) {
-                return Player.MACHINE;
-            }
+        int i = historySize * STATE;
+        historyMoves[historySize] = move;
+        historyState[i] = humanBits;
+        historyState[i + 1] = machineBits;
+        historyState[i + 2] = humanMobile;
+        historyState[i + 3] = machineMobile;
+        historyState[i + 4] = hash;
+        historyState[i + 5] = current.ordinal() | winner.ordinal() << 8;
+        historyState[i + 6] = mirrorHash;
+        historySize++;
+        redoSize = historySize;
+    }
+
+    /**
+     * Takes back the last move of the history
+     *
+     * @return false if there is no move to take back
+     */
+    boolean undoMove() {
+        if (historySize == 0) {
+            return false;
         }
-        return Player.NONE;
+        historySize--;
+        int i = historySize * STATE;
+        humanBits = historyState[i];
+        machineBits = historyState[i + 1];
+        humanMobile = historyState[i + 2];
+        machineMobile = historyState[i + 3];
+        hash = historyState[i + 4];
+        current = PLAYERS[(int) historyState[i + 5] & 0xFF];
+        winner = PLAYERS[(int) historyState[i + 5] >>> 8];
+        mirrorHash = historyState[i + 6];
+        return true;
+    }
 
+    /**
+     * Executes the move which was taken back last again
+     *
+     * @return false if there is no move to redo
+     */
+    boolean redoMove() {
+        if (historySize >= redoSize) {
+            return false;
+        }
+        int limit = redoSize;
+        makeMove(historyMoves[historySize]);
+        redoSize = limit;
+        return true;
     }
 
     /**
+     * Gets the player who executed a move of the history
+     *
      * @param i
-     *            depth in the gametree
-     * 
-     * @return score of this game
+     *            index of the move, 0 is the first move
+     * @return the player
      */
-    public double getScore(int i) {
-        return scoreN() + scoreD() + scoreC() + scoreI() + scoreV(i);
+    private Player mover(int i) {
+        return PLAYERS[(int) historyState[i * STATE + 5] & 0xFF];
+    }
+
+    /**
+     * Gets the moves executed so far, the first move first
+     *
+     * @return the moves
+     */
+    public List<Move> getHistory() {
+        List<Move> moves = new ArrayList<Move>(historySize);
+        for (int i = 0; i < historySize; i++) {
+            moves.add(Move.decode(historyMoves[i]));
+        }
+        return moves;
+    }
+
+    /**
+     * Gets the number of moves executed so far
+     *
+     * @return the length of the history
+     */
+    public int getHistorySize() {
+        return historySize;
+    }
+
+    /**
+     * Gets the hash of the current game state. Equal game states have equal
+     * hashes, the hash does not depend on the moves leading to the state.
+     *
+     * @return the position hash
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * Gets the hash of a game state of the history
+     *
+     * @param ply
+     *            number of moves executed, 0 for the game state before the
+     *            first move of the history
+     * @return the position hash after ply moves
+     */
+    public long getHash(int ply) {
+        if (ply < 0 || ply > historySize) {
+            throw new IndexOutOfBoundsException("No game state " + ply);
+        }
+        return ply == historySize ? hash : historyState[ply * STATE + 4];
     }
 
     /**
-     * Computes the number score: A high number of living machine pawns is good,
-     * whereas a high number of living human pawns is bad.
-     * 
-     * @return number score
+     * Gets the hash of the current game state or of its mirror image at the
+     * middle column, whichever is smaller. A game state and its mirror image
+     * have the same scores with mirrored moves, so caches keyed by this hash
+     * hold both of them in one entry. Moves are stored as in the game state
+     * with the smaller hash, see {@link #isMirrored()}.
+     *
+     * @return the mirror-canonical position hash
      */
-    private double scoreN() {
-        return machine.size() - (double) human.size() * 1.5;
+    long getCanonicalHash() {
+        return Math.min(hash, mirrorHash);
     }
 
     /**
-     * Computes the distance score: A high Distance to the start line is 
-     * considered good.
-     * 
-     * @return distance score
+     * Tells whether the moves of cache entries keyed by
+     * {@link #getCanonicalHash()} have to be mirrored for this game state
+     *
+     * @return true if the mirror image has the smaller hash
      */
-    private double scoreD() {
-        double scoreDH = 0;
-        double scoreDM = 0;
-        for (Pawn h : human) {
-            scoreDH = scoreDH + h.getRow() - 1;
+    boolean isMirrored() {
+        return mirrorHash < hash;
+    }
+
+    /**
+     * Gets the principal variation of the last machine move: the machine move
+     * itself followed by the best answers of both players the search found.
+     *
+     * @return the expected line of play, empty if the machine has not moved
+     */
+    public List<Move> getPrincipalVariation() {
+        return principalVariation;
+    }
+
+    /**
+     * Gets the pawns of a player as bit mask: bit (row - 1) * SIZE + (col - 1)
+     * is set if the player has a pawn at (col, row).
+     *
+     * @param player
+     *            Who posses the pawns
+     * @return the mask
+     */
+    long bits(Player player) {
+        if (player == Player.HUMAN) {
+            return humanBits;
         }
-        for (Pawn m : machine) {
-            scoreDM = scoreDM + SIZE - m.getRow();
+        if (player == Player.MACHINE) {
+            return machineBits;
         }
-        return scoreDM - scoreDH * 1.5;
+        return 0;
     }
 
     /**
-     * Computes the scoreC: pawns that are threatened by the opponent and are
-     * not protected are considered bad.
-     * 
-     * @return score of threatened pawns
+     * Creates all possible moves of the player whose turn it is.
+     *
+     * @return all legal moves of the current player
      */
-    private double scoreC() {
-        double scoreCH = 0;
-        double scoreCM = 0;
-        for (Pawn h : human) {
-            boolean inDanger = false;
-            for (Pawn m : machine) {
-                if (canBeat(m, h)) {
-                    inDanger = true;
-                }
-            }
-            for (Pawn p : human) {
-                if (canBeat(p, h)) {
-                    inDanger = false;
-                }
+    List<Move> legalMoves() {
+        int[] buffer = new int[MAX_MOVES];
+        int n = legalMoves(buffer);
+        List<Move> moves = new ArrayList<Move>(n);
+        for (int i = 0; i < n; i++) {
+            moves.add(Move.decode(buffer[i]));
+        }
+        return moves;
+    }
+
+    /**
+     * Creates all possible moves of the player whose turn it is. The order is
+     * the order of the slots; for each pawn strike left, one step forward, two
+     * steps forward and strike right.
+     *
+     * @param buffer
+     *            receives the encoded moves, at least MAX_MOVES long
+     * @return number of legal moves
+     */
+    int legalMoves(int[] buffer) {
+        if (current == Player.NONE) {
+            return 0;
+        }
+        boolean human = current == Player.HUMAN;
+        long own = human ? humanBits : machineBits;
+        long other = human ? machineBits : humanBits;
+        long empty = ~(humanBits | machineBits) & Bits.BOARD;
+        int step = human ? SIZE : -SIZE;
+        int border = human ? 0 : SIZE - 1;
+        // strike left and right seen from the player
+        long leftEdge = human ? Bits.FIRST_COLUMN : Bits.LAST_COLUMN;
+        long rightEdge = human ? Bits.LAST_COLUMN : Bits.FIRST_COLUMN;
+        int left = human ? -1 : 1;
+        int n = 0;
+        for (long b = own & (human ? humanMobile : machineMobile); b != 0;
+                b &= b - 1) {
+            int sq = Long.numberOfTrailingZeros(b);
+            long bit = 1L << sq;
+            int ahead = sq + step;
+            if (ahead < 0 || ahead >= SIZE * SIZE) {
+                continue;
             }
-            if (inDanger) {
-                scoreCH++;
+            // Strike left
+            if ((bit & leftEdge) == 0 && (other & (1L << (ahead + left))) != 0) {
+                buffer[n++] = Move.encode(sq, ahead + left);
             }
-        }
-        for (Pawn m : machine) {
-            boolean inDanger = false;
-            for (Pawn h : human) {
-                if (canBeat(h, m)) {
-                    inDanger = true;
-                }
+            // Step forward
+            if ((empty & (1L << ahead)) != 0) {
+                buffer[n++] = Move.encode(sq, ahead);
             }
-            for (Pawn p : machine) {
-                if (canBeat(p, m)) {
-                    inDanger = false;
-                }
+            // 2 Steps forward
+            if (sq / SIZE == border && (empty & (1L << (ahead + step))) != 0) {
+                buffer[n++] = Move.encode(sq, ahead + step);
             }
-            if (inDanger) {
-                scoreCM++;
+            // Strike right
+            if ((bit & rightEdge) == 0
+                    && (other & (1L << (ahead - left))) != 0) {
+                buffer[n++] = Move.encode(sq, ahead - left);
             }
         }
-        return scoreCH - 3 * scoreCM / 2;
+        return n;
     }
 
     /**
-     * Computes the isolation score: isolated pawns are considered bad
-     * 
-     * @return isolation score
+     * Executes a legal move of the current player on a copy of this game.
+     *
+     * @param move
+     *            a move returned by {@link #legalMoves()}
+     * @return the game state after the move
      */
-    private double scoreI() {
-        double scoreIH = 0;
-        double scoreIM = 0;
+    Game play(Move move) {
+        return play(move.encode());
+    }
 
-        for (Pawn h : human) {
-            boolean isIsolated = true;
-            for (Pawn p : human) {
-                if (h.isNextTo(p)) {
-                    isIsolated = false;
-                }
+    /**
+     * Executes a legal move of the current player on a copy of this game.
+     *
+     * @param move
+     *            an encoded move returned by {@link #legalMoves(int[])}
+     * @return the game state after the move
+     */
+    Game play(int move) {
+        Game copy = copyPosition();
+        copy.apply(move);
+        copy.advance();
+        return copy;
+    }
+
+    /**
+     * Moves the pawn of the current player and removes a beaten pawn. The
+     * move is not validated and the next player is not updated.
+     *
+     * @param move
+     *            the encoded move to execute
+     */
+    private void apply(int move) {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        long moved = (1L << from) | (1L << to);
+        Player other = current == Player.HUMAN ? Player.MACHINE : Player.HUMAN;
+        hash ^= Zobrist.pawn(current, from) ^ Zobrist.pawn(current, to);
+        mirrorHash ^= Zobrist.pawn(current, Bits.flipColumn(from))
+                ^ Zobrist.pawn(current, Bits.flipColumn(to));
+        if ((bits(other) & (1L << to)) != 0) {
+            hash ^= Zobrist.pawn(other, to);
+            mirrorHash ^= Zobrist.pawn(other, Bits.flipColumn(to));
+        }
+        if (current == Player.HUMAN) {
+            humanBits ^= moved;
+            machineBits &= ~(1L << to);
+        } else {
+            machineBits ^= moved;
+            humanBits &= ~(1L << to);
+        }
+        updateMobility();
+        if (winner == Player.NONE) {
+            int rowTo = to / SIZE + 1;
+            if (humanBits == 0 || machineBits == 0) {
+                winner = current;
+            } else if (current == Player.HUMAN && rowTo == SIZE
+                    || current == Player.MACHINE && rowTo == 1) {
+                winner = current;
             }
-            if (isIsolated) {
-                scoreIH++;
+        }
+    }
+
+    /**
+     * Computes the cached status from the pawn masks
+     */
+    private void initStatus() {
+        updateMobility();
+        // as after a move, a player who cannot move passes the turn
+        if (current != Player.NONE && !canMove(current)) {
+            Player other = current == Player.HUMAN ? Player.MACHINE
+                    : Player.HUMAN;
+            if (canMove(other)) {
+                current = other;
             }
         }
+        hash = Zobrist.hash(humanBits, machineBits, current);
+        mirrorHash = Zobrist.hash(Bits.flipColumns(humanBits), Bits
+                .flipColumns(machineBits), current);
+
+        winner = Player.NONE;
+        if (humanBits == 0) {
+            winner = Player.MACHINE;
+        } else if (machineBits == 0) {
+            winner = Player.HUMAN;
+        } else if ((humanBits & Bits.rowMask(SIZE)) != 0) {
+            winner = Player.HUMAN;
+        } else if ((machineBits & Bits.rowMask(1)) != 0) {
+            winner = Player.MACHINE;
+        }
+    }
 
-        for (Pawn m : machine) {
-            boolean isIsolated = true;
-            for (Pawn p : machine) {
-                if (m.isNextTo(p)) {
-                    isIsolated = false;
+    /**
+     * Recomputes which pawns can move. A pawn can move if the slot in front
+     * of it is empty, if it stands on its ground line and the slot two rows
+     * in front is empty, or if an opposing pawn stands diagonally in front
+     * of it. A few shifts of the whole board are cheaper than checking the
+     * pawns near the move one by one.
+     */
+    private void updateMobility() {
+        long empty = ~(humanBits | machineBits) & Bits.BOARD;
+        humanMobile = humanBits & ((empty >>> SIZE)
+                | (Bits.rowMask(1) & (empty >>> 2 * SIZE))
+                | Bits.attacks(machineBits, false));
+        machineMobile = machineBits & ((empty << SIZE)
+                | (Bits.rowMask(SIZE) & (empty << 2 * SIZE))
+                | Bits.attacks(humanBits, true));
+    }
+
+    /**
+     * Creates a game from its string representation as returned by
+     * {@link #toString()}. The pawns of the first player are 'W', the pawns
+     * of the other player are 'B'. Missing characters at the end of a row are
+     * treated as empty slots.
+     *
+     * @param board
+     *            SIZE rows, the top row (row SIZE) first
+     * @param first
+     *            the player with the white pawns
+     * @param next
+     *            the player whose turn it is
+     * @return the game
+     */
+    static Game fromString(String board, Player first, Player next) {
+        String[] rows = board.split("\\n", -1);
+        if (rows.length != SIZE) {
+            throw new IllegalArgumentException("Expected " + SIZE + " rows");
+        }
+        Player second = first == Player.HUMAN ? Player.MACHINE : Player.HUMAN;
+        long human = 0;
+        long machine = 0;
+        for (int i = 0; i < SIZE; i++) {
+            int y = SIZE - i;
+            for (int x = 1; x <= SIZE; x++) {
+                int c = 2 * (x - 1);
+                char symbol = c < rows[i].length() ? rows[i].charAt(c) : ' ';
+                Player owner = symbol == 'W' ? first
+                        : symbol == 'B' ? second : Player.NONE;
+                if (owner == Player.HUMAN) {
+                    human |= 1L << Bits.square(x, y);
+                } else if (owner == Player.MACHINE) {
+                    machine |= 1L << Bits.square(x, y);
+                } else if (symbol != ' ') {
+                    throw new IllegalArgumentException("Invalid slot '"
+                            + symbol + "' at (" + x + "," + y + ")");
                 }
             }
-            if (isIsolated) {
-                scoreIM++;
-            }
         }
-        return scoreIH - 3 * scoreIM / 2;
+        return of(human, machine, first, next);
     }
 
     /**
-     * Computes the victory score: if a move leads to victoy it is a very good
-     * move
-     * 
-     * @param i
-     *            depth in the gametree
-     * @return victory score
+     * Creates a game from the pawn masks
+     *
+     * @param human
+     *            mask of the human pawns
+     * @param machine
+     *            mask of the machine pawns
+     * @param first
+     *            the player with the white pawns
+     * @param next
+     *            the player whose turn it is. If this player cannot move
+     *            but the other one can, it is the other one's turn.
+     * @return the game
      */
-    private double scoreV(int i) {
-        double scoreVH = 0;
-        double scoreVM = 0;
+    static Game of(long human, long machine, Player first, Player next) {
+        if ((human & machine) != 0 || ((human | machine) & ~Bits.BOARD) != 0) {
+            throw new IllegalArgumentException("Invalid pawn masks");
+        }
+        Game game = new Game(first, next, DEFAULT_LEVEL, human, machine);
+        game.initStatus();
+        return game;
+    }
 
-        if (getWinner() == Player.HUMAN) {
-            scoreVH = 5000 / i;
+    @Override
+    public Player getSlot(int col, int row) {
+        if (col < 1 || col > SIZE || row < 1 || row > SIZE) {
+            return Player.NONE;
+        }
+        long bit = 1L << Bits.square(col, row);
+        if ((humanBits & bit) != 0) {
+            return Player.HUMAN;
         }
-        if (getWinner() == Player.MACHINE) {
-            scoreVM = 5000 / i;
+        if ((machineBits & bit) != 0) {
+            return Player.MACHINE;
         }
-        return scoreVM - 3 * scoreVH / 2;
+        return Player.NONE;
+    }
 
+    @Override
+    public Game clone() {
+        Game copy = copyPosition();
+        // the copy must not share the state of the engine
+        copy.engine = Engines.forName(engine.getName());
+        if (historyMoves != null) {
+            copy.historyMoves = historyMoves.clone();
+            copy.historyState = historyState.clone();
+            copy.historySize = historySize;
+            copy.redoSize = redoSize;
+        }
+        return copy;
     }
 
     /**
-     * Returns if Pawn p can beat Pawn q or Not. Or: if Pawn q is protected by
-     * Pawn p
-     * 
-     * @param p 
-     * @param q
-     * @return
+     * Copies the game state without the move history
+     *
+     * @return the copy
      */
-    private boolean canBeat(Pawn p, Pawn q) {
+    private Game copyPosition() {
+        Game copy = new Game(this.first, this.current, this.level, humanBits,
+                machineBits);
+        copy.humanMobile = humanMobile;
+        copy.machineMobile = machineMobile;
+        copy.winner = winner;
+        copy.hash = hash;
+        copy.mirrorHash = mirrorHash;
+        copy.evaluator = evaluator;
+        copy.engine = engine;
+        return copy;
+    }
 
-        int one = human.contains(p) ? 1 : -1;
-        return (p.getRow() + one == q.getRow()
-                && (p.getColumn() + 1 == q.getColumn() || p.getColumn() - 1 == q
-                        .getColumn()));
+    /**
+     * Gets the size of the snapshot written by {@link #writeTo(ByteBuffer)}
+     *
+     * @return the size in bytes
+     */
+    int snapshotSize() {
+        return 25 + evaluator.getName().length() + 2 * redoSize;
     }
 
     /**
-     * Can a certain player make a move?
-     * @param player the specific player
-     * @return true if player can move
+     * Writes a snapshot of the game: the players, the level, the evaluator,
+     * the game state before the first move of the history and the moves of
+     * the history including the moves which can be redone. The snapshot does
+     * not depend on the colors of the players.
+     *
+     * @param buffer
+     *            receives {@link #snapshotSize()} bytes
      */
-    private boolean canMove(Player player) {
-        boolean res = false;
-        if (player.equals(Player.MACHINE)) {
-            for (Pawn p : machine) {
-                if (canMove(p, player)) {
-                    res = true;
-                }
+    void writeTo(ByteBuffer buffer) {
+        byte[] name = evaluator.getName().getBytes(StandardCharsets.US_ASCII);
+        buffer.put(SNAPSHOT_VERSION);
+        buffer.put((byte) first.ordinal());
+        buffer.put((byte) level);
+        buffer.put((byte) name.length);
+        buffer.put(name);
+        if (redoSize == 0) {
+            buffer.putLong(humanBits).putLong(machineBits);
+            buffer.put((byte) current.ordinal());
+        } else {
+            buffer.putLong(historyState[0]).putLong(historyState[1]);
+            buffer.put((byte) mover(0).ordinal());
+        }
+        buffer.putShort((short) redoSize).putShort((short) historySize);
+        for (int i = 0; i < redoSize; i++) {
+            buffer.putShort((short) historyMoves[i]);
+        }
+    }
+
+    /**
+     * Restores a game from a snapshot written by {@link #writeTo(ByteBuffer)}
+     * by replaying its history
+     *
+     * @param buffer
+     *            holds the snapshot at its position
+     * @return the game
+     * @throws IllegalArgumentException
+     *             if the snapshot is invalid
+     */
+    static Game readFrom(ByteBuffer buffer) {
+        try {
+            if (buffer.get() != SNAPSHOT_VERSION) {
+                throw new IllegalArgumentException("Unknown snapshot version");
+            }
+            Player first = PLAYERS[buffer.get()];
+            int level = buffer.get();
+            byte[] name = new byte[buffer.get()];
+            buffer.get(name);
+            long human = buffer.getLong();
+            long machine = buffer.getLong();
+            Player next = PLAYERS[buffer.get()];
+            int redo = buffer.getShort() & 0xFFFF;
+            int size = buffer.getShort() & 0xFFFF;
+            Evaluator evaluator = Evaluators.forName(new String(name,
+                    StandardCharsets.US_ASCII));
+            if (evaluator == null || size > redo) {
+                throw new IllegalArgumentException("Invalid snapshot");
             }
+            Game game = of(human, machine, first, next);
+            game.level = level;
+            game.evaluator = evaluator;
+            for (int i = 0; i < redo; i++) {
+                game.makeMove(buffer.getShort());
+            }
+            while (game.historySize > size) {
+                game.undoMove();
+            }
+            return game;
+        } catch (BufferUnderflowException | ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Truncated snapshot", e);
         }
-        if (player.equals(Player.HUMAN)) {
-            for (Pawn p : human) {
-                if (canMove(p, player)) {
-                    res = true;
+    }
+
+    @Override
+    public String toString() {
+        String res = "";
+        char humanSymbol = Player.HUMAN.getColor().charAt(0);
+        char machineSymbol = Player.MACHINE.getColor().charAt(0);
+        for (int y = SIZE; y >= 1; y--) {
+            for (int x = 1; x <= SIZE; x++) {
+                Player p = getSlot(x, y);
+                if (p == Player.HUMAN) {
+                    res += humanSymbol;
+                } else {
+                    if (p == Player.MACHINE) {
+                        res += machineSymbol;
+                    } else {
+                        res += " ";
+                    }
+                }
+                if (x < SIZE) {
+                    res += " ";
                 }
             }
+            if (y > 1) {
+                res += "\n";
+            }
         }
         return res;
     }
 
+    @Override
+    public boolean gameOver() {
+        return winner != Player.NONE || (humanMobile | machineMobile) == 0;
+    }
+
+    @Override
+    public Player getWinner() {
+        return winner;
+    }
+
     /**
-     * Can a certain player make a move with a specific pawn?
-     * @param source the specific pawn
+     * @param i
+     *            depth in the gametree
+     *
+     * @return score of this game by its evaluator
+     */
+    public double getScore(int i) {
+        return evaluator.evaluate(this, i);
+    }
+
+    /**
+     * Gets the pawns of a player which can move
+     *
+     * @param player
+     *            the player
+     * @return mask of the movable pawns
+     */
+    long mobile(Player player) {
+        if (player == Player.HUMAN) {
+            return humanMobile;
+        }
+        if (player == Player.MACHINE) {
+            return machineMobile;
+        }
+        return 0;
+    }
+
+    /**
+     * Can a certain player make a move?
      * @param player the specific player
-     * @return true if the player can move the pawn
-     */
-    private boolean canMove(Pawn source, Player player) {
-        boolean legalMove = false;
-        int step = human.contains(source) ? 1 : -1;
-        int border = human.contains(source) ? 1 : Board.SIZE;
-        Player other = player == Player.HUMAN ? Player.MACHINE : Player.HUMAN;
-
-        Pawn target1 = new Pawn(source.getColumn(), source.getRow() + step);
-        Pawn target2 = new Pawn(source.getColumn(), source.getRow() + 2 * step);
-        Pawn target3 = new Pawn(source.getColumn() - step, source.getRow()
-                + step);
-        Pawn target4 = new Pawn(source.getColumn() + step, source.getRow()
-                + step);
-
-        // There is no Pawn with the respective coordinates
-        if (!getPawns(getSlot(source.getColumn(), source.getRow())).contains(
-                source)) {
-            return legalMove;
-        }
-        // One Step forward
-        if (source.getRow() + step <= SIZE && source.getRow() + step >= 1
-                && !machine.contains(target1) && !human.contains(target1)) {
-            legalMove = true;
-        }
-        // Two Steps forward
-        if (source.getRow() == border && !machine.contains(target2)
-                && !human.contains(target2)) {
-            legalMove = true;
-        }
-        // Strike right
-        if (!getPawns(player).contains(target3)
-                && getPawns(other).contains(target3)) {
-            legalMove = true;
-        }
-        // Strike left
-        if (!getPawns(player).contains(target4)
-                && getPawns(other).contains(target4)) {
-            legalMove = true;
-        }
-        return legalMove;
+     * @return true if player can move
+     */
+    private boolean canMove(Player player) {
+        if (player == Player.HUMAN) {
+            return humanMobile != 0;
+        }
+        if (player == Player.MACHINE) {
+            return machineMobile != 0;
+        }
+        return false;
     }
 }
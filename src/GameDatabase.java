@@ -0,0 +1,729 @@
+package pawns_chess.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * The class GameDatabase archives games in a directory and finds the games
+ * which reached a game state. The games are appended to segment files of at
+ * most 256 MB. A game is referred to by the number of its segment and the
+ * offset of its record in the segment (see {@link #add(Game)}).
+ *
+ * <p>
+ * A record is the length of its body, the CRC32 of its body and the body:
+ * the winner and the snapshot of the game (see
+ * {@link Game#writeTo(ByteBuffer)}). Every game state of the history of an
+ * added game is indexed at once by its position hash (see
+ * {@link Game#getHash(int)}) in two memory mapped files: an open addressing
+ * hash table from the position hash to the last game which reached it, and a
+ * list of postings which chains the games of a position. Adding a game costs
+ * a constant time per game state, the table doubles when it is half full, so
+ * building the index takes linear time. Games which reach a state whose hash
+ * equals the hash of another state are found for both, which is unlikely
+ * with 64 bit hashes.
+ *
+ * <p>
+ * The index is written to the disk by {@link #flush()} and {@link #close()}.
+ * If the process ended without it, the index is built again from the
+ * segments on opening, and a torn record at the end of a segment (left by a
+ * crash while appending) is cut off. All methods are thread safe.
+ */
+public final class GameDatabase implements Closeable {
+
+    private static final long MAGIC = 0x5043474442000001L;
+
+    /**
+     * Bytes in front of the body of a record: length and checksum
+     */
+    private static final int HEADER = 8;
+
+    /**
+     * Largest body of a record: the winner and the longest snapshot
+     */
+    private static final int MAX_BODY = 1 + 25 + 255 + 2 * 0xFFFF;
+
+    private static final long SEGMENT_SIZE = 1L << 28;
+
+    /**
+     * A reference holds the number of the segment above these bits and the
+     * offset in the segment below
+     */
+    private static final int OFFSET_BITS = 40;
+
+    private static final String TABLE = "positions.idx";
+    private static final String POSTINGS = "postings.idx";
+
+    /**
+     * Fields of the header of the table: magic number, 1 if the index was
+     * written completely, the number of slots, the number of positions, the
+     * number of postings, the number of games and the reference of the end of
+     * the indexed records
+     */
+    private static final int MAGIC_FIELD = 0;
+    private static final int CLEAN_FIELD = 8;
+    private static final int CAPACITY_FIELD = 16;
+    private static final int POSITIONS_FIELD = 24;
+    private static final int POSTINGS_FIELD = 32;
+    private static final int GAMES_FIELD = 40;
+    private static final int END_FIELD = 48;
+    private static final int TABLE_HEADER = 64;
+
+    /**
+     * A slot of the table is the position hash and the number of the last
+     * posting of the position plus 1, 0 for an empty slot. A posting is the
+     * reference of a game and the number of the previous posting of the same
+     * position plus 1, 0 for none.
+     */
+    private static final int SLOT = 16;
+    private static final int POSTING = 16;
+
+    private static final long MIN_CAPACITY = 1 << 16;
+
+    /**
+     * The postings file grows by mappings of this size
+     */
+    private static final long POSTINGS_CHUNK = 1 << 24;
+
+    private static final Player[] PLAYERS = Player.values();
+
+    private final Path directory;
+    private final List<FileChannel> segments = new ArrayList<FileChannel>();
+
+    /**
+     * Size of the last segment
+     */
+    private long segmentSize;
+
+    private MappedFile table;
+    private MappedFile postings;
+    private long capacity;
+    private long positions;
+    private long postingCount;
+    private long games;
+
+    /**
+     * True while the header of the table on the disk matches the index
+     */
+    private boolean clean;
+
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * Opens a database. The directory is created if it does not exist.
+     *
+     * @param directory
+     *            the directory of the segments and the index
+     * @throws IOException
+     *             if the database cannot be read
+     */
+    public GameDatabase(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        for (int i = 0; Files.exists(segment(i)); i++) {
+            segments.add(FileChannel.open(segment(i), StandardOpenOption.READ,
+                    StandardOpenOption.WRITE));
+        }
+        if (segments.isEmpty()) {
+            segments.add(FileChannel.open(segment(0),
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE));
+        }
+        segmentSize = segments.get(segments.size() - 1).size();
+        if (!openIndex()) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Gets the path of a segment
+     *
+     * @param i
+     *            number of the segment
+     * @return the path
+     */
+    private Path segment(int i) {
+        return directory.resolve(String.format("games-%05d.seg", i));
+    }
+
+    /**
+     * Gets the reference of the end of the records
+     *
+     * @return the reference the next record will have
+     */
+    private long end() {
+        return (long) (segments.size() - 1) << OFFSET_BITS | segmentSize;
+    }
+
+    /**
+     * Opens the index if it was written completely and covers all records
+     *
+     * @return false if the index has to be built again
+     * @throws IOException
+     *             if the index cannot be read
+     */
+    private boolean openIndex() throws IOException {
+        Path file = directory.resolve(TABLE);
+        if (!Files.exists(file) || !Files.exists(directory.resolve(POSTINGS))
+                || Files.size(file) < TABLE_HEADER) {
+            return false;
+        }
+        ByteBuffer header = ByteBuffer.allocate(TABLE_HEADER);
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+            }
+        }
+        if (header.getLong(MAGIC_FIELD) != MAGIC
+                || header.getLong(CLEAN_FIELD) != 1
+                || header.getLong(END_FIELD) != end()) {
+            return false;
+        }
+        capacity = header.getLong(CAPACITY_FIELD);
+        positions = header.getLong(POSITIONS_FIELD);
+        postingCount = header.getLong(POSTINGS_FIELD);
+        games = header.getLong(GAMES_FIELD);
+        table = new MappedFile(file, tableChunk(capacity));
+        table.ensure(TABLE_HEADER + capacity * SLOT);
+        postings = new MappedFile(directory.resolve(POSTINGS), POSTINGS_CHUNK);
+        postings.ensure(postingCount * POSTING);
+        clean = true;
+        return true;
+    }
+
+    /**
+     * Gets the size of the mappings of a table
+     *
+     * @param capacity
+     *            number of slots of the table
+     * @return the size in bytes
+     */
+    private static long tableChunk(long capacity) {
+        return Math.min(MappedFile.MAX_CHUNK, TABLE_HEADER + capacity * SLOT);
+    }
+
+    /**
+     * Creates an empty table of a capacity
+     *
+     * @param file
+     *            the file of the table, replaced if it exists
+     * @param capacity
+     *            number of slots
+     * @return the table
+     * @throws IOException
+     *             if the table cannot be written
+     */
+    private static MappedFile createTable(Path file, long capacity)
+        throws IOException {
+        Files.deleteIfExists(file);
+        MappedFile table = new MappedFile(file, tableChunk(capacity));
+        table.ensure(TABLE_HEADER + capacity * SLOT);
+        table.putLong(MAGIC_FIELD, MAGIC);
+        table.putLong(CAPACITY_FIELD, capacity);
+        return table;
+    }
+
+    /**
+     * Builds the index from the segments, cutting off torn records
+     *
+     * @throws IOException
+     *             if the segments cannot be read or the index cannot be
+     *             written
+     */
+    private void rebuild() throws IOException {
+        capacity = MIN_CAPACITY;
+        positions = 0;
+        postingCount = 0;
+        games = 0;
+        table = createTable(directory.resolve(TABLE), capacity);
+        Files.deleteIfExists(directory.resolve(POSTINGS));
+        postings = new MappedFile(directory.resolve(POSTINGS), POSTINGS_CHUNK);
+        clean = false;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+        for (int s = 0; s < segments.size(); s++) {
+            FileChannel channel = segments.get(s);
+            long position = 0;
+            buffer.clear();
+            channel.position(0);
+            boolean end = false;
+            while (!end) {
+                end = channel.read(buffer) < 0;
+                buffer.flip();
+                while (buffer.remaining() >= HEADER) {
+                    int length = buffer.getInt(buffer.position());
+                    if (length <= 0 || length > MAX_BODY) {
+                        end = true;
+                        break;
+                    }
+                    if (buffer.remaining() < HEADER + length) {
+                        break;
+                    }
+                    buffer.getInt();
+                    int checksum = buffer.getInt();
+                    byte[] body = new byte[length];
+                    buffer.get(body);
+                    crc.reset();
+                    crc.update(body);
+                    if ((int) crc.getValue() != checksum) {
+                        end = true;
+                        break;
+                    }
+                    Game game = Game.readFrom(ByteBuffer.wrap(body, 1,
+                            length - 1));
+                    index(game, (long) s << OFFSET_BITS | position);
+                    position += HEADER + length;
+                }
+                buffer.compact();
+            }
+            if (channel.size() > position) {
+                channel.truncate(position);
+            }
+            if (s == segments.size() - 1) {
+                segmentSize = position;
+            }
+        }
+        flush();
+    }
+
+    /**
+     * Archives a game with its history. The moves which were taken back are
+     * stored but not indexed.
+     *
+     * @param game
+     *            the game
+     * @return the reference of the game
+     * @throws IOException
+     *             if the game cannot be written
+     */
+    public synchronized long add(Game game) throws IOException {
+        int length = 1 + game.snapshotSize();
+        ByteBuffer record = ByteBuffer.allocate(HEADER + length);
+        record.putInt(length).putInt(0);
+        record.put((byte) game.getWinner().ordinal());
+        game.writeTo(record);
+        crc.reset();
+        crc.update(record.array(), HEADER, length);
+        record.putInt(4, (int) crc.getValue());
+        record.flip();
+        markDirty();
+        if (segmentSize > 0 && segmentSize + record.remaining() > SEGMENT_SIZE) {
+            segments.add(FileChannel.open(segment(segments.size()),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE));
+            segmentSize = 0;
+        }
+        long ref = end();
+        FileChannel channel = segments.get(segments.size() - 1);
+        long at = segmentSize;
+        while (record.hasRemaining()) {
+            at += channel.write(record, at);
+        }
+        segmentSize = at;
+        index(game, ref);
+        return ref;
+    }
+
+    /**
+     * Indexes all game states of the history of a game
+     *
+     * @param game
+     *            the game
+     * @param ref
+     *            the reference of the game
+     * @throws IOException
+     *             if the index cannot be written
+     */
+    private void index(Game game, long ref) throws IOException {
+        for (int ply = 0; ply <= game.getHistorySize(); ply++) {
+            long hash = game.getHash(ply);
+            long slot = slot(hash);
+            long last = table.getLong(slot + 8);
+            if (last == 0) {
+                table.putLong(slot, hash);
+                positions++;
+            }
+            long at = postingCount * POSTING;
+            postings.ensure(at + POSTING);
+            postings.putLong(at, ref);
+            postings.putLong(at + 8, last);
+            postingCount++;
+            table.putLong(slot + 8, postingCount);
+            if (positions > capacity / 2) {
+                grow();
+            }
+        }
+        games++;
+    }
+
+    /**
+     * Finds the slot of a position hash by linear probing
+     *
+     * @param hash
+     *            the position hash
+     * @return the offset of the slot of the hash or of the empty slot where
+     *         it belongs
+     */
+    private long slot(long hash) {
+        long mask = capacity - 1;
+        for (long i = (hash ^ hash >>> 32) & mask;; i = (i + 1) & mask) {
+            long slot = TABLE_HEADER + i * SLOT;
+            if (table.getLong(slot + 8) == 0 || table.getLong(slot) == hash) {
+                return slot;
+            }
+        }
+    }
+
+    /**
+     * Replaces the table by a table of twice the capacity
+     *
+     * @throws IOException
+     *             if the table cannot be written
+     */
+    private void grow() throws IOException {
+        Path file = directory.resolve(TABLE);
+        Path tmp = directory.resolve(TABLE + ".grow");
+        MappedFile old = table;
+        long oldCapacity = capacity;
+        capacity *= 2;
+        table = createTable(tmp, capacity);
+        for (long i = 0; i < oldCapacity; i++) {
+            long from = TABLE_HEADER + i * SLOT;
+            long last = old.getLong(from + 8);
+            if (last != 0) {
+                long hash = old.getLong(from);
+                long slot = slot(hash);
+                table.putLong(slot, hash);
+                table.putLong(slot + 8, last);
+            }
+        }
+        old.close();
+        table.close();
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        table = new MappedFile(file, tableChunk(capacity));
+        table.ensure(TABLE_HEADER + capacity * SLOT);
+    }
+
+    /**
+     * Marks the index on the disk as incomplete before it is changed
+     *
+     * @throws IOException
+     *             if the index cannot be written
+     */
+    private void markDirty() throws IOException {
+        if (clean) {
+            table.putLong(CLEAN_FIELD, 0);
+            table.forceHeader(TABLE_HEADER);
+            clean = false;
+        }
+    }
+
+    /**
+     * Finds the games which reached a game state
+     *
+     * @param hash
+     *            the position hash of the game state, see
+     *            {@link Game#getHash()}
+     * @return the references of the games in the order they were added
+     */
+    public synchronized long[] find(long hash) {
+        long slot = slot(hash);
+        long posting = table.getLong(slot + 8);
+        long[] refs = new long[16];
+        int n = 0;
+        while (posting != 0) {
+            long at = (posting - 1) * POSTING;
+            if (n == refs.length) {
+                refs = Arrays.copyOf(refs, 2 * n);
+            }
+            refs[n++] = postings.getLong(at);
+            posting = postings.getLong(at + 8);
+        }
+        long[] result = new long[n];
+        for (int i = 0; i < n; i++) {
+            result[i] = refs[n - 1 - i];
+        }
+        return result;
+    }
+
+    /**
+     * Finds the games which reached the current game state of a game
+     *
+     * @param game
+     *            the game
+     * @return the references of the games in the order they were added
+     */
+    public long[] find(Game game) {
+        return find(game.getHash());
+    }
+
+    /**
+     * Reads an archived game
+     *
+     * @param ref
+     *            the reference returned by {@link #add(Game)} or
+     *            {@link #find(long)}
+     * @return a new game equal to the archived one
+     * @throws IOException
+     *             if the game cannot be read
+     * @throws IllegalArgumentException
+     *             if there is no game at the reference
+     */
+    public synchronized Game read(long ref) throws IOException {
+        ByteBuffer body = body(ref);
+        body.get();
+        return Game.readFrom(body);
+    }
+
+    /**
+     * Gets the winner of an archived game without restoring the game
+     *
+     * @param ref
+     *            the reference returned by {@link #add(Game)} or
+     *            {@link #find(long)}
+     * @return the winner when the game was archived, NONE if there was none
+     * @throws IOException
+     *             if the game cannot be read
+     * @throws IllegalArgumentException
+     *             if there is no game at the reference
+     */
+    public synchronized Player getWinner(long ref) throws IOException {
+        return PLAYERS[body(ref).get()];
+    }
+
+    /**
+     * Reads the body of a record and checks it
+     *
+     * @param ref
+     *            the reference of the record
+     * @return the body
+     * @throws IOException
+     *             if the record cannot be read
+     */
+    private ByteBuffer body(long ref) throws IOException {
+        int s = (int) (ref >>> OFFSET_BITS);
+        long offset = ref & (1L << OFFSET_BITS) - 1;
+        if (ref < 0 || ref >= end() || s >= segments.size()) {
+            throw new IllegalArgumentException("No game at " + ref);
+        }
+        FileChannel channel = segments.get(s);
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        read(channel, header, offset);
+        int length = header.getInt(0);
+        if (length <= 0 || length > MAX_BODY) {
+            throw new IllegalArgumentException("No game at " + ref);
+        }
+        ByteBuffer body = ByteBuffer.allocate(length);
+        read(channel, body, offset + HEADER);
+        crc.reset();
+        crc.update(body.array());
+        if ((int) crc.getValue() != header.getInt(4)) {
+            throw new IllegalArgumentException("No game at " + ref);
+        }
+        body.flip();
+        return body;
+    }
+
+    /**
+     * Fills a buffer from a file
+     *
+     * @param channel
+     *            the file
+     * @param buffer
+     *            the buffer
+     * @param position
+     *            the position in the file
+     * @throws IOException
+     *             if the file ends before the buffer is full
+     */
+    private static void read(FileChannel channel, ByteBuffer buffer,
+            long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position);
+            if (n < 0) {
+                throw new IOException("Unexpected end of segment");
+            }
+            position += n;
+        }
+    }
+
+    /**
+     * Gets the number of archived games
+     *
+     * @return the number of games
+     */
+    public synchronized long games() {
+        return games;
+    }
+
+    /**
+     * Gets the number of distinct game states of the archived games
+     *
+     * @return the number of positions
+     */
+    public synchronized long positions() {
+        return positions;
+    }
+
+    /**
+     * Gets the number of indexed game states of the archived games, counting
+     * a game state once for each game which reached it
+     *
+     * @return the number of postings
+     */
+    public synchronized long postings() {
+        return postingCount;
+    }
+
+    /**
+     * Writes the segments and the index to the disk
+     *
+     * @throws IOException
+     *             if the database cannot be written
+     */
+    public synchronized void flush() throws IOException {
+        if (clean) {
+            return;
+        }
+        segments.get(segments.size() - 1).force(false);
+        postings.force();
+        table.putLong(POSITIONS_FIELD, positions);
+        table.putLong(POSTINGS_FIELD, postingCount);
+        table.putLong(GAMES_FIELD, games);
+        table.putLong(END_FIELD, end());
+        table.force();
+        // the index is complete on the disk before it is marked so
+        table.putLong(CLEAN_FIELD, 1);
+        table.forceHeader(TABLE_HEADER);
+        clean = true;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        flush();
+        table.close();
+        postings.close();
+        for (FileChannel channel : segments) {
+            channel.close();
+        }
+    }
+
+    /**
+     * Gets the directory of the database
+     *
+     * @return the directory
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * A file of longs mapped into memory in chunks, which grows on demand
+     */
+    private static final class MappedFile implements Closeable {
+
+        /**
+         * Largest chunk: a byte buffer holds at most 2 GB
+         */
+        static final long MAX_CHUNK = 1L << 30;
+
+        private final FileChannel channel;
+        private final long chunk;
+        private final List<MappedByteBuffer> buffers = new ArrayList<MappedByteBuffer>();
+
+        /**
+         * Opens a file, which is created if it does not exist
+         *
+         * @param file
+         *            the file
+         * @param chunk
+         *            size of a mapping, a multiple of 8
+         * @throws IOException
+         *             if the file cannot be opened
+         */
+        MappedFile(Path file, long chunk) throws IOException {
+            this.chunk = chunk;
+            channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        /**
+         * Maps the file up to a size, extending the file if needed
+         *
+         * @param size
+         *            the size in bytes
+         * @throws IOException
+         *             if the file cannot be mapped
+         */
+        void ensure(long size) throws IOException {
+            while (buffers.size() * chunk < size) {
+                buffers.add(channel.map(FileChannel.MapMode.READ_WRITE,
+                        buffers.size() * chunk, chunk));
+            }
+        }
+
+        /**
+         * Reads a long from the mapped part
+         *
+         * @param at
+         *            the position in bytes
+         * @return the value
+         */
+        long getLong(long at) {
+            return buffers.get((int) (at / chunk)).getLong((int) (at % chunk));
+        }
+
+        /**
+         * Writes a long into the mapped part
+         *
+         * @param at
+         *            the position in bytes
+         * @param value
+         *            the value
+         */
+        void putLong(long at, long value) {
+            buffers.get((int) (at / chunk)).putLong((int) (at % chunk), value);
+        }
+
+        /**
+         * Writes the mapped part to the disk
+         */
+        void force() {
+            for (MappedByteBuffer buffer : buffers) {
+                buffer.force();
+            }
+        }
+
+        /**
+         * Writes the beginning of the file to the disk
+         *
+         * @param size
+         *            number of bytes
+         */
+        void forceHeader(int size) {
+            buffers.get(0).force(0, size);
+        }
+
+        /**
+         * Closes the file. The mappings are released by the garbage
+         * collector.
+         */
+        @Override
+        public void close() throws IOException {
+            buffers.clear();
+            channel.close();
+        }
+
+    }
+
+}
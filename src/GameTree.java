@@ -1,7 +1,6 @@
 package pawns_chess.model;
 
 import java.util.LinkedList;
-import java.util.List;
 
 /**
  * The class GameTree represents the following tree structure: Each GameTree has
@@ -9,29 +8,48 @@ import java.util.List;
  * executed. It also has a List of GameTree with as its children in it (all
  * possible Moves the current Player can make) and the level and the difficulty
  * level.
+ *
+ * <p>
+ * The nodes are held in a {@link TreeArena}, which stores the move, the score
+ * and the packed game state of each node in primitive arrays. The tree is
+ * built and scored with a single game which executes and takes back the
+ * moves. A GameTree object is a view of one node: its children and its game
+ * are only created when {@link #getChilrden()} and {@link #getGame()} are
+ * called. A finished game has no children.
  */
 public class GameTree {
 
     /**
-     * all possible Moves the current Player can make
+     * holds the nodes of the whole tree
      */
-    private LinkedList<GameTree> children;
-    
+    private final TreeArena arena;
+
+    /**
+     * the index of this node in the arena
+     */
+    private final int node;
+
     /**
-     * encapsulates the game state
+     * the game of the root, which gives the first player, the difficulty
+     * level and the evaluator of the games of the nodes
+     */
+    private final Game root;
+
+    /**
+     * encapsulates the game state, created on demand
      */
     private Game game;
-    
+
     /**
-     * the level of this children element in the actual gametree of the
-     * original game. NOT the difficulty level
+     * all possible Moves the current Player can make, created on demand
      */
-    private int level;
-    
+    private LinkedList<GameTree> children;
+
     /**
-     * the difficulty level
+     * the level of this children element in the actual gametree of the
+     * original game. NOT the difficulty level
      */
-    private static int maxlevel;
+    private final int level;
 
     /**
      * Second constructor. Used for Initialization.
@@ -39,62 +57,163 @@ public class GameTree {
      * @param max difficulty level
      */
     public GameTree(Game game, int max) {
+        this(game, max, new TreeArena(1024));
+    }
+
+    /**
+     * Builds a tree in an arena, which is reset first. Views of a tree
+     * built before in the same arena must not be used any more.
+     * @param game current game state
+     * @param max difficulty level
+     * @param arena holds the nodes
+     */
+    GameTree(Game game, int max, TreeArena arena) {
+        this.arena = arena;
+        this.root = game;
         this.game = game;
-        maxlevel = max;
-        children = new LinkedList<GameTree>();
-        this.possibleMoves();
+        this.node = 0;
+        this.level = 0;
+        arena.reset();
+        arena.add(-1, 0, game);
+        Game work = game.clone();
+        expand(work, node, 0, max, new int[Math.max(max, 0) + 1][Board.MAX_MOVES]);
     }
 
     /**
-     * First Constructor. Used for recursion.
-     * @param game current game
-     * @param level level of this gametree  (NOT the difficulty level)
+     * Constructor of the view of a node below the root.
+     * @param parent view of the parent node
+     * @param node index of the node in the arena
+     */
+    private GameTree(GameTree parent, int node) {
+        this.arena = parent.arena;
+        this.root = parent.root;
+        this.node = node;
+        this.level = parent.level + 1;
+    }
+
+    /**
+     * Adds all possible moves a player can make as children of a node and
+     * computes the scores of the children. The children of a node are added
+     * together, so they are consecutive in the arena.
+     * @param work the game state of the node, which is restored at the end
+     * @param parent the node
+     * @param level level of the node (NOT the difficulty level)
      * @param max the difficulty level
+     * @param moves receives the moves of each level
      */
-    private GameTree(Game game, int level, int max) {
-        this.game = game;
-        this.level = level;
-        maxlevel = max;
-        children = new LinkedList<GameTree>();
-        if (level < maxlevel) {
-            this.possibleMoves();
+    private void expand(Game work, int parent, int level, int max,
+            int[][] moves) {
+        if (work.gameOver() || level >= max && level > 0) {
+            return;
+        }
+        int[] list = moves[level];
+        int n = work.legalMoves(list);
+        for (int i = 0; i < n; i++) {
+            work.makeMove(list[i]);
+            arena.add(parent, list[i], work);
+            work.undoMove();
+        }
+        int first = arena.firstChild(parent);
+        for (int i = 0; i < n; i++) {
+            int child = first + i;
+            work.makeMove(arena.move(child));
+            expand(work, child, level + 1, max, moves);
+            arena.setScore(child, score(work, child, level + 1));
+            work.undoMove();
+        }
+    }
+
+    /**
+     * Computes the score of a node from the scores of its children
+     * @param work the game state of the node
+     * @param n the node
+     * @param level level of the node
+     * @return the score
+     */
+    private double score(Game work, int n, int level) {
+        double own = work.getScore(level);
+        int count = arena.childCount(n);
+        if (count == 0 || work.gameOver()) {
+            return own;
+        }
+        boolean max = work.next() == Player.MACHINE;
+        int first = arena.firstChild(n);
+        double x = max ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+        for (int c = first; c < first + count; c++) {
+            double s = arena.score(c);
+            if (max ? s > x : s < x) {
+                x = s;
+            }
         }
+        return own + x;
     }
-    
+
     /**
      * Gets the current game of this level
      * @return the current game state
      */
     public Game getGame() {
+        if (game == null) {
+            game = Game.of(arena.bits(node, Player.HUMAN), arena.bits(node,
+                    Player.MACHINE), root.getFirstPlayer(), arena.next(node));
+            game.setLevel(root.getLevel());
+            game.setEvaluator(root.getEvaluator());
+            // as in a copy of the game, the engine state is not shared
+            game.setEngine(Engines.forName(root.getEngine().getName()));
+        }
         return game;
     }
 
+    /**
+     * Gets the move which leads to the game state of this node
+     * @return the move, null for the root
+     */
+    public Move getMove() {
+        return node == 0 ? null : Move.decode(arena.move(node));
+    }
+
     /**
      * Gets the children of the game: all possible moves of the current player
      * @return children of
      */
     public LinkedList<GameTree> getChilrden() {
+        if (children == null) {
+            children = new LinkedList<GameTree>();
+            int first = arena.firstChild(node);
+            for (int i = 0; i < arena.childCount(node); i++) {
+                children.add(new GameTree(this, first + i));
+            }
+        }
         return children;
     }
 
     /**
-     * Selects the best Strategy the machine can make.
-     * @return the best move
+     * Gets the number of nodes of the whole tree
+     * @return the number of nodes including the root
+     */
+    public int size() {
+        return arena.size();
+    }
+
+    /**
+     * Selects the best Strategy the machine can make. {@link Board#analyze}
+     * ranks several moves with their scores.
+     * @return the game state after the best move, the game state of this
+     *         node if it has no children
      */
     public Game selectBestStrategy() {
-        if (!children.isEmpty()) {
-    
-            GameTree res = children.get(0);
-            for (GameTree gt : children) {
-                if (gt.getScore() > res.getScore()) {
-                    res = gt;
+        int count = arena.childCount(node);
+        if (count > 0) {
+            int first = arena.firstChild(node);
+            int res = first;
+            for (int c = first + 1; c < first + count; c++) {
+                if (arena.score(c) > arena.score(res)) {
+                    res = c;
                 }
             }
-            return res.getGame();
-        } else {
-            System.out.println("empty");
-            return game;
+            return getChilrden().get(res - first).getGame();
         }
+        return getGame();
     }
 
     /**
@@ -102,13 +221,16 @@ public class GameTree {
      * @return score
      */
     public double getScore() {
-        if (children.isEmpty() || game.gameOver()) {
+        if (node != 0) {
+            return arena.score(node);
+        }
+        // the root is scored on demand: its own score is undefined at level
+        // 0 if the game is over
+        if (arena.childCount(node) == 0 || game.gameOver()) {
             return game.getScore(level);
-        } else {
-            Player next = game.next();
-            return (next == Player.MACHINE) ? max() : min();
         }
-        
+        Player next = game.next();
+        return (next == Player.MACHINE) ? max() : min();
     }
 
     /**
@@ -117,11 +239,9 @@ public class GameTree {
      */
     private double max() {
         double x = Double.NEGATIVE_INFINITY;
-        for (GameTree g : children) {
-            double gamescore = g.getScore();
-            if (gamescore > x) {
-                x = gamescore;
-            }
+        int first = arena.firstChild(node);
+        for (int c = first; c < first + arena.childCount(node); c++) {
+            x = Math.max(x, arena.score(c));
         }
         return game.getScore(level) + x;
     }
@@ -132,95 +252,11 @@ public class GameTree {
      */
     private double min() {
         double x = Double.POSITIVE_INFINITY;
-        for (GameTree g : children) {
-            double gamescore = g.getScore();
-            if (gamescore < x) {
-                x = gamescore;
-            }
+        int first = arena.firstChild(node);
+        for (int c = first; c < first + arena.childCount(node); c++) {
+            x = Math.min(x, arena.score(c));
         }
         return game.getScore(level) + x;
     }
 
-    /**
-     * Creates all possible moves a player can make and adds them as children
-     * to the gametree. This is used to initialize the children using recursion
-     */
-    private void possibleMoves() {
-        List<Game> allPossibilities = new LinkedList<Game>();
-        for (Pawn p : game.getPawns(game.next())) {
-            allPossibilities.addAll(possibleMoves(p, game.next()));
-        }
-        for (Game b : allPossibilities) {
-            GameTree gt = new GameTree(b, this.level + 1, maxlevel);
-            children.add(gt);
-        }
-    }
-
-    /**
-     * Creates all (max 4) possible moves a player can make with one pawn and
-     * adds  them as children to the gametree.
-     * This is used to initialize the children using recursion
-     * @param p the specific pawn
-     * @param current the current player
-     * @return all possible moves
-     */
-    private List<Game> possibleMoves(Pawn p, Player current) {
-        int x = p.getColumn();
-        int y = p.getRow();
-        // To save all the possible moves / game states
-        List<Game> moves = new LinkedList<Game>();
-        Player other = current == Player.HUMAN ? Player.MACHINE : Player.HUMAN;
-        assert (game.next() == current) : "game.next() unequal to current";
-        int step = current == Player.HUMAN ? 1 : -1;
-        int border = current == Player.HUMAN ? 1 : Board.SIZE;
-
-        // Strike Left
-        if (game.getSlot(x - step, y + step).equals(other)) {
-            Game g = game.clone();
-            g.setNext();
-            for (Pawn h : g.getPawns(current)) {
-                if (p.equals(h)) {
-                    h.setColumn(x - step);
-                    h.setRow(y + step);
-                    g.getPawns(other).remove(h);
-                    moves.add(g);
-                }
-            }
-        } // Step forward
-        if (y + step <= Board.SIZE && y + step >= 1
-                && game.getSlot(x, y + step).equals(Player.NONE)) {
-            Game g = game.clone();
-            g.setNext();
-            for (Pawn h : g.getPawns(current)) {
-                if (p.equals(h)) {
-                    h.setRow(y + step);
-                    moves.add(g);
-                }
-            }
-        } // 2 Steps forward
-        if (y == border && game.getSlot(x, y + 2 * step).equals(Player.NONE)) {
-            Game g = game.clone();
-            g.setNext();
-            for (Pawn h : g.getPawns(current)) {
-                if (p.equals(h)) {
-                    h.setRow(y + 2 * step);
-                    moves.add(g);
-                }
-            }
-        } // Strike right
-        if (game.getSlot(x + step, y + step).equals(other)) {
-            Game g = game.clone();
-            g.setNext();
-            for (Pawn h : g.getPawns(current)) {
-                if (p.equals(h)) {
-                    h.setColumn(x + step);
-                    h.setRow(y + step);
-                    g.getPawns(other).remove(h);
-                    moves.add(g);
-                }
-            }
-        }
-        return moves;
-    }
-
 }
@@ -0,0 +1,23 @@
+package pawns_chess.model;
+
+/**
+ * A cheap evaluator for deep searches: only the number score, the distance
+ * score and the victory score of the {@link ClassicEvaluator}.
+ */
+class MaterialEvaluator implements Evaluator {
+
+    @Override
+    public String getName() {
+        return "material";
+    }
+
+    @Override
+    public double evaluate(Game game, int depth) {
+        long human = game.bits(Player.HUMAN);
+        long machine = game.bits(Player.MACHINE);
+        return ClassicEvaluator.scoreN(human, machine)
+                + ClassicEvaluator.scoreD(human, machine)
+                + ClassicEvaluator.scoreV(game.getWinner(), depth);
+    }
+
+}
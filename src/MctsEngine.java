@@ -0,0 +1,554 @@
+package pawns_chess.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * The engine which chooses the machine's move by Monte Carlo tree search
+ * (UCT). Each iteration walks down the tree to a node with untried moves,
+ * adds one child and plays the game out with random moves on bit masks. A
+ * move which reaches the ground line is always played, and decided races
+ * (see {@link Race}) end the playout early. The engine counts wins, not
+ * scores, so the evaluator of the game is not used.
+ *
+ * <p>
+ * The tree of the last move is kept: if the position after the machine's
+ * move and the human's answer is in the tree, the search continues from
+ * there. Several threads can search the same tree. Tree updates take a lock,
+ * the playouts run without it, and each thread counts its nodes on the way
+ * down as lost until its playout is back (virtual loss), so the threads
+ * spread over the tree. The order of the threads' playouts varies from run to
+ * run, so a seeded game is searched with one thread to be reproducible.
+ */
+final class MctsEngine implements Engine {
+
+    /**
+     * The exploration constant of UCT
+     */
+    static final double EXPLORATION = 1.0;
+
+    /**
+     * Visits counted as lost for each thread below a node
+     */
+    static final int VIRTUAL_LOSS = 3;
+
+    /**
+     * Longest principal variation returned
+     */
+    private static final int MAX_PV = 16;
+
+    private static final int SIZE = Board.SIZE;
+
+    /**
+     * A node of the tree. All fields but the position are guarded by the
+     * engine.
+     */
+    private static final class Node {
+
+        /**
+         * The position, the move which led here and its player
+         */
+        final long human;
+        final long machine;
+        final int move;
+        final boolean machineMoved;
+
+        /**
+         * the player to move, NONE if the game is over, and the result for
+         * the machine if it is: 1 won, 0 lost, 0.5 drawn
+         */
+        final Player next;
+        final double result;
+
+        /**
+         * the legal moves, the first {@code children.size()} are tried
+         */
+        final int[] moves;
+        final List<Node> children = new ArrayList<Node>();
+
+        /**
+         * playouts through this node, the wins of machineMoved's player
+         * among them and the virtual losses of running playouts
+         */
+        int visits;
+        double wins;
+        int virtual;
+
+        /**
+         * Creates a node
+         *
+         * @param human
+         *            mask of the human pawns
+         * @param machine
+         *            mask of the machine pawns
+         * @param move
+         *            the encoded move which led here, 0 for the root
+         * @param machineMoved
+         *            true if the machine made the move
+         * @param next
+         *            the player to move, NONE if the game is over
+         */
+        Node(long human, long machine, int move, boolean machineMoved,
+                Player next) {
+            this.human = human;
+            this.machine = machine;
+            this.move = move;
+            this.machineMoved = machineMoved;
+            this.next = next;
+            if (next == Player.NONE) {
+                moves = new int[0];
+                result = result(human, machine);
+            } else {
+                int[] buffer = new int[Game.MAX_MOVES];
+                int n = moves(human, machine, next == Player.HUMAN, buffer);
+                moves = Arrays.copyOf(buffer, n);
+                result = 0.5;
+            }
+        }
+
+        /**
+         * Computes the UCT value of this node for its parent
+         *
+         * @param logParent
+         *            logarithm of the visits of the parent
+         * @return the value, infinite if the node was never visited
+         */
+        double uct(double logParent) {
+            int n = visits + virtual;
+            if (n == 0) {
+                return Double.POSITIVE_INFINITY;
+            }
+            return wins / n + EXPLORATION * Math.sqrt(logParent / n);
+        }
+
+        /**
+         * Gets the reward of a playout for the player who moved here
+         *
+         * @param machineResult
+         *            the result for the machine
+         * @return the reward
+         */
+        double reward(double machineResult) {
+            return machineMoved ? machineResult : 1 - machineResult;
+        }
+    }
+
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private long timeLimit;
+    private Node root;
+    private long playouts;
+    private long budget;
+    private long deadline;
+
+    /**
+     * Used by {@link Engines#forName(String)}
+     */
+    MctsEngine() {
+    }
+
+    @Override
+    public String getName() {
+        return Engines.MCTS;
+    }
+
+    /**
+     * Sets the number of threads searching the tree of an unseeded game. A
+     * seeded game is always searched with one thread.
+     *
+     * @param threads
+     *            number of threads, at least 1
+     */
+    void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Limits the time of each move instead of the number of playouts of the
+     * level
+     *
+     * @param millis
+     *            the time limit in milliseconds, 0 to play by level
+     */
+    void setTimeLimit(long millis) {
+        timeLimit = millis;
+    }
+
+    /**
+     * Gets the number of playouts of the last move, without those of the
+     * reused tree
+     *
+     * @return the playouts
+     */
+    long getPlayouts() {
+        return playouts;
+    }
+
+    /**
+     * Gets the number of playouts of a level. The node limit of the level
+     * (see {@link Game#nodeLimit(int)}) is divided by the nodes the
+     * alpha-beta search visits in the time of a playout.
+     *
+     * @param level
+     *            the level
+     * @return the playouts
+     */
+    static long playouts(int level) {
+        return Math.max(16, Game.nodeLimit(level) / 24);
+    }
+
+    @Override
+    public List<Move> choose(Game game, int level, SplittableRandom random) {
+        long human = game.bits(Player.HUMAN);
+        long machine = game.bits(Player.MACHINE);
+        Node start = reuse(human, machine);
+        root = start != null ? start : new Node(human, machine, 0, false,
+                Player.MACHINE);
+        playouts = 0;
+        budget = timeLimit > 0 ? Long.MAX_VALUE : playouts(level);
+        deadline = timeLimit > 0 ? System.nanoTime() + timeLimit * 1000000L
+                : 0;
+        if (root.moves.length > 1) {
+            if (threads == 1 || game.isSeeded()) {
+                run(random);
+            } else {
+                search(random);
+            }
+        }
+        List<Move> line = new ArrayList<Move>();
+        Node node = root;
+        while (line.size() < MAX_PV && node.next != Player.NONE) {
+            Node best = mostVisited(node);
+            if (best == null) {
+                break;
+            }
+            line.add(Move.decode(best.move));
+            node = best;
+        }
+        if (line.isEmpty()) {
+            line.add(Move.decode(root.moves[0]));
+        }
+        return line;
+    }
+
+    /**
+     * Searches with several threads
+     *
+     * @param random
+     *            the random source of the game
+     */
+    private void search(SplittableRandom random) {
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            SplittableRandom own = random.split();
+            workers[i] = new Thread(() -> run(own), "mcts-" + i);
+            workers[i].start();
+        }
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Finds the current position among the grandchildren of the last root
+     *
+     * @param human
+     *            mask of the human pawns
+     * @param machine
+     *            mask of the machine pawns
+     * @return the node or null if the position is not in the tree
+     */
+    private Node reuse(long human, long machine) {
+        if (root == null) {
+            return null;
+        }
+        for (Node child : root.children) {
+            for (Node grandchild : child.children) {
+                if (grandchild.human == human && grandchild.machine == machine
+                        && grandchild.next == Player.MACHINE) {
+                    return grandchild;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Runs iterations until the playouts or the time are used up
+     *
+     * @param random
+     *            the random source of this thread
+     */
+    private void run(SplittableRandom random) {
+        List<Node> path = new ArrayList<Node>();
+        int[] buffer = new int[Game.MAX_MOVES];
+        while (true) {
+            Node leaf;
+            synchronized (this) {
+                if (playouts >= budget || deadline != 0
+                        && System.nanoTime() - deadline > 0) {
+                    return;
+                }
+                playouts++;
+                leaf = select(path);
+            }
+            double result = leaf.next == Player.NONE ? leaf.result
+                    : playout(leaf.human, leaf.machine,
+                            leaf.next == Player.HUMAN, random, buffer);
+            synchronized (this) {
+                for (Node node : path) {
+                    node.virtual -= VIRTUAL_LOSS;
+                    node.visits++;
+                    node.wins += node.reward(result);
+                }
+            }
+        }
+    }
+
+    /**
+     * Walks down the tree by UCT and adds a child to the first node with
+     * untried moves. The nodes of the path get a virtual loss.
+     *
+     * @param path
+     *            receives the nodes from the root to the new leaf
+     * @return the new leaf, or a node where the game is over
+     */
+    private Node select(List<Node> path) {
+        path.clear();
+        Node node = root;
+        path.add(node);
+        node.virtual += VIRTUAL_LOSS;
+        while (node.next != Player.NONE) {
+            if (node.children.size() < node.moves.length) {
+                node = expand(node);
+            } else {
+                double logVisits = Math.log(Math.max(1, node.visits
+                        + node.virtual));
+                Node best = null;
+                double bestValue = Double.NEGATIVE_INFINITY;
+                for (Node child : node.children) {
+                    double value = child.uct(logVisits);
+                    if (value > bestValue) {
+                        bestValue = value;
+                        best = child;
+                    }
+                }
+                node = best;
+            }
+            path.add(node);
+            node.virtual += VIRTUAL_LOSS;
+            if (node.visits == 0) {
+                break;
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Adds the child of the next untried move
+     *
+     * @param node
+     *            the node
+     * @return the new child
+     */
+    private static Node expand(Node node) {
+        int m = node.moves[node.children.size()];
+        boolean human = node.next == Player.HUMAN;
+        long h = node.human;
+        long ma = node.machine;
+        long moved = 1L << Move.from(m) | 1L << Move.to(m);
+        if (human) {
+            h ^= moved;
+            ma &= ~(1L << Move.to(m));
+        } else {
+            ma ^= moved;
+            h &= ~(1L << Move.to(m));
+        }
+        Node child = new Node(h, ma, m, !human, next(h, ma, human, m));
+        node.children.add(child);
+        return child;
+    }
+
+    /**
+     * Gets the most visited child
+     *
+     * @param node
+     *            the node
+     * @return the child or null if there is none
+     */
+    private static Node mostVisited(Node node) {
+        Node best = null;
+        for (Node child : node.children) {
+            if (best == null || child.visits > best.visits) {
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Plays a game out with random moves. A move which reaches the ground
+     * line is always played.
+     *
+     * @param human
+     *            mask of the human pawns
+     * @param machine
+     *            mask of the machine pawns
+     * @param humanNext
+     *            true if it is the human's turn
+     * @param random
+     *            the random source
+     * @param buffer
+     *            receives the moves, at least MAX_MOVES long
+     * @return the result for the machine: 1 won, 0 lost, 0.5 drawn
+     */
+    static double playout(long human, long machine, boolean humanNext,
+            SplittableRandom random, int[] buffer) {
+        while (true) {
+            int race = Race.resolve(human, machine, humanNext ? Player.HUMAN
+                    : Player.MACHINE);
+            if (race != 0) {
+                return race > 0 ? 1 : 0;
+            }
+            int n = moves(human, machine, humanNext, buffer);
+            if (n == 0) {
+                humanNext = !humanNext;
+                n = moves(human, machine, humanNext, buffer);
+                if (n == 0) {
+                    return 0.5;
+                }
+            }
+            long goal = Bits.rowMask(humanNext ? SIZE : 1);
+            int m = buffer[random.nextInt(n)];
+            for (int i = 0; i < n; i++) {
+                if ((1L << Move.to(buffer[i]) & goal) != 0) {
+                    m = buffer[i];
+                    break;
+                }
+            }
+            long to = 1L << Move.to(m);
+            long moved = 1L << Move.from(m) | to;
+            if (humanNext) {
+                human ^= moved;
+                machine &= ~to;
+                if ((to & goal) != 0 || machine == 0) {
+                    return 0;
+                }
+            } else {
+                machine ^= moved;
+                human &= ~to;
+                if ((to & goal) != 0 || human == 0) {
+                    return 1;
+                }
+            }
+            humanNext = !humanNext;
+        }
+    }
+
+    /**
+     * Decides who moves after a move
+     *
+     * @param human
+     *            mask of the human pawns after the move
+     * @param machine
+     *            mask of the machine pawns after the move
+     * @param humanMoved
+     *            true if the human made the move
+     * @param m
+     *            the encoded move
+     * @return the player to move, NONE if the game is over
+     */
+    private static Player next(long human, long machine, boolean humanMoved,
+            int m) {
+        long goal = Bits.rowMask(humanMoved ? SIZE : 1);
+        if ((1L << Move.to(m) & goal) != 0 || human == 0 || machine == 0) {
+            return Player.NONE;
+        }
+        int[] buffer = new int[Game.MAX_MOVES];
+        if (moves(human, machine, !humanMoved, buffer) > 0) {
+            return humanMoved ? Player.MACHINE : Player.HUMAN;
+        }
+        if (moves(human, machine, humanMoved, buffer) > 0) {
+            return humanMoved ? Player.HUMAN : Player.MACHINE;
+        }
+        return Player.NONE;
+    }
+
+    /**
+     * Gets the result of a finished game for the machine
+     *
+     * @param human
+     *            mask of the human pawns
+     * @param machine
+     *            mask of the machine pawns
+     * @return 1 won, 0 lost, 0.5 drawn
+     */
+    private static double result(long human, long machine) {
+        if (human == 0 || (machine & Bits.rowMask(1)) != 0) {
+            return 1;
+        }
+        if (machine == 0 || (human & Bits.rowMask(SIZE)) != 0) {
+            return 0;
+        }
+        return 0.5;
+    }
+
+    /**
+     * Creates the legal moves of a player like
+     * {@link Game#legalMoves(int[])}, but from the pawn masks only
+     *
+     * @param human
+     *            mask of the human pawns
+     * @param machine
+     *            mask of the machine pawns
+     * @param humanMoves
+     *            true for the moves of the human
+     * @param buffer
+     *            receives the encoded moves, at least MAX_MOVES long
+     * @return number of legal moves
+     */
+    static int moves(long human, long machine, boolean humanMoves,
+            int[] buffer) {
+        long own = humanMoves ? human : machine;
+        long other = humanMoves ? machine : human;
+        long empty = ~(human | machine) & Bits.BOARD;
+        int step = humanMoves ? SIZE : -SIZE;
+        int border = humanMoves ? 0 : SIZE - 1;
+        long leftEdge = humanMoves ? Bits.FIRST_COLUMN : Bits.LAST_COLUMN;
+        long rightEdge = humanMoves ? Bits.LAST_COLUMN : Bits.FIRST_COLUMN;
+        int left = humanMoves ? -1 : 1;
+        int n = 0;
+        for (long b = own; b != 0; b &= b - 1) {
+            int sq = Long.numberOfTrailingZeros(b);
+            long bit = 1L << sq;
+            int ahead = sq + step;
+            if (ahead < 0 || ahead >= SIZE * SIZE) {
+                continue;
+            }
+            if ((bit & leftEdge) == 0 && (other & 1L << (ahead + left)) != 0) {
+                buffer[n++] = Move.encode(sq, ahead + left);
+            }
+            if ((empty & 1L << ahead) != 0) {
+                buffer[n++] = Move.encode(sq, ahead);
+            }
+            if (sq / SIZE == border && (empty & 1L << (ahead + step)) != 0) {
+                buffer[n++] = Move.encode(sq, ahead + step);
+            }
+            if ((bit & rightEdge) == 0
+                    && (other & 1L << (ahead - left)) != 0) {
+                buffer[n++] = Move.encode(sq, ahead - left);
+            }
+        }
+        return n;
+    }
+
+}
@@ -0,0 +1,188 @@
+package pawns_chess.model;
+
+/**
+ * The class Move models a single pawn move as a pair of source and target
+ * coordinates. Moves are immutable. Inside the engine a move is encoded as an
+ * int: the bit index (row - 1) * SIZE + (col - 1) of the source slot in the
+ * low six bits and the bit index of the target slot in the next six bits.
+ */
+public final class Move {
+
+    private final int colFrom;
+    private final int rowFrom;
+    private final int colTo;
+    private final int rowTo;
+
+    /**
+     * Generates a new move
+     *
+     * @param colFrom
+     *            x-coordinate of the source slot
+     * @param rowFrom
+     *            y-coordinate of the source slot
+     * @param colTo
+     *            x-coordinate of the target slot
+     * @param rowTo
+     *            y-coordinate of the target slot
+     */
+    public Move(int colFrom, int rowFrom, int colTo, int rowTo) {
+        this.colFrom = colFrom;
+        this.rowFrom = rowFrom;
+        this.colTo = colTo;
+        this.rowTo = rowTo;
+    }
+
+    /**
+     * Gets the column of the source slot
+     *
+     * @return x-coordinate
+     */
+    public int getColumnFrom() {
+        return colFrom;
+    }
+
+    /**
+     * Gets the row of the source slot
+     *
+     * @return y-coordinate
+     */
+    public int getRowFrom() {
+        return rowFrom;
+    }
+
+    /**
+     * Gets the column of the target slot
+     *
+     * @return x-coordinate
+     */
+    public int getColumnTo() {
+        return colTo;
+    }
+
+    /**
+     * Gets the row of the target slot
+     *
+     * @return y-coordinate
+     */
+    public int getRowTo() {
+        return rowTo;
+    }
+
+    /**
+     * Gets the int encoding of this move
+     *
+     * @return the encoded move
+     */
+    int encode() {
+        return encode((rowFrom - 1) * Board.SIZE + colFrom - 1,
+                (rowTo - 1) * Board.SIZE + colTo - 1);
+    }
+
+    /**
+     * Encodes a move
+     *
+     * @param from
+     *            bit index of the source slot
+     * @param to
+     *            bit index of the target slot
+     * @return the encoded move
+     */
+    static int encode(int from, int to) {
+        return from | to << 6;
+    }
+
+    /**
+     * Gets the source slot of an encoded move
+     *
+     * @param move
+     *            the encoded move
+     * @return bit index of the source slot
+     */
+    public static int from(int move) {
+        return move & 63;
+    }
+
+    /**
+     * Gets the target slot of an encoded move
+     *
+     * @param move
+     *            the encoded move
+     * @return bit index of the target slot
+     */
+    public static int to(int move) {
+        return (move >>> 6) & 63;
+    }
+
+    /**
+     * Mirrors an encoded move at the middle column
+     *
+     * @param move
+     *            the encoded move, 0 for none
+     * @return the encoded mirrored move, 0 for none
+     */
+    static int flipColumns(int move) {
+        return move == 0 ? 0 : encode(Bits.flipColumn(from(move)), Bits
+                .flipColumn(to(move)));
+    }
+
+    /**
+     * Mirrors an encoded move at the middle row
+     *
+     * @param move
+     *            the encoded move, 0 for none
+     * @return the encoded mirrored move, 0 for none
+     */
+    static int flipRows(int move) {
+        return move == 0 ? 0 : encode(Bits.flipRow(from(move)), Bits
+                .flipRow(to(move)));
+    }
+
+    /**
+     * Decodes a move. An encoded move holds the bit index (row - 1) * SIZE +
+     * (col - 1) of the source slot in bits 0 to 5 and of the target slot in
+     * bits 6 to 11.
+     *
+     * @param move
+     *            the encoded move
+     * @return the move
+     */
+    public static Move decode(int move) {
+        int from = from(move);
+        int to = to(move);
+        return new Move(from % Board.SIZE + 1, from / Board.SIZE + 1, to
+                % Board.SIZE + 1, to / Board.SIZE + 1);
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + colFrom;
+        result = prime * result + rowFrom;
+        result = prime * result + colTo;
+        result = prime * result + rowTo;
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        Move other = (Move) obj;
+        return colFrom == other.colFrom && rowFrom == other.rowFrom
+                && colTo == other.colTo && rowTo == other.rowTo;
+    }
+
+    /**
+     * The move in the notation of the MOVE command, e.g. "2 1 2 3"
+     */
+    @Override
+    public String toString() {
+        return colFrom + " " + rowFrom + " " + colTo + " " + rowTo;
+    }
+
+}
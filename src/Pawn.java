@@ -1,7 +1,8 @@
 package pawns_chess.model;
 
 /**
- * The class Pawn models a chess pawn as pair of coordinates.
+ * The class Pawn models a chess pawn as pair of coordinates. A game stores its
+ * pawns as bit masks, pawns are only a view on them (see Game.getPawns).
  */
 public class Pawn implements Cloneable {
 
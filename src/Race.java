@@ -0,0 +1,173 @@
+package pawns_chess.model;
+
+/**
+ * The class Race decides pawn races by arithmetic instead of search. The
+ * pawns of a player are given as bit masks: bit {@code (row - 1) * SIZE +
+ * (column - 1)} is set if the player has a pawn at (column, row).
+ *
+ * <p>
+ * A pawn is passed if no enemy pawn stands in front of it on its own or an
+ * adjacent column. A passed pawn is unstoppable if no own pawn blocks its
+ * column and no enemy pawn in front of it can reach its path in time: an
+ * enemy pawn changes its column at most once per move, so only enemy pawns
+ * whose column distance is at most their row distance are dangerous. A race
+ * is decided if the side to move reaches the opponent's ground line with an
+ * unstoppable pawn not later than the opponent can with any pawn, or if the
+ * opponent's unstoppable pawn is faster than every pawn of the side to move.
+ */
+final class Race {
+
+    /**
+     * Squares in front of a pawn on its own and the adjacent columns
+     */
+    private static final long[][] PASSED = new long[2][Board.SIZE * Board.SIZE];
+
+    /**
+     * Squares in front of a pawn with column distance <= row distance
+     */
+    private static final long[][] CONE = new long[2][Board.SIZE * Board.SIZE];
+
+    /**
+     * Squares in front of a pawn on its own column
+     */
+    private static final long[][] FILE = new long[2][Board.SIZE * Board.SIZE];
+
+    static {
+        int size = Board.SIZE;
+        for (int side = 0; side < 2; side++) {
+            int step = side == 0 ? 1 : -1;
+            for (int sq = 0; sq < size * size; sq++) {
+                int x = sq % size;
+                int y = sq / size;
+                for (int r = y + step; r >= 0 && r < size; r += step) {
+                    int dist = Math.abs(r - y);
+                    for (int c = 0; c < size; c++) {
+                        long bit = 1L << (r * size + c);
+                        int dc = Math.abs(c - x);
+                        if (dc <= 1) {
+                            PASSED[side][sq] |= bit;
+                        }
+                        if (dc <= dist) {
+                            CONE[side][sq] |= bit;
+                        }
+                        if (dc == 0) {
+                            FILE[side][sq] |= bit;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * not used
+     */
+    private Race() {
+    }
+
+    /**
+     * Decides the race of the position
+     *
+     * @param human
+     *            the human pawns
+     * @param machine
+     *            the machine pawns
+     * @param next
+     *            the player whose turn it is
+     * @return 0 if the race is not decided, otherwise the number of plies
+     *         until the winner reaches the ground line, positive if the
+     *         machine wins and negative if the human wins
+     */
+    static int resolve(long human, long machine, Player next) {
+        if (next == Player.NONE || human == 0 || machine == 0) {
+            return 0;
+        }
+        int unstoppableH = unstoppable(human, machine, 0);
+        int unstoppableM = unstoppable(machine, human, 1);
+        if (unstoppableH == Integer.MAX_VALUE
+                && unstoppableM == Integer.MAX_VALUE) {
+            return 0;
+        }
+        int fastestH = distance(63 - Long.numberOfLeadingZeros(human), 0);
+        int fastestM = distance(Long.numberOfTrailingZeros(machine), 1);
+
+        boolean machineToMove = next == Player.MACHINE;
+        int own = machineToMove ? unstoppableM : unstoppableH;
+        int other = machineToMove ? unstoppableH : unstoppableM;
+        int ownFastest = machineToMove ? fastestM : fastestH;
+        int otherFastest = machineToMove ? fastestH : fastestM;
+        int sign = machineToMove ? 1 : -1;
+
+        if (own <= otherFastest) {
+            // the side to move arrives before the opponent's next move
+            return sign * (2 * own - 1);
+        }
+        if (other < ownFastest) {
+            return -sign * 2 * other;
+        }
+        return 0;
+    }
+
+    /**
+     * Gets the passed pawns of a player
+     *
+     * @param own
+     *            the pawns of the player
+     * @param enemy
+     *            the pawns of the opponent
+     * @param side
+     *            0 for the human, 1 for the machine
+     * @return mask of the passed pawns
+     */
+    static long passed(long own, long enemy, int side) {
+        long res = 0;
+        for (long b = own; b != 0; b &= b - 1) {
+            int sq = Long.numberOfTrailingZeros(b);
+            if ((enemy & PASSED[side][sq]) == 0) {
+                res |= 1L << sq;
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Gets the number of moves of the fastest unstoppable pawn
+     *
+     * @param own
+     *            the pawns of the player
+     * @param enemy
+     *            the pawns of the opponent
+     * @param side
+     *            0 for the human, 1 for the machine
+     * @return moves to the ground line or Integer.MAX_VALUE
+     */
+    private static int unstoppable(long own, long enemy, int side) {
+        int best = Integer.MAX_VALUE;
+        for (long b = passed(own, enemy, side); b != 0; b &= b - 1) {
+            int sq = Long.numberOfTrailingZeros(b);
+            if ((enemy & CONE[side][sq]) == 0 && (own & FILE[side][sq]) == 0) {
+                best = Math.min(best, distance(sq, side));
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Gets the number of moves a pawn needs to the ground line of the
+     * opponent if nothing stands in its way
+     *
+     * @param sq
+     *            square of the pawn
+     * @param side
+     *            0 for the human, 1 for the machine
+     * @return number of moves
+     */
+    private static int distance(int sq, int side) {
+        int row = sq / Board.SIZE + 1;
+        int rows = side == 0 ? Board.SIZE - row : row - 1;
+        boolean groundLine = side == 0 ? row == 1 : row == Board.SIZE;
+        // the first move from the ground line may be a double step
+        return groundLine && rows >= 2 ? rows - 1 : rows;
+    }
+
+}
@@ -0,0 +1,628 @@
+package pawns_chess.model;
+
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * The class ReferenceGame keeps the rules and the score of the first version
+ * of {@link Game}, which saved the pawns of each player in a list. It is slow
+ * but plain, and serves {@link Fuzz} as the oracle for the optimized game,
+ * tree and search. Do not optimize it: every question is answered by scanning
+ * the pawn lists, as the original game did.
+ */
+final class ReferenceGame {
+
+    static final int SIZE = Board.SIZE;
+
+    private Player current;
+    private final List<Pawn> human;
+    private final List<Pawn> machine;
+
+    /**
+     * Creates a game state
+     *
+     * @param humanBits
+     *            mask of the human pawns
+     * @param machineBits
+     *            mask of the machine pawns
+     * @param current
+     *            the player whose turn it is
+     */
+    ReferenceGame(long humanBits, long machineBits, Player current) {
+        this.current = current;
+        human = new LinkedList<Pawn>();
+        machine = new LinkedList<Pawn>();
+        // the original game listed the machine pawns from right to left
+        for (int y = 1; y <= SIZE; y++) {
+            for (int x = 1; x <= SIZE; x++) {
+                if ((humanBits & 1L << Bits.square(x, y)) != 0) {
+                    human.add(new Pawn(x, y));
+                }
+                if ((machineBits & 1L << Bits.square(SIZE + 1 - x, y)) != 0) {
+                    machine.add(new Pawn(SIZE + 1 - x, y));
+                }
+            }
+        }
+    }
+
+    /**
+     * Clone Constructor
+     *
+     * @param current
+     *            copy of the current player
+     * @param human
+     *            List of human pawns
+     * @param machine
+     *            List of machine pawns
+     */
+    private ReferenceGame(Player current, List<Pawn> human,
+            List<Pawn> machine) {
+        this.current = current;
+        this.human = human;
+        this.machine = machine;
+    }
+
+    /**
+     * Gets the player whose turn it is
+     *
+     * @return the player, NONE if no one can move
+     */
+    Player next() {
+        return current;
+    }
+
+    /**
+     * Decides which player's turn it is
+     *
+     * @return the next player if he can move
+     */
+    private Player checkNext() {
+        Player next = current.equals(Player.HUMAN) ? Player.MACHINE
+                : Player.HUMAN;
+
+        if (!canMove(next)) {
+            next = next.equals(Player.HUMAN) ? Player.MACHINE : Player.HUMAN;
+        }
+        if (!canMove(next)) {
+            next = Player.NONE;
+        }
+
+        return next;
+    }
+
+    /**
+     * Allows access to the List with the pawns, depending on the player
+     *
+     * @param player
+     *            Who posses the pawns
+     * @return machine pawns if player is the machine, humans pawns if the
+     *         player is human
+     */
+    List<Pawn> getPawns(Player player) {
+        if (player == Player.HUMAN) {
+            return human;
+        }
+        if (player == Player.MACHINE) {
+            return machine;
+        }
+        return new LinkedList<Pawn>();
+    }
+
+    /**
+     * Gets the pawns of a player as a mask
+     *
+     * @param player
+     *            HUMAN or MACHINE
+     * @return the mask of the pawns
+     */
+    long bits(Player player) {
+        long bits = 0;
+        for (Pawn p : getPawns(player)) {
+            bits |= 1L << Bits.square(p.getColumn(), p.getRow());
+        }
+        return bits;
+    }
+
+    /**
+     * Executes a move of the human player as {@link Board#move}
+     *
+     * @param colFrom
+     *            column of the pawn
+     * @param rowFrom
+     *            row of the pawn
+     * @param colTo
+     *            target column
+     * @param rowTo
+     *            target row
+     * @return true if the move was legal and executed
+     * @throws IllegalMoveException
+     *             if it is not the human's turn
+     * @throws IllegalArgumentException
+     *             if a coordinate is outside the board
+     */
+    boolean move(int colFrom, int rowFrom, int colTo, int rowTo) {
+
+        if (gameOver() || current != Player.HUMAN) {
+            throw new IllegalMoveException();
+        }
+
+        if (colFrom < 1 || colFrom > SIZE || rowFrom < 1 || rowFrom > SIZE
+            || colTo < 1 || colTo > SIZE || rowTo < 1 || rowTo > SIZE) {
+                throw new IllegalArgumentException();
+        }
+
+        Pawn target = new Pawn(colTo, rowTo);
+        Pawn source = new Pawn(colFrom, rowFrom);
+        boolean legalMove = false;
+
+        // There is no Pawn with the respective coordinates
+        if (!human.contains(source)) {
+            return legalMove;
+        }
+        // One Step forward
+        if (colFrom == colTo && rowFrom + 1 == rowTo && !human.contains(target)
+                && !machine.contains(target)) {
+            legalMove = true;
+        }
+        // Two Steps forward
+        if (colFrom == colTo && rowFrom + 2 == rowTo && rowFrom == 1
+                && !human.contains(target) && !machine.contains(target)) {
+            legalMove = true;
+        }
+        // Strike right | left
+        if ((colFrom + 1 == colTo || colFrom - 1 == colTo)
+                && rowFrom + 1 == rowTo && !human.contains(target)
+                && machine.contains(target)) {
+            machine.remove(target);
+            legalMove = true;
+        }
+        // if the move was okay, alter the coords of the Pawn in the list
+        if (legalMove) {
+            for (Pawn q : human) {
+                if (q.equals(source)) {
+                    q.setColumn(colTo);
+                    q.setRow(rowTo);
+                }
+            }
+
+            current = checkNext();
+        }
+
+        return legalMove;
+    }
+
+    /**
+     * Gets the possible moves of the player whose turn it is, in the order
+     * of the original game tree: for each pawn of the list strike left, one
+     * step forward, two steps forward and strike right
+     *
+     * @return the encoded moves, none if the game is over
+     */
+    List<Integer> legalMoves() {
+        List<Integer> moves = new LinkedList<Integer>();
+        if (gameOver() || current == Player.NONE) {
+            return moves;
+        }
+        Player other = current == Player.HUMAN ? Player.MACHINE : Player.HUMAN;
+        int step = current == Player.HUMAN ? 1 : -1;
+        int border = current == Player.HUMAN ? 1 : SIZE;
+        for (Pawn p : getPawns(current)) {
+            int x = p.getColumn();
+            int y = p.getRow();
+            // Strike Left
+            if (getSlot(x - step, y + step).equals(other)) {
+                moves.add(encode(x, y, x - step, y + step));
+            } // Step forward
+            if (y + step <= SIZE && y + step >= 1
+                    && getSlot(x, y + step).equals(Player.NONE)) {
+                moves.add(encode(x, y, x, y + step));
+            } // 2 Steps forward
+            if (y == border && getSlot(x, y + 2 * step).equals(Player.NONE)) {
+                moves.add(encode(x, y, x, y + 2 * step));
+            } // Strike right
+            if (getSlot(x + step, y + step).equals(other)) {
+                moves.add(encode(x, y, x + step, y + step));
+            }
+        }
+        return moves;
+    }
+
+    /**
+     * Encodes a move as {@link Move#encode(int, int)}
+     *
+     * @param colFrom
+     *            column of the pawn
+     * @param rowFrom
+     *            row of the pawn
+     * @param colTo
+     *            target column
+     * @param rowTo
+     *            target row
+     * @return the encoded move
+     */
+    private static int encode(int colFrom, int rowFrom, int colTo, int rowTo) {
+        return Move.encode(Bits.square(colFrom, rowFrom), Bits.square(colTo,
+                rowTo));
+    }
+
+    /**
+     * Executes a move of the player whose turn it is and passes the turn
+     *
+     * @param move
+     *            an encoded move of {@link #legalMoves()}
+     */
+    void play(int move) {
+        Move m = Move.decode(move);
+        Player other = current == Player.HUMAN ? Player.MACHINE : Player.HUMAN;
+        Pawn target = new Pawn(m.getColumnTo(), m.getRowTo());
+        getPawns(other).remove(target);
+        for (Pawn p : getPawns(current)) {
+            if (p.getColumn() == m.getColumnFrom()
+                    && p.getRow() == m.getRowFrom()) {
+                p.setColumn(m.getColumnTo());
+                p.setRow(m.getRowTo());
+            }
+        }
+        current = checkNext();
+    }
+
+    /**
+     * Gets the player of a slot
+     *
+     * @param col
+     *            the column
+     * @param row
+     *            the row
+     * @return the player whose pawn is on the slot or NONE
+     */
+    Player getSlot(int col, int row) {
+        Pawn p = new Pawn(col, row);
+        if (human.contains(p)) {
+            return Player.HUMAN;
+        }
+        if (machine.contains(p)) {
+            return Player.MACHINE;
+        }
+        return Player.NONE;
+    }
+
+    @Override
+    public ReferenceGame clone() {
+        List<Pawn> human2 = new LinkedList<Pawn>();
+        List<Pawn> machine2 = new LinkedList<Pawn>();
+        for (Pawn p : human) {
+
+            human2.add(p.clone());
+        }
+        for (Pawn p : machine) {
+
+            machine2.add(p.clone());
+        }
+        return new ReferenceGame(current, human2, machine2);
+    }
+
+    /**
+     * Is the game over?
+     *
+     * @return true if no one can move or a player has won
+     */
+    boolean gameOver() {
+        Player next = current.equals(Player.HUMAN) ? Player.MACHINE
+                : Player.HUMAN;
+        if (!canMove(current) && !canMove(next)) {
+            return true;
+        }
+        if (human.isEmpty() || machine.isEmpty()) {
+            return true;
+        }
+        for (Pawn p : human) {
+            if (p.getRow() == SIZE) {
+                return true;
+            }
+        }
+        for (Pawn p : machine) {
+            if (p.getRow() == 1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the winner
+     *
+     * @return the winner, NONE if there is none (yet)
+     */
+    Player getWinner() {
+        if (human.isEmpty()) {
+            return Player.MACHINE;
+        }
+        if (machine.isEmpty()) {
+            return Player.HUMAN;
+        }
+        for (Pawn h : human) {
+            if (h.getRow() == SIZE) {
+                return Player.HUMAN;
+            }
+        }
+        for (Pawn m : machine) {
+            if (m.getRow() == 1) {
+                return Player.MACHINE;
+            }
+        }
+        return Player.NONE;
+
+    }
+
+    /**
+     * Gets the score of a node of a full game tree: its own score and the
+     * best score of its children for the player whose turn it is
+     *
+     * @param level
+     *            the level of the node, at least 1
+     * @param max
+     *            the depth of the tree
+     * @return the score
+     */
+    double treeScore(int level, int max) {
+        double own = getScore(level);
+        if (level >= max || gameOver()) {
+            return own;
+        }
+        boolean maximize = current == Player.MACHINE;
+        double x = maximize ? Double.NEGATIVE_INFINITY
+                : Double.POSITIVE_INFINITY;
+        for (int move : legalMoves()) {
+            ReferenceGame child = clone();
+            child.play(move);
+            double s = child.treeScore(level + 1, max);
+            x = maximize ? Math.max(x, s) : Math.min(x, s);
+        }
+        return own + x;
+    }
+
+    /**
+     * @param i
+     *            depth in the gametree
+     *
+     * @return score of this game
+     */
+    double getScore(int i) {
+        return scoreN() + scoreD() + scoreC() + scoreI() + scoreV(i);
+    }
+
+    /**
+     * Computes the number score: A high number of living machine pawns is good,
+     * whereas a high number of living human pawns is bad.
+     *
+     * @return number score
+     */
+    private double scoreN() {
+        return machine.size() - (double) human.size() * 1.5;
+    }
+
+    /**
+     * Computes the distance score: A high Distance to the start line is
+     * considered good.
+     *
+     * @return distance score
+     */
+    private double scoreD() {
+        double scoreDH = 0;
+        double scoreDM = 0;
+        for (Pawn h : human) {
+            scoreDH = scoreDH + h.getRow() - 1;
+        }
+        for (Pawn m : machine) {
+            scoreDM = scoreDM + SIZE - m.getRow();
+        }
+        return scoreDM - scoreDH * 1.5;
+    }
+
+    /**
+     * Computes the scoreC: pawns that are threatened by the opponent and are
+     * not protected are considered bad.
+     *
+     * @return score of threatened pawns
+     */
+    private double scoreC() {
+        double scoreCH = 0;
+        double scoreCM = 0;
+        for (Pawn h : human) {
+            boolean inDanger = false;
+            for (Pawn m : machine) {
+                if (canBeat(m, h)) {
+                    inDanger = true;
+                }
+            }
+            for (Pawn p : human) {
+                if (canBeat(p, h)) {
+                    inDanger = false;
+                }
+            }
+            if (inDanger) {
+                scoreCH++;
+            }
+        }
+        for (Pawn m : machine) {
+            boolean inDanger = false;
+            for (Pawn h : human) {
+                if (canBeat(h, m)) {
+                    inDanger = true;
+                }
+            }
+            for (Pawn p : machine) {
+                if (canBeat(p, m)) {
+                    inDanger = false;
+                }
+            }
+            if (inDanger) {
+                scoreCM++;
+            }
+        }
+        return scoreCH - 3 * scoreCM / 2;
+    }
+
+    /**
+     * Computes the isolation score: isolated pawns are considered bad
+     *
+     * @return isolation score
+     */
+    private double scoreI() {
+        double scoreIH = 0;
+        double scoreIM = 0;
+
+        for (Pawn h : human) {
+            boolean isIsolated = true;
+            for (Pawn p : human) {
+                if (h.isNextTo(p)) {
+                    isIsolated = false;
+                }
+            }
+            if (isIsolated) {
+                scoreIH++;
+            }
+        }
+
+        for (Pawn m : machine) {
+            boolean isIsolated = true;
+            for (Pawn p : machine) {
+                if (m.isNextTo(p)) {
+                    isIsolated = false;
+                }
+            }
+            if (isIsolated) {
+                scoreIM++;
+            }
+        }
+        return scoreIH - 3 * scoreIM / 2;
+    }
+
+    /**
+     * Computes the victory score: if a move leads to victoy it is a very good
+     * move
+     *
+     * @param i
+     *            depth in the gametree
+     * @return victory score
+     */
+    private double scoreV(int i) {
+        double scoreVH = 0;
+        double scoreVM = 0;
+
+        if (getWinner() == Player.HUMAN) {
+            scoreVH = 5000 / i;
+        }
+        if (getWinner() == Player.MACHINE) {
+            scoreVM = 5000 / i;
+        }
+        return scoreVM - 3 * scoreVH / 2;
+
+    }
+
+    /**
+     * Returns if Pawn p can beat Pawn q or Not. Or: if Pawn q is protected by
+     * Pawn p
+     *
+     * @param p the pawn which beats or protects
+     * @param q the pawn which is beaten or protected
+     * @return true if p is diagonally behind q from the view of p's player
+     */
+    private boolean canBeat(Pawn p, Pawn q) {
+
+        int one = human.contains(p) ? 1 : -1;
+        return (p.getRow() + one == q.getRow()
+                && (p.getColumn() + 1 == q.getColumn() || p.getColumn() - 1 == q
+                        .getColumn()));
+    }
+
+    /**
+     * Can a certain player make a move?
+     * @param player the specific player
+     * @return true if player can move
+     */
+    boolean canMove(Player player) {
+        boolean res = false;
+        if (player.equals(Player.MACHINE)) {
+            for (Pawn p : machine) {
+                if (canMove(p, player)) {
+                    res = true;
+                }
+            }
+        }
+        if (player.equals(Player.HUMAN)) {
+            for (Pawn p : human) {
+                if (canMove(p, player)) {
+                    res = true;
+                }
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Can a certain player make a move with a specific pawn?
+     * @param source the specific pawn
+     * @param player the specific player
+     * @return true if the player can move the pawn
+     */
+    private boolean canMove(Pawn source, Player player) {
+        boolean legalMove = false;
+        int step = human.contains(source) ? 1 : -1;
+        int border = human.contains(source) ? 1 : Board.SIZE;
+        Player other = player == Player.HUMAN ? Player.MACHINE : Player.HUMAN;
+
+        Pawn target1 = new Pawn(source.getColumn(), source.getRow() + step);
+        Pawn target2 = new Pawn(source.getColumn(), source.getRow() + 2 * step);
+        Pawn target3 = new Pawn(source.getColumn() - step, source.getRow()
+                + step);
+        Pawn target4 = new Pawn(source.getColumn() + step, source.getRow()
+                + step);
+
+        // There is no Pawn with the respective coordinates
+        if (!getPawns(getSlot(source.getColumn(), source.getRow())).contains(
+                source)) {
+            return legalMove;
+        }
+        // One Step forward
+        if (source.getRow() + step <= SIZE && source.getRow() + step >= 1
+                && !machine.contains(target1) && !human.contains(target1)) {
+            legalMove = true;
+        }
+        // Two Steps forward
+        if (source.getRow() == border && !machine.contains(target2)
+                && !human.contains(target2)) {
+            legalMove = true;
+        }
+        // Strike right
+        if (!getPawns(player).contains(target3)
+                && getPawns(other).contains(target3)) {
+            legalMove = true;
+        }
+        // Strike left
+        if (!getPawns(player).contains(target4)
+                && getPawns(other).contains(target4)) {
+            legalMove = true;
+        }
+        return legalMove;
+    }
+
+    @Override
+    public String toString() {
+        String res = "";
+        for (int y = SIZE; y >= 1; y--) {
+            for (int x = 1; x <= SIZE; x++) {
+                Player p = getSlot(x, y);
+                res += p == Player.HUMAN ? 'W' : p == Player.MACHINE ? 'B'
+                        : ' ';
+                if (x < SIZE) {
+                    res += " ";
+                }
+            }
+            if (y > 1) {
+                res += "\n";
+            }
+        }
+        return res;
+    }
+}
@@ -0,0 +1,555 @@
+package pawns_chess.model;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The class ResultCache remembers the results of machine moves across games:
+ * for a position, a level and an evaluator it keeps the candidates the
+ * machine chose from (see {@link Search#getCandidates()}) with their scores.
+ * The scores are exact, but which moves a search with a node limit finds
+ * also depends on what the transposition table holds from earlier searches,
+ * so a cached result is what some search found for the position. Seeded
+ * games therefore do not use the cache, see {@link AlphaBetaEngine}. A
+ * position and its mirror image at the middle column share a result, whose
+ * moves are those of the one with the smaller hash.
+ *
+ * <p>
+ * The cache holds a bounded number of results and evicts the least recently
+ * used one. It is split into segments with a lock each, so concurrent games
+ * rarely wait for each other. Optionally every result is also written to a
+ * memory mapped file of fixed size, where each key has one slot. A result
+ * not in memory is looked up there, so the file keeps results across
+ * restarts. The file keeps at most {@value #SPILL_CANDIDATES} candidates and
+ * {@value #SPILL_PV} moves of the principal variation of the best candidate,
+ * the principal variations of the other candidates are cut to their first
+ * move.
+ *
+ * <p>
+ * The process wide cache holds the number of results given by the system
+ * property {@code pawns_chess.cache} (default 65536, 0 switches the cache
+ * off) and uses the file given by {@code pawns_chess.cache.file}, if any.
+ */
+final class ResultCache {
+
+    /**
+     * A cached result
+     */
+    static final class Result {
+        private final long key;
+        private final int check;
+        private final int[][] candidates;
+        private final double[] scores;
+
+        /**
+         * Creates a result
+         *
+         * @param candidates
+         *            the encoded principal variations of the candidates, the
+         *            best first
+         * @param scores
+         *            the scores of the candidates
+         */
+        Result(int[][] candidates, double[] scores) {
+            this(0, 0, candidates, scores);
+        }
+
+        /**
+         * Creates a result with its key
+         *
+         * @param key
+         *            the key of position, level and evaluator
+         * @param check
+         *            the check of level and evaluator
+         * @param candidates
+         *            the encoded principal variations of the candidates
+         * @param scores
+         *            the scores of the candidates
+         */
+        private Result(long key, int check, int[][] candidates,
+                double[] scores) {
+            this.key = key;
+            this.check = check;
+            this.candidates = candidates;
+            this.scores = scores;
+        }
+
+        /**
+         * Gets the principal variations of the candidates
+         *
+         * @return the encoded moves, the best candidate first
+         */
+        int[][] getCandidates() {
+            return candidates;
+        }
+
+        /**
+         * Gets the scores of the candidates
+         *
+         * @return the scores in the order of the candidates
+         */
+        double[] getScores() {
+            return scores;
+        }
+
+        /**
+         * Estimates the heap used by this result
+         *
+         * @return size in bytes
+         */
+        private long bytes() {
+            long bytes = 48 + 16 + 8L * scores.length + 16 + 4L
+                    * candidates.length;
+            for (int[] pv : candidates) {
+                bytes += 16 + 4L * pv.length;
+            }
+            return bytes;
+        }
+    }
+
+    private static final int SEGMENTS = 16;
+
+    /**
+     * Limits of a slot of the spill file
+     */
+    static final int SPILL_CANDIDATES = 8;
+    static final int SPILL_PV = 16;
+
+    /**
+     * Layout of a slot: key, check, number of candidates, length of the
+     * principal variation, scores, first moves of the candidates, principal
+     * variation of the best candidate
+     */
+    private static final int SLOT = 128;
+    private static final int SLOT_SCORES = 16;
+    private static final int SLOT_MOVES = SLOT_SCORES + 8 * SPILL_CANDIDATES;
+    private static final int SLOT_PV = SLOT_MOVES + 2 * SPILL_CANDIDATES;
+
+    /**
+     * Header of the spill file: magic number and number of slots
+     */
+    private static final int HEADER = 16;
+    private static final int MAGIC = 0x50435243;
+
+    /**
+     * Most slots of the spill file: a mapped buffer and the slot offsets are
+     * int indexed, so the file must stay below 2 GB
+     */
+    private static final int MAX_SPILL_SLOTS = 1 << 23;
+
+    private static final Object[] SPILL_LOCKS = new Object[64];
+
+    static {
+        for (int i = 0; i < SPILL_LOCKS.length; i++) {
+            SPILL_LOCKS[i] = new Object();
+        }
+    }
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final MappedByteBuffer spill;
+    private final int spillSlots;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong spillHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * A least recently used map with its own lock
+     */
+    private static final class Segment extends LinkedHashMap<Long, Result> {
+        private static final long serialVersionUID = 1L;
+        private final int capacity;
+        private long bytes;
+
+        /**
+         * Creates a segment
+         *
+         * @param capacity
+         *            the largest number of results
+         */
+        private Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Result> eldest) {
+            if (size() > capacity) {
+                bytes -= eldest.getValue().bytes();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Holds the process wide cache, created on first use
+     */
+    private static final class Shared {
+        private static final ResultCache INSTANCE = create();
+
+        /**
+         * Creates the cache configured by the system properties
+         *
+         * @return the cache or null if it is switched off
+         */
+        private static ResultCache create() {
+            int capacity = Integer.getInteger("pawns_chess.cache", 65536);
+            String file = System.getProperty("pawns_chess.cache.file");
+            if (capacity <= 0) {
+                return null;
+            }
+            try {
+                return new ResultCache(capacity, file == null ? null : Paths
+                        .get(file));
+            } catch (IOException | RuntimeException e) {
+                // without the file the cache still works in memory
+                System.err.println("Cannot open the result cache file "
+                        + file + ": " + e.getMessage());
+                return new ResultCache(capacity);
+            }
+        }
+    }
+
+    /**
+     * Creates a cache held in memory only
+     *
+     * @param capacity
+     *            the largest number of results
+     */
+    ResultCache(int capacity) {
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(Math.max(1, capacity / SEGMENTS));
+        }
+        spill = null;
+        spillSlots = 0;
+    }
+
+    /**
+     * Creates a cache with a spill file. The file has two slots per result
+     * kept in memory, at most 2^23 slots (1 GB). An existing file of another
+     * size is started anew.
+     *
+     * @param capacity
+     *            the largest number of results held in memory
+     * @param file
+     *            the spill file, null for none
+     * @throws IOException
+     *             if the file cannot be mapped
+     */
+    ResultCache(int capacity, Path file) throws IOException {
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(Math.max(1, capacity / SEGMENTS));
+        }
+        if (file == null) {
+            spill = null;
+            spillSlots = 0;
+            return;
+        }
+        spillSlots = Math.min(MAX_SPILL_SLOTS, Integer.highestOneBit(Math
+                .max(1, capacity)) * 2);
+        long size = HEADER + (long) SLOT * spillSlots;
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            boolean fresh = channel.size() != size;
+            if (fresh) {
+                channel.truncate(0);
+            }
+            spill = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (fresh || spill.getInt(0) != MAGIC
+                    || spill.getInt(4) != spillSlots) {
+                for (long i = 0; i < size; i += 8) {
+                    spill.putLong((int) i, 0);
+                }
+                spill.putInt(0, MAGIC);
+                spill.putInt(4, spillSlots);
+            }
+        }
+    }
+
+    /**
+     * Gets the process wide cache
+     *
+     * @return the cache or null if it is switched off
+     */
+    static ResultCache shared() {
+        return Shared.INSTANCE;
+    }
+
+    /**
+     * Looks a result up
+     *
+     * @param hash
+     *            mirror-canonical hash of the position, see
+     *            {@link Game#getCanonicalHash()}
+     * @param level
+     *            level of the machine
+     * @param evaluator
+     *            evaluator of the machine
+     * @return the result or null if it is not cached
+     */
+    Result get(long hash, int level, Evaluator evaluator) {
+        long key = key(hash, level, evaluator);
+        int check = check(level, evaluator);
+        Segment segment = segment(key);
+        synchronized (segment) {
+            Result r = segment.get(key);
+            if (r != null && r.check == check) {
+                hits.incrementAndGet();
+                return r;
+            }
+        }
+        Result r = spill != null ? readSpill(key, check) : null;
+        if (r == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        spillHits.incrementAndGet();
+        insert(segment, r);
+        return r;
+    }
+
+    /**
+     * Caches a result
+     *
+     * @param hash
+     *            mirror-canonical hash of the position, see
+     *            {@link Game#getCanonicalHash()}
+     * @param level
+     *            level of the machine
+     * @param evaluator
+     *            evaluator of the machine
+     * @param result
+     *            the result
+     */
+    void put(long hash, int level, Evaluator evaluator, Result result) {
+        long key = key(hash, level, evaluator);
+        Result r = new Result(key, check(level, evaluator),
+                result.candidates, result.scores);
+        insert(segment(key), r);
+        if (spill != null) {
+            writeSpill(r);
+        }
+    }
+
+    /**
+     * Inserts a result into a segment
+     *
+     * @param segment
+     *            the segment of the key
+     * @param r
+     *            the result
+     */
+    private static void insert(Segment segment, Result r) {
+        synchronized (segment) {
+            Result old = segment.put(r.key, r);
+            if (old != null) {
+                segment.bytes -= old.bytes();
+            }
+            segment.bytes += r.bytes();
+        }
+    }
+
+    /**
+     * Removes all results from memory, the spill file keeps them
+     */
+    void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+                segment.bytes = 0;
+            }
+        }
+    }
+
+    /**
+     * Gets the number of results held in memory
+     *
+     * @return number of results
+     */
+    long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Estimates the heap used by the results, the spill file excluded
+     *
+     * @return size in bytes
+     */
+    long bytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                bytes += segment.bytes;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Gets the fraction of lookups which found a result in memory or in the
+     * spill file
+     *
+     * @return the hit ratio between 0 and 1
+     */
+    double hitRatio() {
+        long found = hits.get() + spillHits.get();
+        long total = found + misses.get();
+        return total == 0 ? 0 : (double) found / total;
+    }
+
+    /**
+     * Gets the number of lookups which found a result in the spill file
+     *
+     * @return number of hits
+     */
+    long spillHits() {
+        return spillHits.get();
+    }
+
+    /**
+     * Combines the hash with the level and the evaluator
+     *
+     * @param hash
+     *            hash of the position
+     * @param level
+     *            level of the machine
+     * @param evaluator
+     *            evaluator of the machine
+     * @return the key
+     */
+    private static long key(long hash, int level, Evaluator evaluator) {
+        return hash ^ (level * 0x9E3779B97F4A7C15L)
+                ^ ((long) evaluator.getName().hashCode() << 32);
+    }
+
+    /**
+     * Computes a second check of the level and the evaluator against
+     * collisions of the keys
+     *
+     * @param level
+     *            level of the machine
+     * @param evaluator
+     *            evaluator of the machine
+     * @return the check
+     */
+    private static int check(int level, Evaluator evaluator) {
+        return level | evaluator.getName().hashCode() << 8;
+    }
+
+    /**
+     * Gets the segment of a key
+     *
+     * @param key
+     *            the key
+     * @return the segment
+     */
+    private Segment segment(long key) {
+        return segments[(int) (key >>> 60)];
+    }
+
+    /**
+     * Gets the offset of the slot of a key in the spill file
+     *
+     * @param key
+     *            the key
+     * @return the offset
+     */
+    private int slot(long key) {
+        return HEADER + SLOT * (int) (key & (spillSlots - 1));
+    }
+
+    /**
+     * Reads a result from the spill file
+     *
+     * @param key
+     *            the key
+     * @param check
+     *            the check of the level and the evaluator
+     * @return the result or null if the slot holds another key
+     */
+    private Result readSpill(long key, int check) {
+        int at = slot(key);
+        synchronized (SPILL_LOCKS[(at / SLOT) & (SPILL_LOCKS.length - 1)]) {
+            if (spill.getLong(at) != key || spill.getInt(at + 8) != check) {
+                return null;
+            }
+            int count = spill.get(at + 12);
+            int pvLength = spill.get(at + 13);
+            if (count <= 0 || count > SPILL_CANDIDATES || pvLength <= 0
+                    || pvLength > SPILL_PV) {
+                return null;
+            }
+            int[][] candidates = new int[count][];
+            double[] scores = new double[count];
+            for (int i = 0; i < count; i++) {
+                scores[i] = spill.getDouble(at + SLOT_SCORES + 8 * i);
+                candidates[i] = new int[] {spill.getShort(at + SLOT_MOVES + 2
+                        * i) };
+            }
+            candidates[0] = new int[pvLength];
+            for (int i = 0; i < pvLength; i++) {
+                candidates[0][i] = spill.getShort(at + SLOT_PV + 2 * i);
+            }
+            return new Result(key, check, candidates, scores);
+        }
+    }
+
+    /**
+     * Writes a result to its slot of the spill file
+     *
+     * @param r
+     *            the result
+     */
+    private void writeSpill(Result r) {
+        int count = r.candidates.length;
+        if (count > SPILL_CANDIDATES || r.candidates[0].length == 0) {
+            // too many to keep the choice equal after a restart
+            return;
+        }
+        int pvLength = Math.min(SPILL_PV, r.candidates[0].length);
+        int at = slot(r.key);
+        synchronized (SPILL_LOCKS[(at / SLOT) & (SPILL_LOCKS.length - 1)]) {
+            // the key last, so that a torn slot is never found
+            spill.putLong(at, 0);
+            spill.putInt(at + 8, r.check);
+            spill.put(at + 12, (byte) count);
+            spill.put(at + 13, (byte) pvLength);
+            for (int i = 0; i < count; i++) {
+                spill.putDouble(at + SLOT_SCORES + 8 * i, r.scores[i]);
+                spill.putShort(at + SLOT_MOVES + 2 * i,
+                        (short) r.candidates[i][0]);
+            }
+            for (int i = 0; i < pvLength; i++) {
+                spill.putShort(at + SLOT_PV + 2 * i,
+                        (short) r.candidates[0][i]);
+            }
+            spill.putLong(at, r.key);
+        }
+    }
+
+    /**
+     * The cache statistics as printed by the STATS command
+     */
+    @Override
+    public String toString() {
+        return String.format("cache results %d bytes %d hit ratio %.1f%%"
+                + " (file %d)", size(), bytes(), 100 * hitRatio(),
+                spillHits());
+    }
+
+}
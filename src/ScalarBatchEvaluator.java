@@ -0,0 +1,51 @@
+package pawns_chess.model;
+
+/**
+ * The batch evaluator which scores one game state after another, see
+ * {@link BatchEvaluator}.
+ */
+final class ScalarBatchEvaluator implements BatchEvaluator {
+
+    static final ScalarBatchEvaluator INSTANCE = new ScalarBatchEvaluator();
+
+    /**
+     * not used
+     */
+    private ScalarBatchEvaluator() {
+    }
+
+    @Override
+    public void evaluate(long[] human, long[] machine, Player[] winner,
+            int[] depth, int n, double[] scores) {
+        for (int i = 0; i < n; i++) {
+            scores[i] = score(human[i], machine[i], winner[i], depth[i]);
+        }
+    }
+
+    /**
+     * Scores a game state like the classic evaluator
+     *
+     * @param human
+     *            mask of the human pawns
+     * @param machine
+     *            mask of the machine pawns
+     * @param winner
+     *            the winner of the game state
+     * @param depth
+     *            depth of the game state in the gametree
+     * @return the score
+     */
+    static double score(long human, long machine, Player winner, int depth) {
+        return ClassicEvaluator.scoreN(human, machine)
+                + ClassicEvaluator.scoreD(human, machine)
+                + ClassicEvaluator.scoreC(human, machine)
+                + ClassicEvaluator.scoreI(human, machine)
+                + ClassicEvaluator.scoreV(winner, depth);
+    }
+
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+
+}
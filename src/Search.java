@@ -0,0 +1,1238 @@
+package pawns_chess.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import jdk.jfr.FlightRecorder;
+
+/**
+ * The class Search selects the best move of the machine with an iterative
+ * deepening alpha-beta search. It computes the same score as a full
+ * {@link GameTree} of the same depth: the score of a game state is its own
+ * score plus the best score of its children, the machine maximizes and the
+ * human minimizes. Only if selective pruning is enabled (see
+ * {@link #setPruning(boolean)}), which the machine player does, the scores
+ * are estimates.
+ *
+ * <p>
+ * Only the first move of a node is searched with the full window. All other
+ * moves are searched with a null window and only searched again if they turn
+ * out to be better (principal variation search). From depth 2 on the root is
+ * searched with an aspiration window around the score of the previous
+ * iteration. A Search is not thread safe, but can be reused for several
+ * searches.
+ *
+ * <p>
+ * The scores and best moves of the nodes are kept in the
+ * {@link TranspositionTable} shared by all searches. A stored score only cuts
+ * the search off in null window searches and if it was found with the same
+ * remaining depth, so the scores equal those of the GameTree and the
+ * principal variation stays complete. The stored best move is searched first.
+ *
+ * <p>
+ * With several lines (see {@link #setLines(int)}) one search ranks the best
+ * moves of the root with their exact scores and principal variations. The
+ * root keeps the best lines found so far and searches each further move with
+ * a null window at the score of the last of them, so a move is only searched
+ * fully if it enters the ranking. All lines share the iterations, the move
+ * ordering and the transposition table.
+ */
+public class Search {
+
+    /**
+     * Width of the null window. All scores of {@link Game#getScore(int)} are
+     * multiples of this value.
+     */
+    public static final double NULL_WINDOW = 0.5;
+
+    /**
+     * Initial half width of the aspiration window
+     */
+    public static final double ASPIRATION_WINDOW = 16;
+
+    /**
+     * The deepest search possible
+     */
+    public static final int MAX_DEPTH = 64;
+
+    private static final double INF = Double.POSITIVE_INFINITY;
+
+    /**
+     * Null move pruning: the plies the answers to a pass are searched less
+     * deep, the least remaining depth and the least pawns of the player to
+     * move. With fewer pawns zugzwang is too likely.
+     */
+    static final int NULL_MOVE_REDUCTION = 2;
+    static final int NULL_MOVE_DEPTH = 3;
+    static final int NULL_MOVE_PAWNS = 4;
+
+    /**
+     * Late move reductions: the least remaining depth and the number of
+     * moves searched fully before quiet moves are reduced by a ply
+     */
+    static final int LMR_DEPTH = 3;
+    static final int LMR_MOVES = 3;
+
+    /**
+     * Futility margins by remaining depth: the largest change of the score
+     * by quiet moves, measured on random games (99.9 percent of the quiet
+     * moves change the score by less)
+     */
+    static final double[] FUTILITY_MARGIN = {0, 7, 10};
+
+    /**
+     * search all but the first move with a null window?
+     */
+    private final boolean pvs;
+
+    /**
+     * search the root with an aspiration window?
+     */
+    private final boolean aspiration;
+
+    /**
+     * nodes visited in total and in each iteration
+     */
+    private long nodes;
+    private long[] iterationNodes = new long[MAX_DEPTH + 1];
+    private int completedDepth;
+
+    /**
+     * did the iteration stop at its depth somewhere?
+     */
+    private boolean depthReached;
+    private int aspirationResearches;
+
+    /**
+     * triangular table of the principal variation of each ply
+     */
+    private final int[][] pv = new int[MAX_DEPTH + 1][MAX_DEPTH + 1];
+    private final int[] pvLength = new int[MAX_DEPTH + 1];
+
+    /**
+     * the encoded moves of each ply
+     */
+    private final int[][] moves = new int[MAX_DEPTH + 1][Game.MAX_MOVES];
+
+    /**
+     * principal variation of the previous iteration, searched first
+     */
+    private int[] previousPv = new int[0];
+    private boolean followPv;
+
+    private double score;
+
+    /**
+     * cut the search off at decided pawn races?
+     */
+    private boolean raceResolution = true;
+
+    /**
+     * prune selectively, try null moves? The plies of the null moves and the
+     * verification searches of the current line as bit masks.
+     */
+    private boolean pruning;
+    private boolean nullMove;
+    private long passed;
+    private long verifying;
+
+    /**
+     * use the transposition table? The table of the running search, null
+     * for none, the table set for this search, null for the shared one, and
+     * the salt of the node keys.
+     */
+    private boolean hashing = true;
+    private TranspositionTable table;
+    private TranspositionTable fixedTable;
+    private long salt;
+    private long tableProbes;
+    private long tableHits;
+
+    /**
+     * time limit in milliseconds, 0 for none, and the resulting deadline
+     */
+    private long timeLimit;
+    private long deadline;
+
+    /**
+     * node limit of each search, 0 for none, and the node count at which the
+     * running search stops
+     */
+    private long nodeLimit;
+    private long nodeBudget;
+
+    /**
+     * Selection among the near-best moves at the root: the random source, or
+     * null to play the first best move, the largest score loss of a
+     * candidate and the softmax temperature
+     */
+    private SplittableRandom random;
+    private double margin;
+    private double temperature;
+
+    /**
+     * The candidates of the last search: their principal variations and
+     * their scores, the best move first
+     */
+    private int[][] candidates = new int[0][];
+    private double[] candidateScores = new double[0];
+    private int candidateCount;
+
+    /**
+     * Multi-PV: the number of lines to rank, the lines of the running
+     * iteration with their scores, the best first, and the lines of the last
+     * complete iteration
+     */
+    private int lines = 1;
+    private int[][] lineVariations = new int[1][];
+    private double[] lineScores = new double[1];
+    private int lineCount;
+    private int[][] rankedLines = new int[0][];
+    private double[] rankedScores = new double[0];
+
+    /**
+     * Thrown to unwind the search when the time is up
+     */
+    private static final class Aborted extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private Aborted() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final Aborted ABORTED = new Aborted();
+
+    /**
+     * Creates a principal variation search with aspiration windows
+     */
+    public Search() {
+        this(true, true);
+    }
+
+    /**
+     * Creates a search
+     *
+     * @param pvs
+     *            search all but the first move with a null window
+     * @param aspiration
+     *            search the root with aspiration windows
+     */
+    public Search(boolean pvs, boolean aspiration) {
+        this.pvs = pvs;
+        this.aspiration = aspiration;
+    }
+
+    /**
+     * Searches the best move of the machine.
+     *
+     * @param game
+     *            the game state, it must be the machine's turn. The moves of
+     *            the search are executed and taken back on it.
+     * @param depth
+     *            the search depth, at least 1
+     * @return the best move or null if the machine cannot move
+     */
+    public Move search(Game game, int depth) {
+        if (game.next() != Player.MACHINE) {
+            throw new IllegalMoveException("It is not the machine's turn");
+        }
+        depth = Math.max(1, Math.min(depth, MAX_DEPTH));
+        nodes = 0;
+        completedDepth = 0;
+        aspirationResearches = 0;
+        iterationNodes = new long[MAX_DEPTH + 1];
+        previousPv = new int[0];
+        score = 0;
+        long start = System.nanoTime();
+        deadline = timeLimit > 0 ? start + timeLimit * 1000000L : 0;
+        nodeBudget = nodeLimit > 0 ? nodeLimit : Long.MAX_VALUE;
+        table = !hashing ? null : fixedTable != null ? fixedTable
+                : TranspositionTable.shared();
+        salt = Zobrist.salt(game.getEvaluator().getName(), raceResolution,
+                pruning, nullMove);
+        passed = 0;
+        verifying = 0;
+        tableProbes = 0;
+        tableHits = 0;
+        lineVariations = new int[lines][];
+        lineScores = new double[lines];
+
+        int n = game.legalMoves(moves[0]);
+        if (n == 0) {
+            return null;
+        }
+        SearchEvent event = null;
+        if (FlightRecorder.isInitialized()) {
+            event = new SearchEvent();
+            event.begin();
+        }
+        boolean aborted = false;
+        int historySize = game.getHistorySize();
+        try {
+            iterate(game, n, depth);
+        } catch (Aborted e) {
+            // the time or the nodes are up, keep the last iteration
+            aborted = true;
+            unwind(game, historySize);
+        }
+        candidates = new int[n][];
+        candidateScores = new double[n];
+        candidates[0] = previousPv;
+        candidateScores[0] = score;
+        candidateCount = 1;
+        if (lines > 1) {
+            // the ranked lines replace the choice among near-best moves
+            candidates = rankedLines;
+            candidateScores = rankedScores;
+            candidateCount = rankedLines.length;
+        } else if (random != null) {
+            try {
+                // the selection may use the node limit once more
+                nodeBudget = nodeLimit > 0 ? nodes + nodeLimit
+                        : Long.MAX_VALUE;
+                select(game, n, completedDepth);
+            } catch (Aborted e) {
+                // choose among the candidates found so far
+                aborted = true;
+                unwind(game, historySize);
+            }
+            sortCandidates(game.isMirrored());
+            int choice = choose(random, candidateScores, candidateCount,
+                    temperature);
+            previousPv = candidates[choice];
+            score = candidateScores[choice];
+        }
+        record(game, event, aborted, System.nanoTime() - start);
+        return Move.decode(previousPv[0]);
+    }
+
+    /**
+     * Takes back the moves of an aborted search
+     *
+     * @param game
+     *            the game state
+     * @param historySize
+     *            length of the history at the root
+     */
+    private static void unwind(Game game, int historySize) {
+        while (game.getHistorySize() > historySize) {
+            game.undoMove();
+        }
+    }
+
+    /**
+     * Records a finished search in the metrics and the flight recorder
+     *
+     * @param game
+     *            the game state at the root
+     * @param event
+     *            the event started with the search, null if the Flight
+     *            Recorder does not run
+     * @param aborted
+     *            true if the time or node limit stopped the search
+     * @param time
+     *            duration of the search in nanoseconds
+     */
+    private void record(Game game, SearchEvent event, boolean aborted,
+            long time) {
+        EngineMetrics metrics = EngineMetrics.get();
+        if (metrics.isEnabled()) {
+            metrics.searchCompleted(nodes, time);
+            metrics.tableProbed(tableProbes, tableHits);
+        }
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.depth = completedDepth;
+            event.nodes = nodes;
+            event.hash = game.getHash();
+            event.score = score;
+            event.evaluator = game.getEvaluator().getName();
+            event.aborted = aborted;
+            event.hashHits = tableProbes == 0 ? 0 : (double) tableHits
+                    / tableProbes;
+            event.commit();
+        }
+    }
+
+    /**
+     * Searches the root with increasing depth
+     *
+     * @param game
+     *            the game state at the root
+     * @param n
+     *            number of legal moves of the machine in the move list of ply
+     *            0
+     * @param depth
+     *            the maximal depth
+     */
+    private void iterate(Game game, int n, int depth) {
+        for (int d = 1; d <= depth; d++) {
+            long before = nodes;
+            double alpha = -INF;
+            double beta = INF;
+            double delta = ASPIRATION_WINDOW;
+            if (aspiration && d > 1 && lines == 1) {
+                alpha = score - delta;
+                beta = score + delta;
+            }
+            double value;
+            depthReached = false;
+            while (true) {
+                value = searchRoot(game, n, d, alpha, beta);
+                if (value <= alpha) {
+                    delta *= 4;
+                    alpha = delta > 4096 ? -INF : value - delta;
+                } else if (value >= beta) {
+                    delta *= 4;
+                    beta = delta > 4096 ? INF : value + delta;
+                } else {
+                    break;
+                }
+                aspirationResearches++;
+            }
+            score = value;
+            previousPv = new int[pvLength[0]];
+            System.arraycopy(pv[0], 0, previousPv, 0, pvLength[0]);
+            if (lines > 1) {
+                rankedLines = Arrays.copyOf(lineVariations, lineCount);
+                rankedScores = Arrays.copyOf(lineScores, lineCount);
+            }
+            iterationNodes[d] = nodes - before;
+            completedDepth = d;
+            if (!depthReached) {
+                // the whole tree was searched, deeper iterations are equal
+                break;
+            }
+        }
+    }
+
+    /**
+     * Collects the candidates to play: the moves whose score is at most
+     * margin below the best score. Each of them is searched again with a
+     * window which yields its exact score. Without a temperature the
+     * candidates with the best score are equally likely, otherwise the
+     * probability of a candidate is proportional to exp((score - best score)
+     * / temperature).
+     *
+     * @param game
+     *            the game state at the root
+     * @param n
+     *            number of legal moves of the machine in the move list of ply
+     *            0
+     * @param depth
+     *            depth of the last complete iteration
+     */
+    private void select(Game game, int n, int depth) {
+        double alpha = score - margin - NULL_WINDOW;
+        double beta = score + NULL_WINDOW;
+        followPv = false;
+        for (int i = 0; i < n; i++) {
+            int m = moves[0][i];
+            if (m == previousPv[0]) {
+                continue;
+            }
+            game.makeMove(m);
+            double v = alphaBeta(game, 1, depth, alpha, beta);
+            game.undoMove();
+            if (v > alpha) {
+                // inside the window, so v is the exact score
+                updatePv(0, m);
+                candidates[candidateCount] = Arrays.copyOf(pv[0],
+                        pvLength[0]);
+                candidateScores[candidateCount++] = v;
+            }
+        }
+    }
+
+    /**
+     * Puts the candidates into a canonical order: the best score first and
+     * equal scores by the encoding of their first move in the orientation of
+     * the smaller hash. A game state and its mirror image share their cached
+     * candidates (see {@link ResultCache}), so the same random number must
+     * choose the same candidate in both.
+     *
+     * @param mirrored
+     *            true if the root is the mirror image of the game state with
+     *            the smaller hash, see {@link Game#isMirrored()}
+     */
+    private void sortCandidates(boolean mirrored) {
+        for (int i = 1; i < candidateCount; i++) {
+            int[] line = candidates[i];
+            double v = candidateScores[i];
+            int m = mirrored ? Move.flipColumns(line[0]) : line[0];
+            int j = i;
+            while (j > 0 && (candidateScores[j - 1] < v
+                    || candidateScores[j - 1] == v
+                    && (mirrored ? Move.flipColumns(candidates[j - 1][0])
+                            : candidates[j - 1][0]) > m)) {
+                candidates[j] = candidates[j - 1];
+                candidateScores[j] = candidateScores[j - 1];
+                j--;
+            }
+            candidates[j] = line;
+            candidateScores[j] = v;
+        }
+    }
+
+    /**
+     * Draws a move among candidates. Exactly one random number is used, even
+     * for a single candidate, so that a seeded game does not depend on how
+     * the candidates were found.
+     *
+     * @param random
+     *            the random source
+     * @param scores
+     *            the scores of the candidates, the best score first
+     * @param count
+     *            number of candidates
+     * @param temperature
+     *            the softmax temperature, 0 for a uniform choice among the
+     *            candidates with the best score
+     * @return index of the chosen candidate
+     */
+    static int choose(SplittableRandom random, double[] scores, int count,
+            double temperature) {
+        double[] weights = new double[count];
+        double sum = 0;
+        for (int i = 0; i < count; i++) {
+            if (temperature > 0) {
+                weights[i] = Math.exp((scores[i] - scores[0]) / temperature);
+            } else {
+                weights[i] = scores[i] == scores[0] ? 1 : 0;
+            }
+            sum += weights[i];
+        }
+        double r = random.nextDouble() * sum;
+        int choice = 0;
+        while (choice < count - 1 && r >= weights[choice]) {
+            r -= weights[choice++];
+        }
+        while (weights[choice] == 0) {
+            choice--;
+        }
+        return choice;
+    }
+
+    /**
+     * Searches all moves of the machine at the root
+     *
+     * @param game
+     *            the game state at the root
+     * @param n
+     *            number of legal moves of the machine in the move list of ply
+     *            0, they are reordered so that the best move of the previous
+     *            iteration is searched first
+     * @param depth
+     *            depth of this iteration
+     * @param alpha
+     *            lower bound of the window
+     * @param beta
+     *            upper bound of the window
+     * @return score of the best move
+     */
+    private double searchRoot(Game game, int n, int depth, double alpha,
+            double beta) {
+        pvLength[0] = 0;
+        followPv = previousPv.length > 0;
+        orderPv(moves[0], n, 0);
+        if (lines > 1) {
+            return searchLines(game, n, depth);
+        }
+        double best = -INF;
+        boolean first = true;
+        for (int i = 0; i < n; i++) {
+            int m = moves[0][i];
+            game.makeMove(m);
+            double v;
+            if (first || !pvs) {
+                v = alphaBeta(game, 1, depth, alpha, beta);
+            } else {
+                double nullBeta = Math.min(alpha + NULL_WINDOW, beta);
+                v = alphaBeta(game, 1, depth, alpha, nullBeta);
+                if (v >= nullBeta && v < beta) {
+                    v = alphaBeta(game, 1, depth, alpha, beta);
+                }
+            }
+            game.undoMove();
+            followPv = false;
+            first = false;
+            if (v > best) {
+                best = v;
+                updatePv(0, m);
+            }
+            if (best > alpha) {
+                alpha = best;
+            }
+            if (alpha >= beta) {
+                break;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Searches all moves of the machine at the root and ranks the best of
+     * them. The first moves are searched with an open window. Once the
+     * ranking is full, each further move is searched with a null window at
+     * the score of the last line and only searched fully if it is better.
+     * The moves of the ranking are moved to the front of the move list, in
+     * the order of their scores, for the next iteration.
+     *
+     * @param game
+     *            the game state at the root
+     * @param n
+     *            number of legal moves of the machine in the move list of ply
+     *            0
+     * @param depth
+     *            depth of this iteration
+     * @return score of the best move
+     */
+    private double searchLines(Game game, int n, int depth) {
+        int k = Math.min(lines, n);
+        lineCount = 0;
+        for (int i = 0; i < n; i++) {
+            int m = moves[0][i];
+            double bound = lineCount < k ? -INF : lineScores[k - 1];
+            game.makeMove(m);
+            double v;
+            if (lineCount < k || !pvs) {
+                v = alphaBeta(game, 1, depth, bound, INF);
+            } else {
+                v = alphaBeta(game, 1, depth, bound, bound + NULL_WINDOW);
+                if (v > bound) {
+                    v = alphaBeta(game, 1, depth, bound, INF);
+                }
+            }
+            game.undoMove();
+            followPv = false;
+            if (v > bound) {
+                // inside the window, so v is the exact score
+                updatePv(0, m);
+                int j = Math.min(lineCount, k - 1);
+                while (j > 0 && lineScores[j - 1] < v) {
+                    lineVariations[j] = lineVariations[j - 1];
+                    lineScores[j] = lineScores[j - 1];
+                    j--;
+                }
+                lineVariations[j] = Arrays.copyOf(pv[0], pvLength[0]);
+                lineScores[j] = v;
+                lineCount = Math.min(lineCount + 1, k);
+            }
+        }
+        for (int j = lineCount - 1; j >= 0; j--) {
+            toFront(moves[0], n, lineVariations[j][0]);
+        }
+        System.arraycopy(lineVariations[0], 0, pv[0], 0,
+                lineVariations[0].length);
+        pvLength[0] = lineVariations[0].length;
+        return lineScores[0];
+    }
+
+    /**
+     * Fail soft alpha-beta search with null windows for all but the first
+     * move.
+     *
+     * @param game
+     *            the game state of this node
+     * @param ply
+     *            distance to the root
+     * @param depth
+     *            depth of this iteration
+     * @param alpha
+     *            lower bound of the window
+     * @param beta
+     *            upper bound of the window
+     * @return score of this node, a bound if it is outside the window
+     */
+    private double alphaBeta(Game game, int ply, int depth, double alpha,
+            double beta) {
+        nodes++;
+        if (nodes > nodeBudget && completedDepth > 0) {
+            throw ABORTED;
+        }
+        if (deadline != 0 && (nodes & 1023) == 0 && completedDepth > 0
+                && System.nanoTime() - deadline > 0) {
+            throw ABORTED;
+        }
+        pvLength[ply] = ply;
+        double own = game.getScore(ply);
+        if (game.gameOver()) {
+            return own;
+        }
+        if (raceResolution) {
+            int race = Race.resolve(game.bits(Player.HUMAN),
+                    game.bits(Player.MACHINE), game.next());
+            if (race != 0) {
+                return own + raceScore(ply, race);
+            }
+        }
+        if (ply >= depth) {
+            depthReached = true;
+            return own;
+        }
+        int draft = depth - ply;
+        long key = 0;
+        int hashMove = 0;
+        // a game state and its mirror image share an entry
+        boolean mirrored = false;
+        if (table != null) {
+            key = Zobrist.node(game.getCanonicalHash(), ply, salt);
+            mirrored = game.isMirrored();
+            long entry = table.probe(key);
+            tableProbes++;
+            if (entry != 0) {
+                tableHits++;
+                hashMove = TranspositionTable.move(entry);
+                if (mirrored) {
+                    hashMove = Move.flipColumns(hashMove);
+                }
+                int stored = TranspositionTable.draft(entry);
+                boolean complete = TranspositionTable.complete(entry);
+                if (beta - alpha <= NULL_WINDOW
+                        && (stored == draft || complete && stored < draft)) {
+                    double v = TranspositionTable.value(entry);
+                    int bound = TranspositionTable.bound(entry);
+                    if (bound == TranspositionTable.EXACT
+                            || bound == TranspositionTable.LOWER && v >= beta
+                            || bound == TranspositionTable.UPPER && v <= alpha) {
+                        depthReached |= !complete;
+                        return v;
+                    }
+                }
+            }
+        }
+        boolean max = game.next() == Player.MACHINE;
+        // the own score is added to the best child, so shift the window
+        double a = alpha - own;
+        double b = beta - own;
+        // prune only in null window searches off the principal variation
+        boolean selective = pruning && beta - alpha <= NULL_WINDOW
+                && !followPv;
+        if (nullMove && selective && draft >= NULL_MOVE_DEPTH
+                && nullMoveAllowed(game, ply)) {
+            double v = nullMove(game, ply, depth, alpha, beta, max);
+            if (max ? v >= beta : v <= alpha) {
+                return v;
+            }
+        }
+        int[] list = moves[ply];
+        int n = game.legalMoves(list);
+        if (n == 0) {
+            return own;
+        }
+        orderPv(list, n, ply);
+        if (!followPv && hashMove != 0) {
+            toFront(list, n, hashMove);
+        }
+        // whether this subtree reaches the depth is stored with its score
+        boolean reached = depthReached;
+        depthReached = false;
+
+        double best = max ? -INF : INF;
+        int bestMove = 0;
+        boolean futile = false;
+        if (selective && draft < FUTILITY_MARGIN.length) {
+            // the score changes little with quiet moves, so if even a large
+            // change cannot reach the window only the other moves are
+            // searched
+            double estimate = draft * own
+                    + (max ? FUTILITY_MARGIN[draft] : -FUTILITY_MARGIN[draft]);
+            if (max ? estimate <= a : estimate >= b) {
+                futile = true;
+                best = estimate;
+                depthReached = true;
+            }
+        }
+        boolean first = true;
+        for (int i = 0; i < n; i++) {
+            int m = list[i];
+            boolean quiet = quiet(game, m);
+            if (futile && quiet) {
+                continue;
+            }
+            boolean reduce = selective && quiet && draft >= LMR_DEPTH
+                    && i >= LMR_MOVES && m != hashMove;
+            game.makeMove(m);
+            double v = reduce ? reduced(game, ply, depth, a, b, max, own) : 0;
+            if (reduce && (max ? v <= a : v >= b)) {
+                // the reduced search confirms that the move is not better
+            } else if (first || !pvs) {
+                v = alphaBeta(game, ply + 1, depth, a, b);
+            } else if (max) {
+                double nullBeta = Math.min(a + NULL_WINDOW, b);
+                v = alphaBeta(game, ply + 1, depth, a, nullBeta);
+                if (v >= nullBeta && v < b) {
+                    v = alphaBeta(game, ply + 1, depth, a, b);
+                }
+            } else {
+                double nullAlpha = Math.max(b - NULL_WINDOW, a);
+                v = alphaBeta(game, ply + 1, depth, nullAlpha, b);
+                if (v <= nullAlpha && v > a) {
+                    v = alphaBeta(game, ply + 1, depth, a, b);
+                }
+            }
+            game.undoMove();
+            followPv = false;
+            first = false;
+            if (max ? v > best : v < best) {
+                best = v;
+                bestMove = m;
+                updatePv(ply, m);
+            }
+            if (max && best > a) {
+                a = best;
+            }
+            if (!max && best < b) {
+                b = best;
+            }
+            if (a >= b) {
+                break;
+            }
+        }
+        double value = own + best;
+        if (table != null) {
+            int bound = value <= alpha ? TranspositionTable.UPPER
+                    : value >= beta ? TranspositionTable.LOWER
+                            : TranspositionTable.EXACT;
+            table.store(key, value, draft, bound, !depthReached,
+                    mirrored ? Move.flipColumns(bestMove) : bestMove);
+        }
+        depthReached |= reached;
+        return value;
+    }
+
+    /**
+     * Searches a late quiet move one ply less deep with a null window at the
+     * lower bound of a max node or at the upper bound of a min node. The
+     * score of a node is a sum over the plies below it, so the own score of
+     * the node stands in for the missing ply.
+     *
+     * @param game
+     *            the game state after the move
+     * @param ply
+     *            distance of the node before the move to the root
+     * @param depth
+     *            depth of this iteration
+     * @param a
+     *            lower bound of the shifted window of the node
+     * @param b
+     *            upper bound of the shifted window of the node
+     * @param max
+     *            true if the machine moved
+     * @param own
+     *            own score of the node before the move
+     * @return the score of the reduced search
+     */
+    private double reduced(Game game, int ply, int depth, double a, double b,
+            boolean max, double own) {
+        if (max) {
+            return own + alphaBeta(game, ply + 1, depth - 1, a - own,
+                    Math.min(a + NULL_WINDOW, b) - own);
+        }
+        return own + alphaBeta(game, ply + 1, depth - 1,
+                Math.max(b - NULL_WINDOW, a) - own, b - own);
+    }
+
+    /**
+     * Tells whether the null move may be tried at a node: the player to move
+     * has enough pawns not to be in zugzwang, the other player can move and
+     * neither the move before nor a verification search at this node was a
+     * null move
+     *
+     * @param game
+     *            the game state of the node
+     * @param ply
+     *            distance to the root
+     * @return true if the null move may be tried
+     */
+    private boolean nullMoveAllowed(Game game, int ply) {
+        Player other = game.next() == Player.HUMAN ? Player.MACHINE
+                : Player.HUMAN;
+        return Long.bitCount(game.bits(game.next())) >= NULL_MOVE_PAWNS
+                && game.mobile(other) != 0
+                && (passed & 1L << (ply - 1)) == 0
+                && (verifying & 1L << ply) == 0;
+    }
+
+    /**
+     * Lets the player to move pass and searches the answers less deep. If
+     * the player still reaches the window bound, the node is searched less
+     * deep without passing, since in zugzwang passing would be better than
+     * any move. The own score of the node stands in for each ply missing in
+     * the sum of scores of the shallower searches.
+     *
+     * @param game
+     *            the game state of the node
+     * @param ply
+     *            distance to the root
+     * @param depth
+     *            depth of this iteration
+     * @param alpha
+     *            lower bound of the null window
+     * @param beta
+     *            upper bound of the null window
+     * @param max
+     *            true if the machine is to move
+     * @return score of the verification search, or the bound not reached if
+     *         passing does not reach it
+     */
+    private double nullMove(Game game, int ply, int depth, double alpha,
+            double beta, boolean max) {
+        double own = game.getScore(ply);
+        double missing = NULL_MOVE_REDUCTION * own;
+        double shift = own + missing;
+        game.makeNullMove();
+        passed |= 1L << ply;
+        double v;
+        try {
+            if (max) {
+                v = shift + alphaBeta(game, ply + 1, depth
+                        - NULL_MOVE_REDUCTION, beta - shift - NULL_WINDOW,
+                        beta - shift);
+            } else {
+                v = shift + alphaBeta(game, ply + 1, depth
+                        - NULL_MOVE_REDUCTION, alpha - shift, alpha - shift
+                        + NULL_WINDOW);
+            }
+        } finally {
+            passed &= ~(1L << ply);
+        }
+        game.undoMove();
+        if (max ? v < beta : v > alpha) {
+            return max ? alpha : beta;
+        }
+        verifying |= 1L << ply;
+        try {
+            return missing + alphaBeta(game, ply, depth - NULL_MOVE_REDUCTION,
+                    alpha - missing, beta - missing);
+        } finally {
+            verifying &= ~(1L << ply);
+        }
+    }
+
+    /**
+     * Tells whether a move is quiet: it strikes no pawn and does not enter
+     * the last two rows before the ground line of the opponent
+     *
+     * @param game
+     *            the game state before the move
+     * @param m
+     *            the encoded move
+     * @return true if the move is quiet
+     */
+    private static boolean quiet(Game game, int m) {
+        int to = Move.to(m);
+        Player player = game.next();
+        Player other = player == Player.HUMAN ? Player.MACHINE : Player.HUMAN;
+        if ((game.bits(other) & 1L << to) != 0) {
+            return false;
+        }
+        int row = to / Board.SIZE + 1;
+        return player == Player.HUMAN ? row < Board.SIZE - 1 : row > 2;
+    }
+
+    /**
+     * Computes the victory score of a decided race like the victory score of
+     * {@link Game#getScore(int)} at the ply the winner reaches the ground line
+     *
+     * @param ply
+     *            distance to the root
+     * @param race
+     *            result of {@link Race#resolve(long, long, Player)}
+     * @return victory score
+     */
+    private static double raceScore(int ply, int race) {
+        int i = ply + Math.abs(race);
+        return race > 0 ? 5000 / i : -3 * (double) (5000 / i) / 2;
+    }
+
+    /**
+     * Moves the move of the previous principal variation to the front, as
+     * long as this node lies on the previous principal variation
+     *
+     * @param list
+     *            the encoded moves of this node
+     * @param n
+     *            number of moves
+     * @param ply
+     *            distance to the root
+     */
+    private void orderPv(int[] list, int n, int ply) {
+        if (!followPv || ply >= previousPv.length) {
+            followPv = false;
+            return;
+        }
+        for (int i = 0; i < n; i++) {
+            if (list[i] == previousPv[ply]) {
+                System.arraycopy(list, 0, list, 1, i);
+                list[0] = previousPv[ply];
+                return;
+            }
+        }
+        followPv = false;
+    }
+
+    /**
+     * Moves a move to the front of the move list
+     *
+     * @param list
+     *            the encoded moves of this node
+     * @param n
+     *            number of moves
+     * @param m
+     *            the encoded move, nothing happens if it is not in the list
+     */
+    private static void toFront(int[] list, int n, int m) {
+        for (int i = 1; i < n; i++) {
+            if (list[i] == m) {
+                System.arraycopy(list, 0, list, 1, i);
+                list[0] = m;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Stores the move as new best move of the ply followed by the principal
+     * variation of the next ply
+     *
+     * @param ply
+     *            distance to the root
+     * @param m
+     *            the new best move
+     */
+    private void updatePv(int ply, int m) {
+        pv[ply][ply] = m;
+        int length = Math.max(pvLength[ply + 1], ply + 1);
+        for (int j = ply + 1; j < length; j++) {
+            pv[ply][j] = pv[ply + 1][j];
+        }
+        pvLength[ply] = length;
+    }
+
+    /**
+     * Lets the search play a random move among the near-best moves instead
+     * of always the first best move. The choice only depends on the state of
+     * the random source, so a seeded source makes games reproducible.
+     *
+     * @param random
+     *            the random source, null to always play the first best move
+     * @param margin
+     *            largest score loss of a move that may be played, 0 for
+     *            moves with the best score only
+     * @param temperature
+     *            softmax temperature over the score loss, 0 to choose the
+     *            moves with the best score uniformly
+     */
+    public void setSelection(SplittableRandom random, double margin,
+            double temperature) {
+        if (margin < 0 || temperature < 0) {
+            throw new IllegalArgumentException(
+                    "Margin and temperature must not be negative");
+        }
+        this.random = random;
+        this.margin = margin;
+        this.temperature = temperature;
+    }
+
+    /**
+     * Sets the number of lines the search ranks: the best moves of the root
+     * with their exact scores and principal variations, see
+     * {@link #getCandidates()}. With more than one line the root is searched
+     * without aspiration windows and the search plays the best line, a
+     * selection (see {@link #setSelection}) is not made.
+     *
+     * @param lines
+     *            the number of lines, at least 1
+     */
+    public void setLines(int lines) {
+        if (lines < 1) {
+            throw new IllegalArgumentException("At least one line expected");
+        }
+        this.lines = lines;
+    }
+
+    /**
+     * Enables or disables the cut off at decided pawn races. Without it the
+     * search computes exactly the score of a full {@link GameTree}.
+     *
+     * @param enabled
+     *            true to resolve races by arithmetic
+     */
+    public void setRaceResolution(boolean enabled) {
+        raceResolution = enabled;
+    }
+
+    /**
+     * Enables or disables the selective search: late move reductions and
+     * futility pruning. It searches deeper in the same time, but its scores
+     * are estimates, not the exact scores of a full {@link GameTree}.
+     *
+     * @param enabled
+     *            true to prune selectively
+     */
+    public void setPruning(boolean enabled) {
+        pruning = enabled;
+    }
+
+    /**
+     * Enables or disables null move pruning with verification in the
+     * selective search. It is off by default: with pawns only zugzwang is so
+     * common that it lost more games than it won, even with verification.
+     *
+     * @param enabled
+     *            true to try null moves if pruning is enabled
+     */
+    public void setNullMove(boolean enabled) {
+        nullMove = enabled;
+    }
+
+    /**
+     * Enables or disables the transposition table. Without it the search
+     * does not depend on earlier searches.
+     *
+     * @param enabled
+     *            true to use the transposition table
+     */
+    public void setHashing(boolean enabled) {
+        hashing = enabled;
+    }
+
+    /**
+     * Uses another transposition table than the shared one
+     *
+     * @param table
+     *            the table, null for the shared one
+     */
+    void setTable(TranspositionTable table) {
+        fixedTable = table;
+    }
+
+    /**
+     * Limits the time of each search. When the time is up the search stops
+     * and returns the result of the last complete iteration. The first
+     * iteration is always completed.
+     *
+     * @param millis
+     *            the time limit in milliseconds, 0 for no limit
+     */
+    public void setTimeLimit(long millis) {
+        timeLimit = millis;
+    }
+
+    /**
+     * Limits the nodes of each search, so that its cost does not depend on
+     * the position. When the nodes are used up the search stops and returns
+     * the result of the last complete iteration. The first iteration is
+     * always completed, and the choice among near-best moves (see
+     * {@link #setSelection}) may use the limit once more.
+     *
+     * @param nodes
+     *            the node limit, 0 for no limit
+     */
+    public void setNodeLimit(long nodes) {
+        nodeLimit = nodes;
+    }
+
+    /**
+     * Gets the principal variations of the candidates of the last search,
+     * the moves the machine chose from. The first candidate is the best
+     * move, without a selection (see {@link #setSelection}) it is the only
+     * one. The candidates are ordered by score, equal scores by their moves
+     * in the orientation of the smaller hash. With several lines (see
+     * {@link #setLines}) the candidates are the ranked lines of the last
+     * complete iteration, the best first.
+     *
+     * @return the encoded principal variations
+     */
+    int[][] getCandidates() {
+        return Arrays.copyOf(candidates, candidateCount);
+    }
+
+    /**
+     * Gets the scores of the candidates of the last search
+     *
+     * @return the scores in the order of {@link #getCandidates()}
+     */
+    double[] getCandidateScores() {
+        return Arrays.copyOf(candidateScores, candidateCount);
+    }
+
+    /**
+     * Gets the principal variation of the last search
+     *
+     * @return the best move followed by the expected answers
+     */
+    public List<Move> getPrincipalVariation() {
+        List<Move> line = new ArrayList<Move>();
+        for (int m : previousPv) {
+            line.add(Move.decode(m));
+        }
+        return line;
+    }
+
+    /**
+     * Gets the score of the best move of the last search
+     *
+     * @return score of the principal variation
+     */
+    public double getScore() {
+        return score;
+    }
+
+    /**
+     * Gets the number of visited game states of the last search
+     *
+     * @return nodes of all iterations
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Gets the number of visited game states of one iteration
+     *
+     * @param depth
+     *            depth of the iteration
+     * @return nodes of the iteration, 0 if it was not searched
+     */
+    public long getNodes(int depth) {
+        return depth >= 1 && depth <= MAX_DEPTH ? iterationNodes[depth] : 0;
+    }
+
+    /**
+     * Gets the depth of the last completed iteration
+     *
+     * @return the depth
+     */
+    public int getDepth() {
+        return completedDepth;
+    }
+
+    /**
+     * Gets the share of the lookups in the transposition table of the last
+     * search which found an entry
+     *
+     * @return the hit ratio between 0 and 1
+     */
+    public double getHashHitRatio() {
+        return tableProbes == 0 ? 0 : (double) tableHits / tableProbes;
+    }
+
+    /**
+     * Gets how often the root had to be searched again because the score was
+     * outside the aspiration window
+     *
+     * @return number of researches in the last search
+     */
+    public int getAspirationResearches() {
+        return aspirationResearches;
+    }
+
+}
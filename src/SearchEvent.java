@@ -0,0 +1,52 @@
+package pawns_chess.model;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The class SearchEvent is the Flight Recorder event of one search of the
+ * machine. It is only committed if the event is enabled in the recording, for
+ * example with {@code -XX:StartFlightRecording} and the default settings.
+ *
+ * <p>
+ * Loading an event class registers it with the Flight Recorder, which takes
+ * about a third of a second. So the search only uses this class while the
+ * Flight Recorder runs, otherwise the first move of each process would wait
+ * for it.
+ */
+@Name("pawns_chess.Search")
+@Label("Search")
+@Category("Pawn Chess")
+@Description("A search of the machine's best move")
+@StackTrace(false)
+final class SearchEvent extends Event {
+
+    @Label("Depth")
+    @Description("Depth of the last complete iteration")
+    int depth;
+
+    @Label("Nodes")
+    long nodes;
+
+    @Label("Position Hash")
+    long hash;
+
+    @Label("Score")
+    double score;
+
+    @Label("Evaluator")
+    String evaluator;
+
+    @Label("Aborted")
+    @Description("The time or node limit stopped the search")
+    boolean aborted;
+
+    @Label("Hash Hits")
+    @Description("Share of the lookups in the transposition table which found an entry")
+    double hashHits;
+
+}
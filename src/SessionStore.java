@@ -0,0 +1,342 @@
+package pawns_chess.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+/**
+ * The class SessionStore keeps games by name in an append-only log file, so
+ * they survive a restart of the process. Every save appends a record with the
+ * snapshot of the game (see {@link Game#writeTo(ByteBuffer)}), every removal
+ * a record without one. The latest record of a name wins. When more than half
+ * of the log is outdated, the live records are written to a new log which
+ * replaces the old one.
+ *
+ * <p>
+ * A record is the length of its body, the CRC32 of its body and the body:
+ * the type, the length of the name, the name in UTF-8 and the snapshot. On
+ * opening, the log is read sequentially and a torn record at its end (left by
+ * a crash while appending) is cut off. The snapshots are only decoded when a
+ * game is loaded. All methods are thread safe.
+ */
+public final class SessionStore implements Closeable {
+
+    private static final byte SAVE = 1;
+    private static final byte REMOVE = 2;
+
+    /**
+     * Bytes in front of the body: length and checksum
+     */
+    private static final int HEADER = 8;
+
+    /**
+     * Logs smaller than this are never compacted
+     */
+    private static final long MIN_COMPACTION = 1 << 20;
+
+    private final Path file;
+    private FileChannel channel;
+
+    /**
+     * The latest snapshot of each game
+     */
+    private final Map<String, byte[]> sessions = new HashMap<String, byte[]>();
+
+    /**
+     * Size of the log and size of its live records
+     */
+    private long size;
+    private long live;
+
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * Opens a store and reads its log. The file is created if it does not
+     * exist.
+     *
+     * @param file
+     *            the log file
+     * @throws IOException
+     *             if the log cannot be read
+     */
+    public SessionStore(Path file) throws IOException {
+        this.file = file;
+        channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        restore();
+    }
+
+    /**
+     * Reads the log sequentially and truncates a torn record at its end
+     *
+     * @throws IOException
+     *             if the log cannot be read
+     */
+    private void restore() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+        long position = 0;
+        channel.position(0);
+        boolean end = false;
+        while (!end) {
+            end = channel.read(buffer) < 0;
+            buffer.flip();
+            while (buffer.remaining() >= HEADER) {
+                int length = buffer.getInt(buffer.position());
+                if (length <= 0 || length > buffer.capacity() - HEADER) {
+                    // garbage instead of a record header
+                    end = true;
+                    break;
+                }
+                if (buffer.remaining() < HEADER + length) {
+                    break;
+                }
+                buffer.getInt();
+                int checksum = buffer.getInt();
+                byte[] body = new byte[length];
+                buffer.get(body);
+                crc.reset();
+                crc.update(body);
+                if ((int) crc.getValue() != checksum) {
+                    end = true;
+                    break;
+                }
+                replay(body, HEADER + length);
+                position += HEADER + length;
+            }
+            buffer.compact();
+        }
+        size = position;
+        if (channel.size() > size) {
+            channel.truncate(size);
+        }
+        channel.position(size);
+    }
+
+    /**
+     * Applies a record of the log to the sessions
+     *
+     * @param body
+     *            the body of the record
+     * @param recordSize
+     *            size of the whole record
+     */
+    private void replay(byte[] body, int recordSize) {
+        ByteBuffer b = ByteBuffer.wrap(body);
+        byte type = b.get();
+        byte[] name = new byte[b.getShort() & 0xFFFF];
+        b.get(name);
+        String id = new String(name, StandardCharsets.UTF_8);
+        byte[] old;
+        if (type == SAVE) {
+            byte[] snapshot = new byte[b.remaining()];
+            b.get(snapshot);
+            old = sessions.put(id, snapshot);
+            live += recordSize;
+        } else {
+            old = sessions.remove(id);
+        }
+        if (old != null) {
+            live -= recordSize(id, old);
+        }
+    }
+
+    /**
+     * Saves a game, replacing the game saved under the same name
+     *
+     * @param id
+     *            name of the game
+     * @param game
+     *            the game
+     * @throws IOException
+     *             if the log cannot be written
+     */
+    public synchronized void save(String id, Game game) throws IOException {
+        ByteBuffer snapshot = ByteBuffer.allocate(game.snapshotSize());
+        game.writeTo(snapshot);
+        append(SAVE, id, snapshot.array());
+    }
+
+    /**
+     * Loads a game
+     *
+     * @param id
+     *            name of the game
+     * @return a new game equal to the one saved or null if there is no game
+     *         of this name
+     */
+    public synchronized Game load(String id) {
+        byte[] snapshot = sessions.get(id);
+        return snapshot == null ? null : Game.readFrom(ByteBuffer
+                .wrap(snapshot));
+    }
+
+    /**
+     * Removes a game
+     *
+     * @param id
+     *            name of the game
+     * @return false if there is no game of this name
+     * @throws IOException
+     *             if the log cannot be written
+     */
+    public synchronized boolean remove(String id) throws IOException {
+        if (!sessions.containsKey(id)) {
+            return false;
+        }
+        append(REMOVE, id, new byte[0]);
+        return true;
+    }
+
+    /**
+     * Gets the names of all saved games
+     *
+     * @return the names in alphabetical order
+     */
+    public synchronized Set<String> ids() {
+        return Collections.unmodifiableSet(new TreeSet<String>(sessions
+                .keySet()));
+    }
+
+    /**
+     * Gets the number of saved games
+     *
+     * @return the number of games
+     */
+    public synchronized int size() {
+        return sessions.size();
+    }
+
+    /**
+     * Appends a record to the log and compacts the log if more than half of
+     * it is outdated
+     *
+     * @param type
+     *            SAVE or REMOVE
+     * @param id
+     *            name of the game
+     * @param snapshot
+     *            the snapshot, empty for REMOVE
+     * @throws IOException
+     *             if the log cannot be written
+     */
+    private void append(byte type, String id, byte[] snapshot)
+        throws IOException {
+        ByteBuffer record = record(type, id, snapshot);
+        int recordSize = record.remaining();
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+        size += recordSize;
+        byte[] old = type == SAVE ? sessions.put(id, snapshot) : sessions
+                .remove(id);
+        if (type == SAVE) {
+            live += recordSize;
+        }
+        if (old != null) {
+            live -= recordSize(id, old);
+        }
+        if (size > MIN_COMPACTION && live < size / 2) {
+            compact();
+        }
+    }
+
+    /**
+     * Encodes a record
+     *
+     * @param type
+     *            SAVE or REMOVE
+     * @param id
+     *            name of the game
+     * @param snapshot
+     *            the snapshot, empty for REMOVE
+     * @return the record ready to be written
+     */
+    private ByteBuffer record(byte type, String id, byte[] snapshot) {
+        byte[] name = id.getBytes(StandardCharsets.UTF_8);
+        if (name.length > 0xFFFF) {
+            throw new IllegalArgumentException("Name too long");
+        }
+        int length = 3 + name.length + snapshot.length;
+        ByteBuffer record = ByteBuffer.allocate(HEADER + length);
+        record.putInt(length).putInt(0);
+        record.put(type).putShort((short) name.length).put(name).put(snapshot);
+        crc.reset();
+        crc.update(record.array(), HEADER, length);
+        record.putInt(4, (int) crc.getValue());
+        record.flip();
+        return record;
+    }
+
+    /**
+     * Gets the size of the SAVE record of a game
+     *
+     * @param id
+     *            name of the game
+     * @param snapshot
+     *            the snapshot
+     * @return the size in bytes
+     */
+    private static int recordSize(String id, byte[] snapshot) {
+        return HEADER + 3 + id.getBytes(StandardCharsets.UTF_8).length
+                + snapshot.length;
+    }
+
+    /**
+     * Writes the live records to a new log which replaces the old one
+     *
+     * @throws IOException
+     *             if the log cannot be written
+     */
+    public synchronized void compact() throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".compact");
+        long written = 0;
+        try (FileChannel out = FileChannel.open(tmp,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Map.Entry<String, byte[]> e : sessions.entrySet()) {
+                ByteBuffer record = record(SAVE, e.getKey(), e.getValue());
+                written += record.remaining();
+                while (record.hasRemaining()) {
+                    out.write(record);
+                }
+            }
+            out.force(true);
+        }
+        channel.close();
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(file, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        channel.position(written);
+        size = written;
+        live = written;
+    }
+
+    /**
+     * Writes the log to the disk
+     *
+     * @throws IOException
+     *             if the log cannot be written
+     */
+    public synchronized void flush() throws IOException {
+        channel.force(false);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+}
@@ -3,9 +3,12 @@ package pawns_chess.model;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.file.Paths;
 import java.util.Set;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Arrays;
+import java.util.regex.Pattern;
 
 /**
  * The class Shell is responsible for handling the input and output and
@@ -17,6 +20,22 @@ public final class Shell {
     private static Board game;
     private static boolean gameinitialized;
 
+    /**
+     * The saved games, opened with the first SAVE or LOAD
+     */
+    private static SessionStore sessions;
+
+    /**
+     * Receives the legal moves listed by MOVES
+     */
+    private static final int[] moveBuffer = new int[Board.MAX_MOVES];
+
+    /**
+     * Separates the words of a command. {@code String.split} would compile
+     * the expression again for every command.
+     */
+    static final Pattern WORDS = Pattern.compile("\\s+");
+
     /**
      * not used
      */
@@ -27,10 +46,39 @@ public final class Shell {
      * The main method initialises a new Buffered Reader and the list with the
      * instructions and invokes execute()
      * 
-     * @param argv arguments for the start: not used
+     * @param argv arguments for the start: none for the interactive game,
+     *          "analyze" followed by the options of the {@link Analyzer},
+     *          "coordinate" followed by the options of the
+     *          {@link Coordinator}, "work" followed by the options of the
+     *          {@link Worker} or "train" followed by the duration in
+     *          milliseconds of the training run of a class data sharing
+     *          archive
      * @throws IOException if something went wrong
      */
     public static void main(String[] argv) throws IOException {
+        if (argv.length > 0 && argv[0].equalsIgnoreCase("analyze")) {
+            prepare();
+            Analyzer.main(Arrays.copyOfRange(argv, 1, argv.length));
+            return;
+        }
+        if (argv.length > 0 && argv[0].equalsIgnoreCase("coordinate")) {
+            Coordinator.main(Arrays.copyOfRange(argv, 1, argv.length));
+            return;
+        }
+        if (argv.length > 0 && argv[0].equalsIgnoreCase("work")) {
+            prepare();
+            try {
+                Worker.main(Arrays.copyOfRange(argv, 1, argv.length));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return;
+        }
+        if (argv.length > 0 && argv[0].equalsIgnoreCase("train")) {
+            train(argv.length > 1 ? Long.parseLong(argv[1]) : 3000);
+            return;
+        }
+        prepare();
         BufferedReader stdin = new BufferedReader(new InputStreamReader(
                 System.in));
 
@@ -38,11 +86,38 @@ public final class Shell {
         // can only be executed when the game is initialized
         Set<String> initializedInstructions = new LinkedHashSet<String>();
         String[] intialisedNecessaryCmd = {"LEVEL", "L", "SWITCH", "S",
-                "PRINT", "P", "MOVE", "M", };
+                "PRINT", "P", "MOVE", "M", "EVAL", "E", "UNDO", "U", "REDO", "R",
+                "SAVE", "V", "SEED", "D", "ENGINE", "G", "MOVES", "W",
+                "ANALYZE", "Y", };
         initializedInstructions.addAll(Arrays.asList(intialisedNecessaryCmd));
         execute(stdin, initializedInstructions);
     }
 
+    /**
+     * Registers the engine metrics without delaying the start and runs the
+     * warm-up of {@link Warmup#fromProperty()}
+     */
+    private static void prepare() {
+        EngineMetrics.registerInBackground();
+        Warmup.fromProperty();
+    }
+
+    /**
+     * Runs the workload of the training run of a class data sharing archive:
+     * it loads the classes of the game, the engines and the metrics. Start it
+     * with {@code -XX:ArchiveClassesAtExit=file}.
+     *
+     * @param millis how long to play
+     */
+    private static void train(long millis) {
+        long start = System.nanoTime();
+        EngineMetrics.register();
+        EngineMetrics.get().setEnabled(true);
+        long moves = Warmup.run(millis);
+        System.out.printf("Played %d machine moves in %d ms%n", moves,
+                (System.nanoTime() - start) / 1000000);
+    }
+
     /**
      * This method handles the interaction with the user
      * 
@@ -63,7 +138,7 @@ public final class Shell {
                 break;
             }
             // Split input by white spaces, command is the first input word
-            String[] words = input.trim().split("\\s+");
+            String[] words = WORDS.split(input.trim());
             String command = words[0].toUpperCase();
 
             // At first check commands that do not need an initialized game
@@ -86,6 +161,21 @@ public final class Shell {
                 quit = true;
                 break;
 
+            case "STATS":
+            case "T":
+                stats(words);
+                break;
+
+            case "LOAD":
+            case "O":
+                gameinitialized = load(words) || gameinitialized;
+                break;
+
+            case "HASH":
+            case "A":
+                setHash(words);
+                break;
+
             default:
                 if (!initializedInstructions.contains(command)) {
                     errorMsg("Unknown command: " + command);
@@ -121,11 +211,59 @@ public final class Shell {
                     System.out.println(game);
                     break;
 
+                case "EVAL":
+                case "E":
+                    setEvaluator(words);
+                    break;
+
+                case "UNDO":
+                case "U":
+                    if (!game.undo()) {
+                        errorMsg("No move to undo");
+                    }
+                    break;
+
+                case "REDO":
+                case "R":
+                    if (!game.redo()) {
+                        errorMsg("No move to redo");
+                    }
+                    break;
+
+                case "SAVE":
+                case "V":
+                    save(words);
+                    break;
+
+                case "SEED":
+                case "D":
+                    setSeed(words);
+                    break;
+
+                case "ENGINE":
+                case "G":
+                    setEngine(words);
+                    break;
+
+                case "MOVES":
+                case "W":
+                    moves(words);
+                    break;
+
+                case "ANALYZE":
+                case "Y":
+                    analyze(words);
+                    break;
+
                 default:
                     break;
                 }
             }
         }
+        replaceGame(null);
+        if (sessions != null) {
+            sessions.close();
+        }
     }
 
     /**
@@ -139,8 +277,9 @@ public final class Shell {
             try {
                 // String -> Int
                 int level = Integer.parseInt(words[1]);
-                if (level < 1 || level > 4) {
-                    errorMsg("Invalid level. level must be 1-4");
+                if (level < 1 || level > Board.MAX_LEVEL) {
+                    errorMsg("Invalid level. level must be 1-"
+                            + Board.MAX_LEVEL);
                 } else {
                     game.setLevel(level);
                 }
@@ -155,6 +294,117 @@ public final class Shell {
         }
     }
 
+    /**
+     * Sets the evaluator of the game
+     * 
+     * @param words
+     *            command parameters
+     */
+    private static void setEvaluator(String[] words) {
+        if (words.length == 2) {
+            Evaluator evaluator = Evaluators.forName(words[1]);
+            if (evaluator == null) {
+                errorMsg("Unknown evaluator. Evaluator must be one of "
+                        + Evaluators.names());
+            } else {
+                game.setEvaluator(evaluator);
+            }
+        } else {
+            errorMsg("Invalid number of arguments");
+        }
+    }
+
+    /**
+     * Sets the engine of the game
+     * 
+     * @param words
+     *            command parameters
+     */
+    private static void setEngine(String[] words) {
+        if (words.length == 2) {
+            Engine engine = Engines.forName(words[1]);
+            if (engine == null) {
+                errorMsg("Unknown engine. Engine must be one of "
+                        + Engines.names());
+            } else {
+                game.setEngine(engine);
+            }
+        } else {
+            errorMsg("Invalid number of arguments");
+        }
+    }
+
+    /**
+     * Seeds the machine's choice among equally good moves
+     * 
+     * @param words
+     *            command parameters
+     */
+    private static void setSeed(String[] words) {
+        if (words.length == 2) {
+            try {
+                game.setSeed(Long.parseLong(words[1]));
+            } catch (NumberFormatException e) {
+                errorMsg("The seed is not a number");
+            }
+        } else {
+            errorMsg("Invalid number of arguments");
+        }
+    }
+
+    /**
+     * Replaces the transposition table by an empty one of another size
+     * 
+     * @param words
+     *            command parameters
+     */
+    private static void setHash(String[] words) {
+        if (words.length == 2) {
+            int previous = 0;
+            try {
+                int megabytes = Integer.parseInt(words[1]);
+                previous = TranspositionTable.shared().getMegabytes();
+                if (megabytes < 1) {
+                    errorMsg("The size must be at least 1 MB");
+                } else {
+                    TranspositionTable.resize(megabytes);
+                    System.out.println("Hash table "
+                            + TranspositionTable.shared().getMegabytes()
+                            + " MB");
+                }
+            } catch (NumberFormatException e) {
+                errorMsg("The size is not a number");
+            } catch (OutOfMemoryError e) {
+                TranspositionTable.resize(previous);
+                errorMsg("Not enough memory, raise -XX:MaxDirectMemorySize."
+                        + " The hash table has " + previous + " MB again");
+            }
+        } else {
+            errorMsg("Invalid number of arguments");
+        }
+    }
+
+    /**
+     * Prints the engine metrics or switches them on or off
+     * 
+     * @param words
+     *            command parameters
+     */
+    private static void stats(String[] words) {
+        EngineMetrics metrics = EngineMetrics.get();
+        if (words.length == 1) {
+            System.out.println(metrics);
+        } else if (words.length == 2 && words[1].equalsIgnoreCase("ON")) {
+            metrics.setEnabled(true);
+        } else if (words.length == 2 && words[1].equalsIgnoreCase("OFF")) {
+            metrics.setEnabled(false);
+        } else if (words.length == 2 && words[1].equalsIgnoreCase("RESET")) {
+            metrics.reset();
+        } else {
+            errorMsg("Invalid arguments. Use STATS [ON|OFF|RESET]");
+        }
+    }
+
     /**
      * Initializes an new Game
      * 
@@ -162,15 +412,99 @@ public final class Shell {
      */
     private static boolean newGame() {
         if (gameinitialized) {
-            game = new Game(game.getFirstPlayer());
+            replaceGame(new Game(game.getFirstPlayer()));
         } else {
-            game = new Game(Player.HUMAN);
+            replaceGame(new Game(Player.HUMAN));
         }
         System.out.println("New game started. You are "
                 + Player.HUMAN.getColor().toLowerCase() + ".");
         return true;
     }
 
+    /**
+     * Opens the saved games. The log file is pawnchess.sessions in the working
+     * directory unless the system property pawns_chess.sessions names
+     * another one.
+     * 
+     * @return the saved games
+     * @throws IOException if the log file cannot be read
+     */
+    private static SessionStore sessions() throws IOException {
+        if (sessions == null) {
+            sessions = new SessionStore(Paths.get(System.getProperty(
+                    "pawns_chess.sessions", "pawnchess.sessions")));
+        }
+        return sessions;
+    }
+
+    /**
+     * Saves the game under a name
+     * 
+     * @param words
+     *            command parameters
+     */
+    private static void save(String[] words) {
+        if (words.length != 2) {
+            errorMsg("Invalid number of arguments");
+        } else if (!(game instanceof Game)) {
+            errorMsg("This game cannot be saved");
+        } else {
+            try {
+                sessions().save(words[1], (Game) game);
+                sessions().flush();
+                System.out.println("Game saved as " + words[1] + ".");
+            } catch (IOException e) {
+                errorMsg("Cannot save the game: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Loads a saved game
+     * 
+     * @param words
+     *            command parameters
+     * @return true if the game was loaded
+     */
+    private static boolean load(String[] words) {
+        if (words.length != 2) {
+            errorMsg("Invalid number of arguments");
+            return false;
+        }
+        try {
+            Game loaded = sessions().load(words[1]);
+            if (loaded == null) {
+                errorMsg("No game saved as " + words[1]);
+                return false;
+            }
+            Game.setColors(loaded.getFirstPlayer());
+            replaceGame(loaded);
+            System.out.println("Game " + words[1] + " loaded. You are "
+                    + Player.HUMAN.getColor().toLowerCase() + ".");
+            checkGameOver();
+            return true;
+        } catch (IOException | IllegalArgumentException e) {
+            errorMsg("Cannot load the game: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Replaces the game and counts the active games in the engine metrics
+     * 
+     * @param next
+     *            the new game or null if the shell quits
+     */
+    private static void replaceGame(Board next) {
+        if (game != null) {
+            EngineMetrics.get().gameClosed();
+        }
+        game = next;
+        if (game != null) {
+            EngineMetrics.get().gameOpened();
+        }
+    }
+
     /**
      * Prints out an error message
      * 
@@ -246,6 +580,88 @@ public final class Shell {
         }
     }
 
+    /**
+     * Prints the legal moves of the human, all of them or those of one pawn
+     * 
+     * @param words
+     *            command parameters, none or the column and row of the pawn
+     */
+    private static void moves(String[] words) {
+        if (words.length == 1) {
+            int n = game.humanMoves(moveBuffer);
+            if (n == 0) {
+                System.out.println("You cannot move.");
+            }
+            for (int i = 0; i < n; i++) {
+                System.out.println(Move.decode(moveBuffer[i]));
+            }
+        } else if (words.length == 3) {
+            int col;
+            int row;
+            try {
+                col = Integer.parseInt(words[1]);
+                row = Integer.parseInt(words[2]);
+            } catch (NumberFormatException e) {
+                errorMsg("At least one of the parameters"
+                        + " is not of the type INT ");
+                return;
+            }
+            if (col <= 0 || col > Board.SIZE || row <= 0 || row > Board.SIZE) {
+                errorMsg("Invalid Number (1,...," + Board.SIZE + ") expected.");
+                return;
+            }
+            long targets = game.destinations(col, row);
+            if (targets == 0) {
+                System.out.println("No moves from (" + col + "," + row + ").");
+            }
+            for (long b = targets; b != 0; b &= b - 1) {
+                int sq = Long.numberOfTrailingZeros(b);
+                System.out.println(col + " " + row + " " + (sq % Board.SIZE + 1)
+                        + " " + (sq / Board.SIZE + 1));
+            }
+        } else {
+            errorMsg("Wrong number of parameters");
+        }
+    }
+
+    /**
+     * Prints the best moves of the player to move, ranked by one search:
+     * rank, score and the expected line of play, which starts with the move
+     *
+     * @param words
+     *            command parameters
+     */
+    private static void analyze(String[] words) {
+        int lines = 1;
+        if (words.length == 2) {
+            try {
+                lines = Integer.parseInt(words[1]);
+            } catch (NumberFormatException e) {
+                errorMsg("The parameter is not of the type INT");
+                return;
+            }
+            if (lines < 1 || lines > Board.MAX_MOVES) {
+                errorMsg("Invalid number of lines. 1-" + Board.MAX_MOVES
+                        + " expected.");
+                return;
+            }
+        } else if (words.length > 2) {
+            errorMsg("Wrong number of parameters");
+            return;
+        }
+        Analysis analysis = game.analyze(lines);
+        if (analysis.getLines().isEmpty()) {
+            System.out.println("Game over.");
+            return;
+        }
+        List<Analysis.Line> ranked = analysis.getLines();
+        for (int i = 0; i < ranked.size(); i++) {
+            System.out.println((i + 1) + ". " + ranked.get(i));
+        }
+        System.out.println("depth " + analysis.getDepth() + ", "
+                + analysis.getNodes() + " nodes");
+    }
+
     /**
      * Executes a machine move as long as it is the machine's turn
      */
@@ -283,9 +699,9 @@ public final class Shell {
      */
     private static void switchPlayer() {
         if (game.getFirstPlayer() == Player.HUMAN) {
-            game = new Game(Player.MACHINE);
+            replaceGame(new Game(Player.MACHINE));
         } else {
-            game = new Game(Player.HUMAN);
+            replaceGame(new Game(Player.HUMAN));
         }
         System.out.println("New game started. You are "
                 + Player.HUMAN.getColor().toLowerCase() + ".");
@@ -297,13 +713,33 @@ public final class Shell {
     private static void help() {
         System.out.println("Welcome to Pawn Chess. Use these commands to play");
         System.out.println("NEW Generates a new Game");
-        System.out.println("LEVEL x  Sets the level. x must be  1,2,3 or 4");
+        System.out.println("LEVEL x  Sets the level. x must be 1 to "
+                + Board.MAX_LEVEL);
         System.out.println("MOVE sourceX sourceY aimX aimY Moves the player's"
                 + " pawn from (sourceX,sourceY) to (aimX, aimY)");
         System.out
                 .println("SWITCH Starts a new game and the player who started"
                         + " the last game is now the second");
         System.out.println("PRINT Prints out the current field");
+        System.out.println("UNDO Takes back your last move and the"
+                + " machine's answer");
+        System.out.println("REDO Executes the moves taken back again");
+        System.out.println("EVAL name Sets the evaluator of the machine, one"
+                + " of " + Evaluators.names());
+        System.out.println("ENGINE name Sets the engine of the machine, one"
+                + " of " + Engines.names());
+        System.out.println("SEED n Makes the machine's choice among equally"
+                + " good moves reproducible");
+        System.out.println("SAVE name Saves the game under the name");
+        System.out.println("LOAD name Continues the game saved under the"
+                + " name");
+        System.out.println("STATS [ON|OFF|RESET] Prints the engine metrics"
+                + " or switches them on or off");
+        System.out.println("MOVES [x y] Lists your legal moves, all of them"
+                + " or those of the pawn at (x,y)");
+        System.out.println("ANALYZE [k] Lists the best k moves (default 1)"
+                + " with their scores and expected lines of play");
+        System.out.println("HASH mb Sets the size of the hash table in MB");
         System.out.println("QUIT Exits the programm");
     }
 
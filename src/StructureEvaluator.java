@@ -0,0 +1,29 @@
+package pawns_chess.model;
+
+/**
+ * A richer evaluator: the {@link ClassicEvaluator} plus the pawn structure.
+ * Passed pawns get a bonus of the rows they have advanced, and pawns which
+ * cannot move are considered bad.
+ */
+class StructureEvaluator extends ClassicEvaluator {
+
+    @Override
+    public String getName() {
+        return "structure";
+    }
+
+    @Override
+    public double evaluate(Game game, int depth) {
+        long human = game.bits(Player.HUMAN);
+        long machine = game.bits(Player.MACHINE);
+        double passedH = Bits.advancement(Race.passed(human, machine, 0), true);
+        double passedM = Bits.advancement(Race.passed(machine, human, 1),
+                false);
+        double blockedH = Long.bitCount(human & ~game.mobile(Player.HUMAN));
+        double blockedM = Long.bitCount(machine
+                & ~game.mobile(Player.MACHINE));
+        return super.evaluate(game, depth) + passedM - passedH * 1.5
+                + blockedH - 3 * blockedM / 2;
+    }
+
+}
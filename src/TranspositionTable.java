@@ -0,0 +1,262 @@
+package pawns_chess.model;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The class TranspositionTable remembers the scores of the nodes of the
+ * search. It is held outside the Java heap in direct byte buffers, so even
+ * tables of several gigabytes add nothing to the work of the garbage
+ * collector.
+ *
+ * <p>
+ * An entry has 16 bytes: the key XOR the data and the data. Entries are
+ * written and read without locks. A reader accepts an entry only if the key
+ * XOR the data it read matches its key, so an entry torn by concurrent writes
+ * is never used. All searches of the process share the table of
+ * {@link #shared()}, whose size is given in megabytes by the system property
+ * {@code pawns_chess.hash} (default 16) or the HASH command.
+ *
+ * <p>
+ * The data holds twice the score as an int, the best move, the draft
+ * (remaining depth), the kind of bound and whether the search of the node
+ * ended everywhere before its depth. In that case the score also holds for
+ * larger drafts. Since the score of a node depends
+ * on its ply, the key is the position hash combined with the ply and the
+ * evaluator, see {@link Zobrist#node(long, int, long)}. The position hash is
+ * the mirror-canonical one (see {@link Game#getCanonicalHash()}), so a
+ * game state and its mirror image share an entry. Its move is the move in
+ * the one with the smaller hash.
+ */
+final class TranspositionTable {
+
+    /**
+     * Kinds of bounds: the exact score, a lower bound (the search failed
+     * high) and an upper bound (the search failed low)
+     */
+    static final int EXACT = 0;
+    static final int LOWER = 1;
+    static final int UPPER = 2;
+
+    private static final int ENTRY = 16;
+
+    /**
+     * Size of a buffer: a byte buffer holds at most 2 GB
+     */
+    private static final long CHUNK = 1L << 30;
+
+    private static final long VALID = 1L << 63;
+    private static final long COMPLETE = 1L << 53;
+
+    private static volatile TranspositionTable shared;
+
+    private final ByteBuffer[] chunks;
+    private final long mask;
+    private final int megabytes;
+
+    /**
+     * Creates a table
+     *
+     * @param megabytes
+     *            the size, rounded down to a power of two, at least 1
+     * @param direct
+     *            true to allocate the table outside the Java heap
+     * @throws OutOfMemoryError
+     *             if the memory cannot be allocated
+     */
+    TranspositionTable(int megabytes, boolean direct) {
+        this(Long.highestOneBit(Math.max(1, megabytes)) << 20, direct);
+    }
+
+    /**
+     * Creates a table of a given size
+     *
+     * @param bytes
+     *            the size, a power of two of at least one entry
+     * @param direct
+     *            true to allocate the table outside the Java heap
+     */
+    private TranspositionTable(long bytes, boolean direct) {
+        this.megabytes = (int) (bytes >> 20);
+        mask = bytes / ENTRY - 1;
+        int n = (int) Math.max(1, bytes / CHUNK);
+        int chunk = (int) Math.min(bytes, CHUNK);
+        chunks = new ByteBuffer[n];
+        for (int i = 0; i < n; i++) {
+            chunks[i] = direct ? ByteBuffer.allocateDirect(chunk) : ByteBuffer
+                    .allocate(chunk);
+        }
+    }
+
+    /**
+     * Creates a table on the Java heap for a single search: one entry for
+     * each node, so small searches do not pay for clearing a large table
+     *
+     * @param nodes
+     *            the node limit of the search
+     * @return the table
+     */
+    static TranspositionTable forNodes(long nodes) {
+        long entries = Long.highestOneBit(Math.max(1, nodes));
+        entries = entries < nodes ? 2 * entries : entries;
+        return new TranspositionTable(Math.min(entries * ENTRY, CHUNK), false);
+    }
+
+    /**
+     * Gets the table shared by all searches
+     *
+     * @return the table
+     */
+    static TranspositionTable shared() {
+        TranspositionTable table = shared;
+        if (table == null) {
+            synchronized (TranspositionTable.class) {
+                if (shared == null) {
+                    shared = new TranspositionTable(Integer.getInteger(
+                            "pawns_chess.hash", 16), true);
+                }
+                table = shared;
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Replaces the shared table by an empty one. Running searches keep the
+     * old table.
+     *
+     * @param megabytes
+     *            the size, rounded down to a power of two
+     * @throws OutOfMemoryError
+     *             if the memory cannot be allocated
+     */
+    static synchronized void resize(int megabytes) {
+        // let the old table go before allocating the new one
+        shared = null;
+        shared = new TranspositionTable(megabytes, true);
+    }
+
+    /**
+     * Gets the size of the table
+     *
+     * @return the size in megabytes, 0 for a table of less than a megabyte
+     */
+    int getMegabytes() {
+        return megabytes;
+    }
+
+    /**
+     * Looks an entry up
+     *
+     * @param key
+     *            the key of the node
+     * @return the data of the entry or 0 if there is none
+     */
+    long probe(long key) {
+        long index = (key & mask) * ENTRY;
+        ByteBuffer chunk = chunks[(int) (index / CHUNK)];
+        int at = (int) (index % CHUNK);
+        long data = chunk.getLong(at + 8);
+        return (chunk.getLong(at) ^ data) == key ? data : 0;
+    }
+
+    /**
+     * Stores an entry, replacing the entry of the same slot
+     *
+     * @param key
+     *            the key of the node
+     * @param value
+     *            the score of the node, not stored unless it is a multiple
+     *            of 0.5 within the int range
+     * @param draft
+     *            the remaining depth of the search of the node
+     * @param bound
+     *            EXACT, LOWER or UPPER
+     * @param complete
+     *            true if the search of the node never reached its depth
+     * @param move
+     *            the best move, 0 for none
+     */
+    void store(long key, double value, int draft, int bound,
+            boolean complete, int move) {
+        double twice = 2 * value;
+        if (twice != (int) twice) {
+            return;
+        }
+        long data = VALID | (complete ? COMPLETE : 0) | (long) bound << 51
+                | (long) draft << 44 | (long) move << 32
+                | ((int) twice & 0xFFFFFFFFL);
+        long index = (key & mask) * ENTRY;
+        ByteBuffer chunk = chunks[(int) (index / CHUNK)];
+        int at = (int) (index % CHUNK);
+        chunk.putLong(at + 8, data);
+        chunk.putLong(at, key ^ data);
+    }
+
+    /**
+     * Gets the score of an entry
+     *
+     * @param data
+     *            data returned by {@link #probe(long)}
+     * @return the score
+     */
+    static double value(long data) {
+        return (int) data / 2.0;
+    }
+
+    /**
+     * Gets the best move of an entry
+     *
+     * @param data
+     *            data returned by {@link #probe(long)}
+     * @return the encoded move, 0 for none
+     */
+    static int move(long data) {
+        return (int) (data >>> 32) & 0xFFF;
+    }
+
+    /**
+     * Gets the draft of an entry
+     *
+     * @param data
+     *            data returned by {@link #probe(long)}
+     * @return the remaining depth of the search of the node
+     */
+    static int draft(long data) {
+        return (int) (data >>> 44) & 0x7F;
+    }
+
+    /**
+     * Gets the kind of bound of an entry
+     *
+     * @param data
+     *            data returned by {@link #probe(long)}
+     * @return EXACT, LOWER or UPPER
+     */
+    static int bound(long data) {
+        return (int) (data >>> 51) & 3;
+    }
+
+    /**
+     * Tells whether the search of the node of an entry never reached its
+     * depth
+     *
+     * @param data
+     *            data returned by {@link #probe(long)}
+     * @return true if the score holds for all drafts from the stored one on
+     */
+    static boolean complete(long data) {
+        return (data & COMPLETE) != 0;
+    }
+
+    /**
+     * Removes all entries
+     */
+    void clear() {
+        for (ByteBuffer chunk : chunks) {
+            for (int i = 0; i < chunk.capacity(); i += 8) {
+                chunk.putLong(i, 0);
+            }
+        }
+    }
+
+}
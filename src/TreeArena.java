@@ -0,0 +1,216 @@
+package pawns_chess.model;
+
+import java.util.Arrays;
+
+/**
+ * The class TreeArena holds the nodes of a {@link GameTree} in parallel
+ * primitive arrays instead of one object per node. A node is an index into
+ * the arrays: its parent, its first child, its number of children, the move
+ * leading to it, its score and its game state packed into the two pawn masks
+ * and the player whose turn it is. The children of a node have consecutive
+ * indexes, so a level of the tree can be walked without any objects.
+ *
+ * <p>
+ * The arrays grow by doubling and are kept by {@link #reset()}, so an arena
+ * which is reused for many trees allocates nothing once it is large enough.
+ */
+final class TreeArena {
+
+    private static final Player[] PLAYERS = Player.values();
+
+    private int size;
+    private int[] parent;
+    private int[] firstChild;
+    private int[] childCount;
+    private short[] move;
+    private double[] score;
+    private long[] human;
+    private long[] machine;
+    private byte[] next;
+
+    /**
+     * Creates an empty arena
+     *
+     * @param capacity
+     *            the number of nodes it holds before it grows
+     */
+    TreeArena(int capacity) {
+        capacity = Math.max(1, capacity);
+        parent = new int[capacity];
+        firstChild = new int[capacity];
+        childCount = new int[capacity];
+        move = new short[capacity];
+        score = new double[capacity];
+        human = new long[capacity];
+        machine = new long[capacity];
+        next = new byte[capacity];
+    }
+
+    /**
+     * Removes all nodes and keeps the arrays
+     */
+    void reset() {
+        size = 0;
+    }
+
+    /**
+     * Gets the number of nodes
+     *
+     * @return the number of nodes
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Gets the number of nodes the arena holds before it grows
+     *
+     * @return the length of the arrays
+     */
+    int capacity() {
+        return parent.length;
+    }
+
+    /**
+     * Adds a node without children
+     *
+     * @param parentNode
+     *            the parent, -1 for a root
+     * @param encodedMove
+     *            the move leading to the node, 0 for a root
+     * @param game
+     *            the game state of the node
+     * @return the new node
+     */
+    int add(int parentNode, int encodedMove, Game game) {
+        if (size == parent.length) {
+            grow();
+        }
+        int node = size++;
+        parent[node] = parentNode;
+        firstChild[node] = -1;
+        childCount[node] = 0;
+        move[node] = (short) encodedMove;
+        score[node] = 0;
+        human[node] = game.bits(Player.HUMAN);
+        machine[node] = game.bits(Player.MACHINE);
+        next[node] = (byte) game.next().ordinal();
+        if (parentNode >= 0) {
+            if (childCount[parentNode]++ == 0) {
+                firstChild[parentNode] = node;
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Doubles the capacity
+     */
+    private void grow() {
+        int capacity = parent.length > Integer.MAX_VALUE / 2 - 8
+                ? Integer.MAX_VALUE - 8 : 2 * parent.length;
+        if (capacity <= parent.length) {
+            throw new OutOfMemoryError("Tree too large");
+        }
+        parent = Arrays.copyOf(parent, capacity);
+        firstChild = Arrays.copyOf(firstChild, capacity);
+        childCount = Arrays.copyOf(childCount, capacity);
+        move = Arrays.copyOf(move, capacity);
+        score = Arrays.copyOf(score, capacity);
+        human = Arrays.copyOf(human, capacity);
+        machine = Arrays.copyOf(machine, capacity);
+        next = Arrays.copyOf(next, capacity);
+    }
+
+    /**
+     * Gets the parent of a node
+     *
+     * @param node
+     *            the node
+     * @return the parent, -1 for a root
+     */
+    int parent(int node) {
+        return parent[node];
+    }
+
+    /**
+     * Gets the first child of a node
+     *
+     * @param node
+     *            the node
+     * @return the first child, -1 if there is none
+     */
+    int firstChild(int node) {
+        return firstChild[node];
+    }
+
+    /**
+     * Gets the number of children of a node
+     *
+     * @param node
+     *            the node
+     * @return the number of children
+     */
+    int childCount(int node) {
+        return childCount[node];
+    }
+
+    /**
+     * Gets the move leading to a node
+     *
+     * @param node
+     *            the node
+     * @return the encoded move, 0 for a root
+     */
+    int move(int node) {
+        return move[node] & 0xFFFF;
+    }
+
+    /**
+     * Gets the score of a node
+     *
+     * @param node
+     *            the node
+     * @return the score
+     */
+    double score(int node) {
+        return score[node];
+    }
+
+    /**
+     * Sets the score of a node
+     *
+     * @param node
+     *            the node
+     * @param value
+     *            the score
+     */
+    void setScore(int node, double value) {
+        score[node] = value;
+    }
+
+    /**
+     * Gets the pawns of a player in the game state of a node
+     *
+     * @param node
+     *            the node
+     * @param player
+     *            HUMAN or MACHINE
+     * @return the mask of the pawns
+     */
+    long bits(int node, Player player) {
+        return player == Player.HUMAN ? human[node] : machine[node];
+    }
+
+    /**
+     * Gets the player whose turn it is in the game state of a node
+     *
+     * @param node
+     *            the node
+     * @return the player, NONE if the game is over
+     */
+    Player next(int node) {
+        return PLAYERS[next[node]];
+    }
+
+}
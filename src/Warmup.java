@@ -0,0 +1,89 @@
+package pawns_chess.model;
+
+import java.util.SplittableRandom;
+
+/**
+ * The class Warmup plays fast games so that the just-in-time compiler
+ * compiles the rules, the evaluators and the engines before the first real
+ * move. It is the workload of the training run of a class data sharing
+ * archive, see the README, and it runs at startup with
+ * {@code -Dpawns_chess.warmup=ms}.
+ *
+ * <p>
+ * The searches of the warm-up use a table of their own and not the result
+ * cache, so they leave no results which could change the real games. The
+ * shared tables are only allocated.
+ */
+final class Warmup {
+
+    /**
+     * not used
+     */
+    private Warmup() {
+    }
+
+    /**
+     * Runs the warm-up if the system property {@code pawns_chess.warmup}
+     * gives its duration
+     */
+    static void fromProperty() {
+        long millis = Long.getLong("pawns_chess.warmup", 0);
+        if (millis > 0) {
+            run(millis);
+        }
+    }
+
+    /**
+     * Plays games on the default level until the time is up. Each game uses
+     * the next evaluator, the human side plays random moves and every fourth
+     * game is played by the Monte Carlo engine.
+     *
+     * @param millis
+     *            the duration in milliseconds
+     * @return the number of machine moves played
+     */
+    static long run(long millis) {
+        long deadline = System.nanoTime() + millis * 1000000L;
+        // allocate the shared tables now instead of on the first move
+        TranspositionTable.shared();
+        ResultCache.shared();
+        SplittableRandom random = new SplittableRandom(millis);
+        TranspositionTable table = new TranspositionTable(1, false);
+        Evaluator[] evaluators = {Evaluators.CLASSIC, Evaluators.MATERIAL,
+            Evaluators.STRUCTURE, };
+        int[] moves = new int[Board.MAX_MOVES];
+        long played = 0;
+        for (int i = 0; System.nanoTime() < deadline; i++) {
+            Game game = new Game(Player.HUMAN);
+            game.setEvaluator(evaluators[i % evaluators.length]);
+            Engine engine = i % 4 == 3 ? Engines.forName(Engines.MCTS) : null;
+            new GameTree(game, 3).selectBestStrategy();
+            while (!game.gameOver() && System.nanoTime() < deadline) {
+                if (game.next() == Player.HUMAN) {
+                    Move m = Move.decode(moves[random.nextInt(game
+                            .humanMoves(moves))]);
+                    game.destinations(m.getColumnFrom(), m.getRowFrom());
+                    game.move(m.getColumnFrom(), m.getRowFrom(), m
+                            .getColumnTo(), m.getRowTo());
+                } else if (engine != null) {
+                    game.makeMove(engine.choose(game, Game.DEFAULT_LEVEL,
+                            random).get(0).encode());
+                    played++;
+                } else {
+                    Search search = new Search();
+                    search.setTable(table);
+                    search.setSelection(random, Game.selectionMargin(
+                            Game.DEFAULT_LEVEL), Game.selectionTemperature(
+                            Game.DEFAULT_LEVEL));
+                    search.setNodeLimit(Game.nodeLimit(Game.DEFAULT_LEVEL));
+                    search.setPruning(true);
+                    game.makeMove(search.search(game.clone(),
+                            Search.MAX_DEPTH).encode());
+                    played++;
+                }
+            }
+        }
+        return played;
+    }
+
+}
@@ -0,0 +1,328 @@
+package pawns_chess.model;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ConnectException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The class Worker runs the tasks of a {@link Coordinator} in a separate
+ * process: it connects to the coordinator, receives the job, then batch after
+ * batch of tasks, runs the tasks of a batch with a pool of threads and sends
+ * each result as soon as it is ready. It ends when the coordinator has no
+ * more tasks.
+ *
+ * <p>
+ * The job is either self-play games between two evaluators, each played by
+ * the machine player at the same level, or the search of a set of positions
+ * as by the {@link Analyzer}. A game starts with random moves and evaluator A
+ * plays the machine in the games of even index. The random moves and the
+ * machine's choices depend only on the seed of the job and the index of the
+ * game: each search has a table of its own and does not use the result
+ * cache, so neither the other threads nor the tasks run before change a
+ * game, and a task handed to another worker plays the same game. Its result
+ * line is
+ * {@code index <TAB> A|B|draw <TAB> plies <TAB> moves}.
+ *
+ * <p>
+ * Usage: {@code work <host:port> [threads=n]}
+ */
+public final class Worker {
+
+    /**
+     * How often and how long to wait for a coordinator which has not
+     * started yet
+     */
+    private static final int CONNECT_ATTEMPTS = 30;
+    private static final long CONNECT_DELAY = 1000;
+
+    private final int threads;
+
+    /**
+     * The job: its kind and its options
+     */
+    private String kind;
+    private long seed;
+    private int level = Game.DEFAULT_LEVEL;
+    private int openings = 4;
+    private Evaluator a = Evaluators.CLASSIC;
+    private Evaluator b = Evaluators.CLASSIC;
+    private Analyzer analyzer;
+
+    /**
+     * Creates a worker
+     *
+     * @param threads
+     *            the number of tasks run in parallel
+     */
+    public Worker(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Runs the worker mode
+     *
+     * @param args
+     *            the address of the coordinator followed by the options
+     * @throws IOException
+     *             if the coordinator cannot be reached
+     * @throws InterruptedException
+     *             if the worker is interrupted while waiting to connect
+     */
+    public static void main(String[] args) throws IOException,
+        InterruptedException {
+        if (args.length == 0) {
+            System.out.println("Usage: work <host:port> [threads=n]");
+            return;
+        }
+        int colon = args[0].lastIndexOf(':');
+        String host = colon > 0 ? args[0].substring(0, colon) : "localhost";
+        int port = Integer.parseInt(args[0].substring(colon + 1));
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 1; i < args.length; i++) {
+            String[] option = args[i].split("=", 2);
+            if (option[0].equalsIgnoreCase("threads") && option.length == 2) {
+                threads = Integer.parseInt(option[1]);
+            } else {
+                throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        for (int attempt = 1;; attempt++) {
+            try (Socket socket = new Socket(host, port)) {
+                new Worker(threads).run(socket);
+                return;
+            } catch (ConnectException e) {
+                if (attempt == CONNECT_ATTEMPTS) {
+                    throw e;
+                }
+                Thread.sleep(CONNECT_DELAY);
+            }
+        }
+    }
+
+    /**
+     * Runs the tasks of a coordinator until it has no more
+     *
+     * @param socket
+     *            the connection to the coordinator
+     * @throws IOException
+     *             if the connection fails
+     */
+    void run(Socket socket) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket
+                .getInputStream(), StandardCharsets.UTF_8));
+        final Writer out = new BufferedWriter(new OutputStreamWriter(socket
+                .getOutputStream(), StandardCharsets.UTF_8));
+        out.write("HELLO " + threads + "\n");
+        out.flush();
+        String job = in.readLine();
+        if (job == null || !job.startsWith("JOB ")) {
+            throw new IOException("Expected a job: " + job);
+        }
+        configure(job.substring(4).trim().split("\\s+"));
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            for (String line = in.readLine(); line != null
+                    && !line.equals("BYE"); line = in.readLine()) {
+                String[] header = line.split(" ");
+                if (header.length != 3 || !header[0].equals("BATCH")) {
+                    throw new IOException("Expected a batch: " + line);
+                }
+                final String batch = header[1];
+                int n = Integer.parseInt(header[2]);
+                List<Future<?>> running = new ArrayList<Future<?>>(n);
+                for (int i = 0; i < n; i++) {
+                    final String task = in.readLine();
+                    if (task == null) {
+                        throw new IOException("Incomplete batch " + batch);
+                    }
+                    running.add(pool.submit(new Callable<Void>() {
+                        @Override
+                        public Void call() throws IOException {
+                            String message;
+                            try {
+                                message = "R " + batch + " " + perform(task);
+                            } catch (RuntimeException e) {
+                                message = "FAIL " + batch + " "
+                                        + task.split(" ", 2)[0] + " " + e;
+                            }
+                            synchronized (out) {
+                                out.write(message.replace('\n', ' ') + "\n");
+                                out.flush();
+                            }
+                            return null;
+                        }
+                    }));
+                }
+                for (Future<?> f : running) {
+                    await(f);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Waits for a task
+     *
+     * @param f
+     *            the running task
+     * @throws IOException
+     *             if its result could not be sent
+     */
+    private static void await(Future<?> f) throws IOException {
+        try {
+            f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Worker interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Result not sent", e.getCause());
+        }
+    }
+
+    /**
+     * Reads the job
+     *
+     * @param words
+     *            the kind of the job followed by its options name=value
+     */
+    private void configure(String[] words) {
+        kind = words[0];
+        int depth = 4;
+        long time = 0;
+        Evaluator evaluator = Evaluators.CLASSIC;
+        for (int i = 1; i < words.length; i++) {
+            String[] option = words[i].split("=", 2);
+            String value = option.length == 2 ? option[1] : "";
+            switch (option[0]) {
+            case "seed":
+                seed = Long.parseLong(value);
+                break;
+            case "level":
+                level = Integer.parseInt(value);
+                break;
+            case "openings":
+                openings = Integer.parseInt(value);
+                break;
+            case "a":
+                a = evaluator(value);
+                break;
+            case "b":
+                b = evaluator(value);
+                break;
+            case "depth":
+                depth = Integer.parseInt(value);
+                break;
+            case "time":
+                time = Long.parseLong(value);
+                break;
+            case "eval":
+                evaluator = evaluator(value);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option "
+                        + words[i]);
+            }
+        }
+        if (kind.equals("positions")) {
+            analyzer = new Analyzer(depth, time, 1, evaluator);
+        } else if (!kind.equals("games")) {
+            throw new IllegalArgumentException("Unknown job " + kind);
+        }
+    }
+
+    /**
+     * Gets an evaluator by name
+     *
+     * @param name
+     *            the name
+     * @return the evaluator
+     * @throws IllegalArgumentException
+     *             if there is none of this name
+     */
+    private static Evaluator evaluator(String name) {
+        Evaluator evaluator = Evaluators.forName(name);
+        if (evaluator == null) {
+            throw new IllegalArgumentException("Unknown evaluator " + name);
+        }
+        return evaluator;
+    }
+
+    /**
+     * Runs a task
+     *
+     * @param task
+     *            the index of a game or the index, the white pawns, the black
+     *            pawns (hexadecimal masks) and the color to move (W or B) of a
+     *            position
+     * @return the result line
+     */
+    String perform(String task) {
+        String[] words = task.split(" ");
+        long index = Long.parseLong(words[0]);
+        if (analyzer == null) {
+            return play(index);
+        }
+        Analyzer.Position p = new Analyzer.Position(Long.parseUnsignedLong(
+                words[1], 16), Long.parseUnsignedLong(words[2], 16), words[3]
+                .equals("W"), words[4].equals("W"));
+        String line = analyzer.analyze(index, p);
+        return line.substring(0, line.length() - 1);
+    }
+
+    /**
+     * Plays a game of the self-play job. Both players are the machine
+     * player: for the human's moves the board is mirrored at the middle row.
+     *
+     * @param index
+     *            index of the game
+     * @return the result line
+     */
+    private String play(long index) {
+        SplittableRandom random = new SplittableRandom(seed + index
+                * 0x9E3779B97F4A7C15L);
+        int[] moves = new int[Board.MAX_MOVES];
+        Game game = new Game(Player.HUMAN);
+        for (int i = 0; i < openings && !game.gameOver(); i++) {
+            game.makeMove(moves[random.nextInt(game.legalMoves(moves))]);
+        }
+        Player sideA = index % 2 == 0 ? Player.MACHINE : Player.HUMAN;
+        while (!game.gameOver()) {
+            boolean machine = game.next() == Player.MACHINE;
+            Game view = machine ? game.clone() : Game.of(Bits.flipRows(game
+                    .bits(Player.MACHINE)), Bits.flipRows(game
+                    .bits(Player.HUMAN)), Player.HUMAN, Player.MACHINE);
+            view.setEvaluator(game.next() == sideA ? a : b);
+            int m = AlphaBetaEngine.chooseReproducibly(view, level, random)
+                    .get(0).encode();
+            game.makeMove(machine ? m : Move.flipRows(m));
+        }
+        StringBuilder line = new StringBuilder().append(index).append('\t');
+        Player winner = game.getWinner();
+        line.append(winner == Player.NONE ? "draw" : winner == sideA ? "A"
+                : "B");
+        line.append('\t').append(game.getHistorySize()).append('\t');
+        String separator = "";
+        for (Move m : game.getHistory()) {
+            line.append(separator).append(m);
+            separator = ", ";
+        }
+        return line.toString();
+    }
+
+}
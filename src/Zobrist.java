@@ -0,0 +1,146 @@
+package pawns_chess.model;
+
+/**
+ * The class Zobrist provides the random keys of the position hash: the hash
+ * of a game state is the XOR of the keys of all pawns and the key of the
+ * player whose turn it is. The keys are fixed, so hashes can be stored in
+ * files and compared across processes.
+ */
+final class Zobrist {
+
+    /**
+     * Keys of the human and the machine pawns for each slot
+     */
+    private static final long[][] PAWN = new long[2][Board.SIZE * Board.SIZE];
+
+    /**
+     * Keys of the player whose turn it is, indexed by Player.ordinal()
+     */
+    private static final long[] NEXT = new long[Player.values().length];
+
+    /**
+     * Keys of the ply of a node of the search, see {@link #node(long, int, long)}
+     */
+    private static final long[] PLY = new long[128];
+
+    static {
+        long seed = 0x5DEECE66DL;
+        for (int side = 0; side < 2; side++) {
+            for (int sq = 0; sq < Board.SIZE * Board.SIZE; sq++) {
+                seed += 0x9E3779B97F4A7C15L;
+                PAWN[side][sq] = mix(seed);
+            }
+        }
+        for (int i = 0; i < NEXT.length; i++) {
+            seed += 0x9E3779B97F4A7C15L;
+            NEXT[i] = mix(seed);
+        }
+        for (int i = 0; i < PLY.length; i++) {
+            seed += 0x9E3779B97F4A7C15L;
+            PLY[i] = mix(seed);
+        }
+    }
+
+    /**
+     * not used
+     */
+    private Zobrist() {
+    }
+
+    /**
+     * The finalizer of SplitMix64
+     *
+     * @param z
+     *            the state
+     * @return a well mixed value
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Gets the key of a pawn
+     *
+     * @param player
+     *            owner of the pawn, HUMAN or MACHINE
+     * @param sq
+     *            bit index of the slot
+     * @return the key
+     */
+    static long pawn(Player player, int sq) {
+        return PAWN[player == Player.HUMAN ? 0 : 1][sq];
+    }
+
+    /**
+     * Gets the key of the player whose turn it is
+     *
+     * @param player
+     *            the player
+     * @return the key
+     */
+    static long next(Player player) {
+        return NEXT[player.ordinal()];
+    }
+
+    /**
+     * Computes the hash of a game state from scratch
+     *
+     * @param human
+     *            mask of the human pawns
+     * @param machine
+     *            mask of the machine pawns
+     * @param next
+     *            the player whose turn it is
+     * @return the hash
+     */
+    static long hash(long human, long machine, Player next) {
+        long h = next(next);
+        for (long b = human; b != 0; b &= b - 1) {
+            h ^= PAWN[0][Long.numberOfTrailingZeros(b)];
+        }
+        for (long b = machine; b != 0; b &= b - 1) {
+            h ^= PAWN[1][Long.numberOfTrailingZeros(b)];
+        }
+        return h;
+    }
+
+    /**
+     * Gets the salt of the node keys of a search
+     *
+     * @param evaluator
+     *            name of the evaluator of the search
+     * @param race
+     *            true if the search resolves races
+     * @param pruning
+     *            true if the search prunes selectively
+     * @param nullMove
+     *            true if the search tries null moves
+     * @return the salt
+     */
+    static long salt(String evaluator, boolean race, boolean pruning,
+            boolean nullMove) {
+        return mix(evaluator.hashCode() * 8L + (race ? 1 : 0)
+                + (pruning ? 2 : 0) + (nullMove ? 4 : 0));
+    }
+
+    /**
+     * Gets the key of a node of the search. The score of a node depends on
+     * its ply and on the evaluator, so the same game state has other keys on
+     * other plies and with other evaluators.
+     *
+     * @param hash
+     *            hash of the game state
+     * @param ply
+     *            the ply of the node, below 128
+     * @param salt
+     *            the salt of the search, see
+     *            {@link #salt(String, boolean, boolean, boolean)}
+     * @return the key
+     */
+    static long node(long hash, int ply, long salt) {
+        return hash ^ PLY[ply] ^ salt;
+    }
+
+}
@@ -0,0 +1,190 @@
+package pawns_chess.model;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The batch evaluator which scores several game states per instruction with
+ * the Vector API, see {@link BatchEvaluator}. It needs
+ * {@code --add-modules jdk.incubator.vector} at compile time and at run
+ * time.
+ *
+ * <p>
+ * All terms of the classic score but the victory score are computed as twice
+ * their value in long lanes, so they are integers: the pawn counts, the
+ * advancement as weighted counts of the bit planes of the row index, and the
+ * threatened and isolated pawns as counts of shifted masks. The Vector API of
+ * this JDK has no bit count, so the counts are computed with the SWAR
+ * algorithm. The few game states which do not fill a vector are scored by
+ * the scalar evaluator.
+ */
+final class VectorBatchEvaluator implements BatchEvaluator {
+
+    private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+
+    private static final int SIZE = Bits.SIZE;
+
+    static {
+        if (SIZE != 8) {
+            throw new ExceptionInInitializerError("Only for SIZE 8");
+        }
+    }
+
+    /**
+     * ROW_BIT[b] holds the slots whose row - 1 has bit b set
+     */
+    private static final long[] ROW_BIT = new long[3];
+
+    static {
+        for (int y = 1; y <= SIZE; y++) {
+            for (int b = 0; b < ROW_BIT.length; b++) {
+                if (((y - 1) >> b & 1) != 0) {
+                    ROW_BIT[b] |= Bits.rowMask(y);
+                }
+            }
+        }
+    }
+
+    /**
+     * Used by {@link BatchEvaluator#vector()}
+     */
+    VectorBatchEvaluator() {
+    }
+
+    @Override
+    public void evaluate(long[] human, long[] machine, Player[] winner,
+            int[] depth, int n, double[] scores) {
+        int lanes = SPECIES.length();
+        int i = 0;
+        for (; i <= n - lanes; i += lanes) {
+            LongVector h = LongVector.fromArray(SPECIES, human, i);
+            LongVector m = LongVector.fromArray(SPECIES, machine, i);
+            ((DoubleVector) twiceScore(h, m).convert(VectorOperators.L2D, 0))
+                    .mul(0.5).intoArray(scores, i);
+        }
+        for (int j = 0; j < i; j++) {
+            if (winner[j] != Player.NONE) {
+                scores[j] += ClassicEvaluator.scoreV(winner[j], depth[j]);
+            }
+        }
+        for (; i < n; i++) {
+            scores[i] = ScalarBatchEvaluator.score(human[i], machine[i],
+                    winner[i], depth[i]);
+        }
+    }
+
+    /**
+     * Computes twice the classic score without the victory score
+     *
+     * @param h
+     *            masks of the human pawns
+     * @param m
+     *            masks of the machine pawns
+     * @return the doubled scores
+     */
+    private static LongVector twiceScore(LongVector h, LongVector m) {
+        LongVector countH = bitCount(h);
+        LongVector countM = bitCount(m);
+
+        // distance: human pawns advance with the row index, machine pawns
+        // with 7 = SIZE - 1 minus the row index
+        LongVector rowsH = rowSum(h);
+        LongVector advanceM = countM.lanewise(VectorOperators.LSHL, 3)
+                .sub(countM).sub(rowSum(m));
+
+        LongVector attacksH = attacks(h, true);
+        LongVector attacksM = attacks(m, false);
+        LongVector threatenedH = bitCount(h.and(attacksM).and(attacksH.not()));
+        LongVector threatenedM = bitCount(m.and(attacksH).and(attacksM.not()));
+
+        LongVector isolatedH = bitCount(h.and(neighbors(h).not()));
+        LongVector isolatedM = bitCount(m.and(neighbors(m).not()));
+
+        // 2 * (machine terms + human threats and isolation)
+        // - 3 * (human terms + machine threats and isolation)
+        LongVector two = countM.add(advanceM).add(threatenedH).add(isolatedH);
+        LongVector three = countH.add(rowsH).add(threatenedM).add(isolatedM);
+        return two.add(two).sub(three.add(three).add(three));
+    }
+
+    /**
+     * Counts the set bits of each lane
+     *
+     * @param x
+     *            the masks
+     * @return the bit counts
+     */
+    private static LongVector bitCount(LongVector x) {
+        x = x.sub(x.lanewise(VectorOperators.LSHR, 1).and(0x5555555555555555L));
+        x = x.and(0x3333333333333333L).add(
+                x.lanewise(VectorOperators.LSHR, 2).and(0x3333333333333333L));
+        x = x.add(x.lanewise(VectorOperators.LSHR, 4)).and(0x0F0F0F0F0F0F0F0FL);
+        // sum up the bytes with shifts, 64 bit multiplications are slow
+        x = x.add(x.lanewise(VectorOperators.LSHR, 8));
+        x = x.add(x.lanewise(VectorOperators.LSHR, 16));
+        x = x.add(x.lanewise(VectorOperators.LSHR, 32));
+        return x.and(0x7F);
+    }
+
+    /**
+     * Sums up the row index (row - 1) of all pawns
+     *
+     * @param pawns
+     *            the masks of the pawns
+     * @return the sums
+     */
+    private static LongVector rowSum(LongVector pawns) {
+        LongVector sum = bitCount(pawns.and(ROW_BIT[0]));
+        for (int b = 1; b < ROW_BIT.length; b++) {
+            sum = sum.add(bitCount(pawns.and(ROW_BIT[b])).lanewise(
+                    VectorOperators.LSHL, b));
+        }
+        return sum;
+    }
+
+    /**
+     * The lanewise version of {@link Bits#attacks(long, boolean)}
+     *
+     * @param pawns
+     *            masks of the pawns
+     * @param human
+     *            true if the pawns move upwards
+     * @return masks of the slots diagonally in front of the pawns
+     */
+    private static LongVector attacks(LongVector pawns, boolean human) {
+        LongVector left = pawns.and(~Bits.FIRST_COLUMN);
+        LongVector right = pawns.and(~Bits.LAST_COLUMN);
+        if (human) {
+            return left.lanewise(VectorOperators.LSHL, SIZE - 1)
+                    .or(right.lanewise(VectorOperators.LSHL, SIZE + 1))
+                    .and(Bits.BOARD);
+        }
+        return left.lanewise(VectorOperators.LSHR, SIZE + 1).or(
+                right.lanewise(VectorOperators.LSHR, SIZE - 1));
+    }
+
+    /**
+     * The lanewise version of {@link Bits#neighbors(long)}
+     *
+     * @param pawns
+     *            masks of the pawns
+     * @return masks of the adjacent slots
+     */
+    private static LongVector neighbors(LongVector pawns) {
+        LongVector row = pawns.and(~Bits.LAST_COLUMN)
+                .lanewise(VectorOperators.LSHL, 1)
+                .or(pawns.and(~Bits.FIRST_COLUMN).lanewise(
+                        VectorOperators.LSHR, 1));
+        LongVector wide = pawns.or(row);
+        return row.or(wide.lanewise(VectorOperators.LSHL, SIZE))
+                .or(wide.lanewise(VectorOperators.LSHR, SIZE)).and(Bits.BOARD);
+    }
+
+    @Override
+    public String getName() {
+        return "vector";
+    }
+
+}